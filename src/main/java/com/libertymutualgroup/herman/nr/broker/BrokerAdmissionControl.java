@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caps the number of broker requests processed at once. Requests beyond the cap wait up to
+ * {@code newrelic.execution.admissionTimeoutMillis} for a slot and are rejected after that, so a burst of
+ * deployments queues briefly instead of piling blocking work onto New Relic.
+ */
+@Component
+public class BrokerAdmissionControl {
+
+    private final Semaphore permits;
+    private final long timeoutMillis;
+
+    @Autowired
+    public BrokerAdmissionControl(NewRelicBrokerProperties properties) {
+        this.permits = new Semaphore(properties.getExecution().getMaxConcurrentRequests(), true);
+        this.timeoutMillis = properties.getExecution().getAdmissionTimeoutMillis();
+    }
+
+    public boolean tryAcquire() {
+        try {
+            return permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getAvailable() {
+        return permits.availablePermits();
+    }
+}
@@ -15,14 +15,26 @@
  */
 package com.libertymutualgroup.herman.nr.broker;
 
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicAccounts;
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicLookups;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerJobStatus;
 import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
 import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerResponse;
+import com.libertymutualgroup.herman.nr.broker.telemetry.PayloadLogging;
+import com.libertymutualgroup.herman.nr.broker.telemetry.RequestTelemetry;
+import com.libertymutualgroup.herman.nr.broker.telemetry.TelemetryExporter;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.publisher.Flux;
 
 @SpringBootApplication
 @EnableConfigurationProperties(NewRelicBrokerProperties.class)
@@ -31,11 +43,64 @@ public class NewRelicBrokerConfig {
 	@Autowired
 	NewRelicBrokerController newRelicBrokerController;
 
+	@Autowired
+	NewRelicLookups newRelicLookups;
+
+	@Autowired
+	NewRelicBrokerJobs newRelicBrokerJobs;
+
+	@Autowired
+	NewRelicBrokerProperties properties;
+
+	@Autowired
+	TelemetryExporter telemetryExporter;
+
 	@Bean
 	public Function<NewRelicBrokerRequest, NewRelicBrokerResponse> function() {
 		return value -> newRelicBrokerController.getResponse(value);
 	}
 
+	@Bean
+	public Function<Flux<NewRelicBrokerRequest>, Flux<HermanBrokerUpdate>> streamingFunction() {
+		return requests -> requests.concatMap(newRelicBrokerController::getUpdates);
+	}
+
+	@Bean
+	public Function<NewRelicBrokerRequest, NewRelicBrokerJobStatus> submitJob() {
+		return newRelicBrokerJobs::submit;
+	}
+
+	@Bean
+	public Function<String, NewRelicBrokerJobStatus> jobStatus() {
+		return newRelicBrokerJobs::getStatus;
+	}
+
+	@Bean
+	public Supplier<Map<String, Map<String, Long>>> lookupStats() {
+		return newRelicLookups::getStats;
+	}
+
+	@Bean
+	public Supplier<Map<String, Long>> telemetryStats() {
+		return telemetryExporter::getStats;
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor newRelicIoExecutor() {
+		NewRelicBrokerProperties.Execution execution = properties.getExecution();
+
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(execution.getIoThreads());
+		executor.setMaxPoolSize(execution.getIoThreads());
+		executor.setQueueCapacity(execution.getIoQueueCapacity());
+		executor.setAllowCoreThreadTimeOut(true);
+		executor.setThreadNamePrefix("newrelic-io-");
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.setTaskDecorator(task -> PayloadLogging.propagate(
+			RequestTelemetry.propagate(NewRelicAccounts.propagate(task))));
+		return executor;
+	}
+
 	public static void main(String[] args) {
 		SpringApplication.run(NewRelicBrokerConfig.class, args);
 	}
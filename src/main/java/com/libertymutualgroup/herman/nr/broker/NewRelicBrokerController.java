@@ -15,21 +15,39 @@
  */
 package com.libertymutualgroup.herman.nr.broker;
 
-import com.libertymutualgroup.herman.nr.broker.clients.NewRelicClient;
+import com.libertymutualgroup.herman.nr.broker.clients.CircuitBreakerOpenException;
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicAccounts;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerPhase;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerResourceType;
 import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
 import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
 import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
 import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerResponse;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import com.libertymutualgroup.herman.nr.broker.operations.Operation;
+import com.libertymutualgroup.herman.nr.broker.operations.OperationExecutor;
+import com.libertymutualgroup.herman.nr.broker.operations.OperationGraph;
 import com.libertymutualgroup.herman.nr.broker.services.AlertConfigurationService;
+import com.libertymutualgroup.herman.nr.broker.services.AlertConfigurationValidator;
 import com.libertymutualgroup.herman.nr.broker.services.ApplicationConfigurationService;
 import com.libertymutualgroup.herman.nr.broker.services.ApplicationDeploymentService;
-import java.util.Optional;
+import com.libertymutualgroup.herman.nr.broker.services.InvalidAlertConfigurationException;
+import com.libertymutualgroup.herman.nr.broker.services.NewRelicPrefetch;
+import com.libertymutualgroup.herman.nr.broker.services.NewRelicPrefetchService;
+import com.libertymutualgroup.herman.nr.broker.telemetry.PayloadLogging;
+import com.libertymutualgroup.herman.nr.broker.telemetry.RequestTelemetry;
+import com.libertymutualgroup.herman.nr.broker.telemetry.TelemetryExporter;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 @Component
 public class NewRelicBrokerController {
@@ -37,7 +55,7 @@ public class NewRelicBrokerController {
     private static final Logger LOG = LoggerFactory.getLogger(NewRelicBrokerController.class);
 
     @Autowired
-    private NewRelicClient newRelicClient;
+    private NewRelicAccounts newRelicAccounts;
 
     @Autowired
     private ApplicationDeploymentService applicationDeploymentService;
@@ -48,48 +66,256 @@ public class NewRelicBrokerController {
     @Autowired
     private AlertConfigurationService alertConfigurationService;
 
+    @Autowired
+    private BrokerAdmissionControl brokerAdmissionControl;
+
+    @Autowired
+    private AlertConfigurationValidator alertConfigurationValidator;
+
+    @Autowired
+    private OperationExecutor operationExecutor;
+
+    @Autowired
+    private NewRelicPrefetchService newRelicPrefetchService;
+
+    @Autowired
+    private TelemetryExporter telemetryExporter;
+
+    @Autowired
+    private PayloadLogging payloadLogging;
+
     public NewRelicBrokerResponse getResponse(NewRelicBrokerRequest newRelicBrokerRequest) {
         NewRelicBrokerResponse response = new NewRelicBrokerResponse();
+        response.setApplicationId(process(newRelicBrokerRequest, response.getUpdates()::add));
+        return response;
+    }
 
-        try {
-            Application application = null;
-            if (newRelicBrokerRequest.getNewRelicApplicationName() != null) {
-                application = newRelicClient
-                    .getApplicationForAppName(newRelicBrokerRequest.getNewRelicApplicationName());
-
-                if (Optional.ofNullable(application).isPresent()) {
-                    response.setApplicationId(application.getId().toString());
-                    response.getUpdates().addAll(applicationDeploymentService.createApplicationDeployment(
-                        application,
-                        newRelicBrokerRequest.getDeployment()));
-                    response.getUpdates().addAll(applicationConfigurationService.setApplicationApdex(
-                        application,
-                        newRelicBrokerRequest.getConfiguration()));
-                } else {
-                    response.getUpdates().add(new HermanBrokerUpdate()
-                        .withStatus(HermanBrokerStatus.PENDING)
-                        .withMessage(String.format("Application could not be found in New Relic: %s",
-                            newRelicBrokerRequest.getNewRelicApplicationName())));
+    public Flux<HermanBrokerUpdate> getUpdates(NewRelicBrokerRequest newRelicBrokerRequest) {
+        return Flux.<HermanBrokerUpdate>create(sink -> {
+            process(newRelicBrokerRequest, sink::next);
+            sink.complete();
+        }).subscribeOn(Schedulers.elastic());
+    }
+
+    /**
+     * Processes a request, handing each update to {@code listener} as soon as it is produced.
+     *
+     * @return the New Relic application ID, if the application was found
+     */
+    public String process(NewRelicBrokerRequest newRelicBrokerRequest, Consumer<HermanBrokerUpdate> listener) {
+        try (RequestTelemetry telemetry = RequestTelemetry.start();
+            PayloadLogging.Scope payloads = payloadLogging.enter(newRelicBrokerRequest)) {
+            Consumer<HermanBrokerUpdate> countingListener = update -> {
+                if (update.getStatus() == HermanBrokerStatus.ERROR) {
+                    telemetry.recordError();
                 }
+                listener.accept(update);
+            };
+
+            if (!brokerAdmissionControl.tryAcquire()) {
+                LOG.warn("Rejecting New Relic Broker request for policy {}: too many requests in progress",
+                    newRelicBrokerRequest.getPolicyName());
+                countingListener.accept(new HermanBrokerUpdate()
+                    .withStatus(HermanBrokerStatus.ERROR)
+                    .withMessage("New Relic Broker is busy processing other requests. Try again later."));
+                recordTelemetry(newRelicBrokerRequest, telemetry, "REJECTED");
+                return null;
             }
 
-            response.getUpdates().addAll(alertConfigurationService.configureAlerts(
-                application,
-                newRelicBrokerRequest.getPolicyName(),
-                newRelicBrokerRequest.getConfiguration()));
+            try {
+                return processAdmitted(newRelicBrokerRequest, countingListener);
+            } finally {
+                brokerAdmissionControl.release();
+                recordTelemetry(newRelicBrokerRequest, telemetry, telemetry.getErrors() > 0 ? "ERROR" : "OK");
+            }
+        } finally {
+            telemetryExporter.flushAfterRequest();
+        }
+    }
+
+    private String processAdmitted(NewRelicBrokerRequest newRelicBrokerRequest, Consumer<HermanBrokerUpdate> listener) {
+        String applicationId = null;
+
+        // Phases that fail fast (e.g. behind an open circuit breaker) report ERROR and let the others carry on.
+        // Operations report from I/O threads, so updates are handed to the listener one at a time.
+        AtomicBoolean phaseFailed = new AtomicBoolean();
+        Consumer<HermanBrokerUpdate> updates = update -> {
+            if (update.getStatus() == HermanBrokerStatus.ERROR) {
+                phaseFailed.set(true);
+            }
+            synchronized (listener) {
+                listener.accept(update);
+            }
+        };
 
-            response.getUpdates().add(new HermanBrokerUpdate()
-                .withStatus(HermanBrokerStatus.OK)
-                .withMessage("New Relic Broker processing has completed successfully"));
+        // A malformed template is rejected before anything is read from or written to New Relic
+        try {
+            alertConfigurationValidator.validate(newRelicBrokerRequest.getConfiguration());
+        } catch (InvalidAlertConfigurationException ex) {
+            LOG.warn("Rejecting New Relic Broker request for policy {}: {}", newRelicBrokerRequest.getPolicyName(),
+                ex.getMessage());
+            updates.accept(new HermanBrokerUpdate()
+                .withStatus(HermanBrokerStatus.ERROR)
+                .withMessage(ex.getMessage()));
+            return null;
+        }
+
+        // Existing account state is read while the configuration is parsed and the operations are planned. The
+        // prefetch is closed first, so no read outlives the account scope even if planning throws.
+        try (NewRelicAccounts.Scope account = newRelicAccounts.enter(newRelicBrokerRequest.getNrApiKey());
+            NewRelicPrefetch prefetch = newRelicPrefetchService.start(newRelicBrokerRequest)) {
+
+            // Deployment marker, apdex and alerts only share the application, so they run side by side. Their
+            // updates are still reported phase by phase, in this order.
+            OrderedUpdates orderedUpdates = new OrderedUpdates(updates);
+            OperationGraph graph = new OperationGraph();
+
+            // A failed lookup is reported by its own phase; the phases that need the application carry on without
+            // it, as if it had not been found, so none of them is skipped and held back
+            Operation<Application> application = graph.await("applicationLookup",
+                prefetch.getApplication().exceptionally(failure -> null));
+            String applicationName = newRelicBrokerRequest.getNewRelicApplicationName();
+            if (applicationName != null) {
+                // Reported whether the lookup succeeds or fails, so the phases after it are never held back
+                OrderedUpdates.Phase lookupUpdates = orderedUpdates.phase();
+                graph.await("reportApplicationLookup", prefetch.getApplication().handle((found, failure) -> {
+                    try {
+                        reportApplicationLookup(applicationName, found, failure, lookupUpdates);
+                    } finally {
+                        lookupUpdates.complete();
+                    }
+                    return null;
+                }));
+            }
+
+            OrderedUpdates.Phase deploymentUpdates = orderedUpdates.phase();
+            graph.run("applicationDeployment", () -> runPhase("Application deployment",
+                HermanBrokerPhase.APPLICATION_DEPLOYMENT, deploymentUpdates, () -> {
+                    if (application.get() != null) {
+                        applicationDeploymentService.createApplicationDeployment(
+                            application.get(),
+                            newRelicBrokerRequest.getDeployment(),
+                            deploymentUpdates);
+                    }
+                }), application);
+
+            OrderedUpdates.Phase apdexUpdates = orderedUpdates.phase();
+            graph.run("applicationApdex", () -> runPhase("Application apdex",
+                HermanBrokerPhase.APPLICATION_APDEX, apdexUpdates, () -> {
+                    if (application.get() != null) {
+                        applicationConfigurationService.setApplicationApdex(
+                            application.get(),
+                            newRelicBrokerRequest.getConfiguration(),
+                            apdexUpdates);
+                    }
+                }), application);
+
+            OrderedUpdates.Phase alertUpdates = orderedUpdates.phase();
+            Operation<Void> alerts = null;
+            try {
+                alerts = alertConfigurationService.planAlerts(
+                    graph,
+                    application,
+                    applicationName,
+                    newRelicBrokerRequest.getPolicyName(),
+                    newRelicBrokerRequest.getConfiguration(),
+                    alertUpdates,
+                    prefetch);
+            } catch (RuntimeException ex) {
+                reportPhaseFailure("Alert configuration", null, alertUpdates, ex);
+            }
+
+            operationExecutor.execute("New Relic Broker request for " + newRelicBrokerRequest.getPolicyName(), graph);
+
+            if (application.get() != null) {
+                applicationId = application.get().getId().toString();
+            }
+            if (alerts != null && alerts.getFailure() != null) {
+                reportPhaseFailure("Alert configuration", null, alertUpdates, alerts.getFailure());
+            }
+            orderedUpdates.completeAll();
+
+            if (phaseFailed.get()) {
+                updates.accept(new HermanBrokerUpdate()
+                    .withStatus(HermanBrokerStatus.ERROR)
+                    .withPhase(HermanBrokerPhase.COMPLETE)
+                    .withMessage("New Relic Broker processing completed with errors"));
+            } else {
+                updates.accept(new HermanBrokerUpdate()
+                    .withStatus(HermanBrokerStatus.OK)
+                    .withPhase(HermanBrokerPhase.COMPLETE));
+            }
 
         } catch (Exception ex) {
             LOG.error("Error processing New Relic Broker request", ex);
-            response.getUpdates().add(new HermanBrokerUpdate()
+            CircuitBreakerOpenException circuitBreakerOpen = CircuitBreakerOpenException.find(ex);
+            updates.accept(new HermanBrokerUpdate()
                 .withStatus(HermanBrokerStatus.ERROR)
-                .withMessage("New Relic Broker processing failed. See logs."));
+                .withMessage(circuitBreakerOpen != null
+                    ? "New Relic Broker processing failed: " + circuitBreakerOpen.getMessage()
+                    : "New Relic Broker processing failed. See logs."));
 
         }
 
-        return response;
+        return applicationId;
+    }
+
+    /**
+     * Reports a lookup that failed or found nothing. A found application is reported by the deployment phase, as
+     * the first of its updates, which is where Herman has always received it.
+     */
+    private void reportApplicationLookup(String applicationName, Application found, Throwable failure,
+        Consumer<HermanBrokerUpdate> lookupUpdates) {
+        if (failure != null) {
+            reportPhaseFailure("Application lookup", HermanBrokerPhase.APPLICATION_LOOKUP, lookupUpdates,
+                failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+        } else if (found == null) {
+            lookupUpdates.accept(new HermanBrokerUpdate()
+                .withStatus(HermanBrokerStatus.PENDING)
+                .withPhase(HermanBrokerPhase.APPLICATION_LOOKUP)
+                .withResourceType(HermanBrokerResourceType.APPLICATION)
+                .withMessage(String.format("Application could not be found in New Relic: %s", applicationName)));
+        }
+    }
+
+    /**
+     * Hands the request's counters to the telemetry exporter, which only queues them.
+     */
+    private void recordTelemetry(NewRelicBrokerRequest newRelicBrokerRequest, RequestTelemetry telemetry,
+        String outcome) {
+        if (!telemetryExporter.isEnabled() || NewRelicBrokerWarmup.isWarmupRequest(newRelicBrokerRequest)) {
+            return;
+        }
+        Map<String, Object> event = telemetry.toEvent();
+        event.put("outcome", outcome);
+        event.put("policyName", newRelicBrokerRequest.getPolicyName());
+        event.put("applicationName", newRelicBrokerRequest.getNewRelicApplicationName());
+        telemetryExporter.record(event);
+    }
+
+    /**
+     * Runs one phase, reporting a failure as an ERROR update of that phase instead of failing the whole request.
+     */
+    private void runPhase(String phaseName, HermanBrokerPhase phase, OrderedUpdates.Phase phaseUpdates,
+        Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException ex) {
+            reportPhaseFailure(phaseName, phase, phaseUpdates, ex);
+        } finally {
+            phaseUpdates.complete();
+        }
+    }
+
+    private void reportPhaseFailure(String phaseName, HermanBrokerPhase phase, Consumer<HermanBrokerUpdate> updates,
+        Throwable failure) {
+        LOG.error("{} failed", phaseName, failure);
+        CircuitBreakerOpenException circuitBreakerOpen = CircuitBreakerOpenException.find(failure);
+        updates.accept(new HermanBrokerUpdate()
+            .withStatus(HermanBrokerStatus.ERROR)
+            .withPhase(phase)
+            .withMessage(circuitBreakerOpen != null
+                ? String.format("%s failed: %s", phaseName, circuitBreakerOpen.getMessage())
+                : String.format("%s failed. See logs.", phaseName)));
     }
-}
\ No newline at end of file
+}
@@ -21,4 +21,12 @@ import org.springframework.cloud.function.adapter.aws.SpringBootRequestHandler;
 
 public class NewRelicBrokerHandler extends SpringBootRequestHandler<NewRelicBrokerRequest, NewRelicBrokerResponse> {
 
+    /**
+     * Starts the application context, and with it the broker warm-up, while Lambda initializes the container
+     * instead of on the first invocation.
+     */
+    public NewRelicBrokerHandler() {
+        super();
+        initialize();
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerJobState;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerJobStatus;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Asynchronous entry point: {@link #submit(NewRelicBrokerRequest)} queues a request and returns its job ID right
+ * away, a fixed pool of workers drains the bounded queue, and {@link #getStatus(String)} reports the updates
+ * gathered so far. Intended for the long-running server mode, where a job outlives the submitting call.
+ *
+ * <p>A finished job is {@code COMPLETED} or, if its last update is an error, {@code FAILED}. A job the full queue
+ * turns away is reported {@code REJECTED} once, by {@link #submit(NewRelicBrokerRequest)}, and is not kept.
+ *
+ * <p>Queued and running jobs are kept until they finish; there are never more of them than workers and queue
+ * slots. Only then does a job move to a cache bounded by count, where its retention period starts.
+ */
+@Component
+public class NewRelicBrokerJobs {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NewRelicBrokerJobs.class);
+
+    private final NewRelicBrokerController newRelicBrokerController;
+    private final ThreadPoolExecutor workers;
+    private final ConcurrentMap<String, Job> activeJobs = new ConcurrentHashMap<>();
+    private final LruCache<String, Job> finishedJobs;
+
+    @Autowired
+    public NewRelicBrokerJobs(NewRelicBrokerController newRelicBrokerController,
+        NewRelicBrokerProperties properties) {
+        NewRelicBrokerProperties.Jobs jobProperties = properties.getJobs();
+
+        this.newRelicBrokerController = newRelicBrokerController;
+        this.workers = new ThreadPoolExecutor(
+            jobProperties.getWorkers(),
+            jobProperties.getWorkers(),
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(jobProperties.getQueueCapacity()),
+            new CustomizableThreadFactory("newrelic-broker-job-"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.finishedJobs = new LruCache<>(jobProperties.getMaxRetained(), jobProperties.getRetentionMinutes(),
+            TimeUnit.MINUTES);
+    }
+
+    public NewRelicBrokerJobStatus submit(NewRelicBrokerRequest newRelicBrokerRequest) {
+        Job job = new Job(UUID.randomUUID().toString());
+        // Kept before it is queued, so a job that finishes at once still finds itself to move
+        activeJobs.put(job.id, job);
+        try {
+            workers.execute(() -> run(job, newRelicBrokerRequest));
+        } catch (RejectedExecutionException ex) {
+            activeJobs.remove(job.id);
+            LOG.warn("Rejecting New Relic Broker job for policy {}: job queue is full",
+                newRelicBrokerRequest.getPolicyName());
+            job.state = NewRelicBrokerJobState.REJECTED;
+            return job.toStatus();
+        }
+        return job.toStatus();
+    }
+
+    public NewRelicBrokerJobStatus getStatus(String jobId) {
+        // Active jobs first: a finishing job is added to the finished ones before it leaves the active ones
+        Job job = activeJobs.get(jobId);
+        if (job == null) {
+            job = finishedJobs.get(jobId);
+        }
+        if (job == null) {
+            return new NewRelicBrokerJobStatus()
+                .withJobId(jobId)
+                .withState(NewRelicBrokerJobState.UNKNOWN);
+        }
+        return job.toStatus();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private void run(Job job, NewRelicBrokerRequest newRelicBrokerRequest) {
+        job.state = NewRelicBrokerJobState.RUNNING;
+        boolean completed = false;
+        try {
+            job.applicationId = newRelicBrokerController.process(newRelicBrokerRequest, job::add);
+            completed = true;
+        } finally {
+            job.state = completed && !job.lastUpdateFailed
+                ? NewRelicBrokerJobState.COMPLETED
+                : NewRelicBrokerJobState.FAILED;
+            finishedJobs.put(job.id, job);
+            activeJobs.remove(job.id);
+        }
+    }
+
+    private static class Job {
+
+        final String id;
+        final List<HermanBrokerUpdate> updates = new ArrayList<>();
+        volatile NewRelicBrokerJobState state = NewRelicBrokerJobState.QUEUED;
+        volatile String applicationId;
+        volatile boolean lastUpdateFailed;
+
+        Job(String id) {
+            this.id = id;
+        }
+
+        void add(HermanBrokerUpdate update) {
+            synchronized (updates) {
+                updates.add(update);
+                lastUpdateFailed = update.getStatus() == HermanBrokerStatus.ERROR;
+            }
+        }
+
+        NewRelicBrokerJobStatus toStatus() {
+            List<HermanBrokerUpdate> snapshot;
+            synchronized (updates) {
+                snapshot = new ArrayList<>(updates);
+            }
+            return new NewRelicBrokerJobStatus()
+                .withJobId(id)
+                .withState(state)
+                .withApplicationId(applicationId)
+                .withUpdates(snapshot);
+        }
+    }
+}
@@ -22,6 +22,30 @@ public class NewRelicBrokerProperties {
 
 	public String apiKey;
 
+	private Compression compression = new Compression();
+
+	private Accounts accounts = new Accounts();
+
+	private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+	private Execution execution = new Execution();
+
+	private Jobs jobs = new Jobs();
+
+	private Warmup warmup = new Warmup();
+
+	private Transport transport = new Transport();
+
+	private NerdGraph nerdGraph = new NerdGraph();
+
+	private Telemetry telemetry = new Telemetry();
+
+	private PayloadLogging payloadLogging = new PayloadLogging();
+
+	private Recording recording = new Recording();
+
+	private Replay replay = new Replay();
+
 	public String getApiKey() {
 		return apiKey;
 	}
@@ -29,4 +53,922 @@ public class NewRelicBrokerProperties {
 	public void setApiKey(String apiKey) {
 		this.apiKey = apiKey;
 	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
+	public Accounts getAccounts() {
+		return accounts;
+	}
+
+	public void setAccounts(Accounts accounts) {
+		this.accounts = accounts;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	public Execution getExecution() {
+		return execution;
+	}
+
+	public void setExecution(Execution execution) {
+		this.execution = execution;
+	}
+
+	public Jobs getJobs() {
+		return jobs;
+	}
+
+	public void setJobs(Jobs jobs) {
+		this.jobs = jobs;
+	}
+
+	public Warmup getWarmup() {
+		return warmup;
+	}
+
+	public void setWarmup(Warmup warmup) {
+		this.warmup = warmup;
+	}
+
+	public Transport getTransport() {
+		return transport;
+	}
+
+	public void setTransport(Transport transport) {
+		this.transport = transport;
+	}
+
+	public NerdGraph getNerdGraph() {
+		return nerdGraph;
+	}
+
+	public void setNerdGraph(NerdGraph nerdGraph) {
+		this.nerdGraph = nerdGraph;
+	}
+
+	public Telemetry getTelemetry() {
+		return telemetry;
+	}
+
+	public void setTelemetry(Telemetry telemetry) {
+		this.telemetry = telemetry;
+	}
+
+	public PayloadLogging getPayloadLogging() {
+		return payloadLogging;
+	}
+
+	public void setPayloadLogging(PayloadLogging payloadLogging) {
+		this.payloadLogging = payloadLogging;
+	}
+
+	public Recording getRecording() {
+		return recording;
+	}
+
+	public void setRecording(Recording recording) {
+		this.recording = recording;
+	}
+
+	public Replay getReplay() {
+		return replay;
+	}
+
+	public void setReplay(Replay replay) {
+		this.replay = replay;
+	}
+
+	public static class Compression {
+
+		/**
+		 * Ask New Relic for gzip-encoded responses. Responses are decompressed as they are read.
+		 */
+		private boolean responses = true;
+
+		/**
+		 * Gzip request bodies sent to New Relic.
+		 */
+		private boolean requests = false;
+
+		/**
+		 * Request bodies smaller than this many bytes are sent uncompressed.
+		 */
+		private int minRequestSize = 2048;
+
+		public boolean isResponses() {
+			return responses;
+		}
+
+		public void setResponses(boolean responses) {
+			this.responses = responses;
+		}
+
+		public boolean isRequests() {
+			return requests;
+		}
+
+		public void setRequests(boolean requests) {
+			this.requests = requests;
+		}
+
+		public int getMinRequestSize() {
+			return minRequestSize;
+		}
+
+		public void setMinRequestSize(int minRequestSize) {
+			this.minRequestSize = minRequestSize;
+		}
+	}
+
+	public static class Accounts {
+
+		/**
+		 * Maximum number of per-request API keys kept warm at once. The configured apiKey is not counted.
+		 */
+		private int maxAccounts = 16;
+
+		/**
+		 * Maximum pooled connections per New Relic host for each API key.
+		 */
+		private int maxConnectionsPerRoute = 10;
+
+		/**
+		 * Average request budget per API key across all New Relic hosts. Zero disables rate limiting.
+		 */
+		private double requestsPerSecond = 20;
+
+		/**
+		 * Requests per API key that may be sent back to back before the rate limit applies.
+		 */
+		private int burst = 20;
+
+		/**
+		 * Maximum application lookups cached per API key.
+		 */
+		private int cacheSize = 256;
+
+		/**
+		 * How long a cached application lookup is trusted.
+		 */
+		private long cacheTtlSeconds = 300;
+
+		public int getMaxAccounts() {
+			return maxAccounts;
+		}
+
+		public void setMaxAccounts(int maxAccounts) {
+			this.maxAccounts = maxAccounts;
+		}
+
+		public int getMaxConnectionsPerRoute() {
+			return maxConnectionsPerRoute;
+		}
+
+		public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+			this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		}
+
+		public double getRequestsPerSecond() {
+			return requestsPerSecond;
+		}
+
+		public void setRequestsPerSecond(double requestsPerSecond) {
+			this.requestsPerSecond = requestsPerSecond;
+		}
+
+		public int getBurst() {
+			return burst;
+		}
+
+		public void setBurst(int burst) {
+			this.burst = burst;
+		}
+
+		public int getCacheSize() {
+			return cacheSize;
+		}
+
+		public void setCacheSize(int cacheSize) {
+			this.cacheSize = cacheSize;
+		}
+
+		public long getCacheTtlSeconds() {
+			return cacheTtlSeconds;
+		}
+
+		public void setCacheTtlSeconds(long cacheTtlSeconds) {
+			this.cacheTtlSeconds = cacheTtlSeconds;
+		}
+	}
+
+	public static class CircuitBreaker {
+
+		/**
+		 * Number of most recent calls the failure and slow-call rates are computed over.
+		 */
+		private int windowSize = 20;
+
+		/**
+		 * Calls that must be recorded before the breaker can open.
+		 */
+		private int minimumCalls = 10;
+
+		/**
+		 * Failure percentage at which the breaker opens.
+		 */
+		private double failureRateThreshold = 50;
+
+		/**
+		 * Slow-call percentage at which the breaker opens.
+		 */
+		private double slowCallRateThreshold = 80;
+
+		/**
+		 * Calls taking at least this long count as slow.
+		 */
+		private long slowCallDurationMillis = 10000;
+
+		/**
+		 * How long an open breaker rejects calls before letting probe calls through.
+		 */
+		private long openDurationSeconds = 30;
+
+		/**
+		 * Probe calls allowed while half open.
+		 */
+		private int halfOpenCalls = 3;
+
+		public int getWindowSize() {
+			return windowSize;
+		}
+
+		public void setWindowSize(int windowSize) {
+			this.windowSize = windowSize;
+		}
+
+		public int getMinimumCalls() {
+			return minimumCalls;
+		}
+
+		public void setMinimumCalls(int minimumCalls) {
+			this.minimumCalls = minimumCalls;
+		}
+
+		public double getFailureRateThreshold() {
+			return failureRateThreshold;
+		}
+
+		public void setFailureRateThreshold(double failureRateThreshold) {
+			this.failureRateThreshold = failureRateThreshold;
+		}
+
+		public double getSlowCallRateThreshold() {
+			return slowCallRateThreshold;
+		}
+
+		public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+			this.slowCallRateThreshold = slowCallRateThreshold;
+		}
+
+		public long getSlowCallDurationMillis() {
+			return slowCallDurationMillis;
+		}
+
+		public void setSlowCallDurationMillis(long slowCallDurationMillis) {
+			this.slowCallDurationMillis = slowCallDurationMillis;
+		}
+
+		public long getOpenDurationSeconds() {
+			return openDurationSeconds;
+		}
+
+		public void setOpenDurationSeconds(long openDurationSeconds) {
+			this.openDurationSeconds = openDurationSeconds;
+		}
+
+		public int getHalfOpenCalls() {
+			return halfOpenCalls;
+		}
+
+		public void setHalfOpenCalls(int halfOpenCalls) {
+			this.halfOpenCalls = halfOpenCalls;
+		}
+	}
+
+	public static class Execution {
+
+		/**
+		 * Threads dedicated to blocking New Relic I/O.
+		 */
+		private int ioThreads = 16;
+
+		/**
+		 * Tasks that may wait for an I/O thread before callers run them on their own thread.
+		 */
+		private int ioQueueCapacity = 256;
+
+		/**
+		 * Broker requests processed at the same time. Further requests wait for admission.
+		 */
+		private int maxConcurrentRequests = 32;
+
+		/**
+		 * How long a request waits for admission before it is rejected.
+		 */
+		private long admissionTimeoutMillis = 5000;
+
+		/**
+		 * Operations of a single broker request that may run on I/O threads at the same time.
+		 */
+		private int maxOperationConcurrency = 4;
+
+		public int getIoThreads() {
+			return ioThreads;
+		}
+
+		public void setIoThreads(int ioThreads) {
+			this.ioThreads = ioThreads;
+		}
+
+		public int getIoQueueCapacity() {
+			return ioQueueCapacity;
+		}
+
+		public void setIoQueueCapacity(int ioQueueCapacity) {
+			this.ioQueueCapacity = ioQueueCapacity;
+		}
+
+		public int getMaxConcurrentRequests() {
+			return maxConcurrentRequests;
+		}
+
+		public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+			this.maxConcurrentRequests = maxConcurrentRequests;
+		}
+
+		public long getAdmissionTimeoutMillis() {
+			return admissionTimeoutMillis;
+		}
+
+		public void setAdmissionTimeoutMillis(long admissionTimeoutMillis) {
+			this.admissionTimeoutMillis = admissionTimeoutMillis;
+		}
+
+		public int getMaxOperationConcurrency() {
+			return maxOperationConcurrency;
+		}
+
+		public void setMaxOperationConcurrency(int maxOperationConcurrency) {
+			this.maxOperationConcurrency = maxOperationConcurrency;
+		}
+	}
+
+	public static class Jobs {
+
+		/**
+		 * Worker threads processing asynchronous broker jobs.
+		 */
+		private int workers = 4;
+
+		/**
+		 * Jobs that may wait for a worker. Submissions beyond this are rejected.
+		 */
+		private int queueCapacity = 100;
+
+		/**
+		 * Maximum finished jobs whose status is kept for polling. Queued and running jobs are always kept.
+		 */
+		private int maxRetained = 1000;
+
+		/**
+		 * How long a job's status is kept after it finished.
+		 */
+		private long retentionMinutes = 60;
+
+		public int getWorkers() {
+			return workers;
+		}
+
+		public void setWorkers(int workers) {
+			this.workers = workers;
+		}
+
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+
+		public int getMaxRetained() {
+			return maxRetained;
+		}
+
+		public void setMaxRetained(int maxRetained) {
+			this.maxRetained = maxRetained;
+		}
+
+		public long getRetentionMinutes() {
+			return retentionMinutes;
+		}
+
+		public void setRetentionMinutes(long retentionMinutes) {
+			this.retentionMinutes = retentionMinutes;
+		}
+	}
+
+	public static class Warmup {
+
+		/**
+		 * Whether to prime the broker while the application starts, before the first request.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * Whether to open pooled connections to the New Relic hosts during warm-up.
+		 */
+		private boolean primeConnections = true;
+
+		/**
+		 * Passes of a complete broker request against an in-process transport.
+		 */
+		private int iterations = 3;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public boolean isPrimeConnections() {
+			return primeConnections;
+		}
+
+		public void setPrimeConnections(boolean primeConnections) {
+			this.primeConnections = primeConnections;
+		}
+
+		public int getIterations() {
+			return iterations;
+		}
+
+		public void setIterations(int iterations) {
+			this.iterations = iterations;
+		}
+	}
+
+	public static class Transport {
+
+		public enum Protocol {
+			HTTP1, HTTP2, REPLAY
+		}
+
+		/**
+		 * HTTP engine used to talk to New Relic: pooled HTTP/1.1 connections, HTTP/2 with requests multiplexed
+		 * over one connection per host, or REPLAY, which answers from recorded exchanges without contacting New Relic.
+		 */
+		private Protocol protocol = Protocol.HTTP1;
+
+		public Protocol getProtocol() {
+			return protocol;
+		}
+
+		public void setProtocol(Protocol protocol) {
+			this.protocol = protocol;
+		}
+	}
+
+	public static class NerdGraph {
+
+		/**
+		 * NerdGraph endpoint.
+		 */
+		private String url = "https://api.newrelic.com/graphql";
+
+		/**
+		 * User API key for NerdGraph. NerdGraph is only used for requests that run with the default
+		 * {@code newrelic.apiKey}.
+		 */
+		private String apiKey;
+
+		/**
+		 * New Relic account ID that the default API key belongs to.
+		 */
+		private long accountId = 0;
+
+		/**
+		 * Whether to create NRQL conditions and channels through batched NerdGraph mutations instead of one REST
+		 * call each.
+		 */
+		private boolean writes = false;
+
+		/**
+		 * Whether to read the application, policy, channels and monitors a request needs in one NerdGraph query
+		 * instead of separate, paged REST calls.
+		 */
+		private boolean reads = false;
+
+		/**
+		 * Most aliased mutations sent in one NerdGraph request.
+		 */
+		private int maxMutationsPerRequest = 25;
+
+		/**
+		 * Largest NerdGraph request body in bytes; a batch is split before it grows past this.
+		 */
+		private int maxRequestBytes = 65536;
+
+		public String getUrl() {
+			return url;
+		}
+
+		public void setUrl(String url) {
+			this.url = url;
+		}
+
+		public String getApiKey() {
+			return apiKey;
+		}
+
+		public void setApiKey(String apiKey) {
+			this.apiKey = apiKey;
+		}
+
+		public long getAccountId() {
+			return accountId;
+		}
+
+		public void setAccountId(long accountId) {
+			this.accountId = accountId;
+		}
+
+		public boolean isWrites() {
+			return writes;
+		}
+
+		public void setWrites(boolean writes) {
+			this.writes = writes;
+		}
+
+		public boolean isReads() {
+			return reads;
+		}
+
+		public void setReads(boolean reads) {
+			this.reads = reads;
+		}
+
+		public int getMaxMutationsPerRequest() {
+			return maxMutationsPerRequest;
+		}
+
+		public void setMaxMutationsPerRequest(int maxMutationsPerRequest) {
+			this.maxMutationsPerRequest = maxMutationsPerRequest;
+		}
+
+		public int getMaxRequestBytes() {
+			return maxRequestBytes;
+		}
+
+		public void setMaxRequestBytes(int maxRequestBytes) {
+			this.maxRequestBytes = maxRequestBytes;
+		}
+	}
+
+	public static class Telemetry {
+
+		/**
+		 * Whether to send an event per broker request to New Relic, describing the broker's own behaviour.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Event API endpoint the events are posted to, e.g.
+		 * {@code https://insights-collector.newrelic.com/v1/accounts/<accountId>/events}.
+		 */
+		private String url;
+
+		/**
+		 * Insert key sent as {@code X-Insert-Key}; may be left unset for a local sink.
+		 */
+		private String insertKey;
+
+		/**
+		 * Event type of the recorded events.
+		 */
+		private String eventType = "NewRelicBrokerRequest";
+
+		/**
+		 * Events held while waiting to be sent; further events are dropped until the buffer drains.
+		 */
+		private int bufferSize = 8192;
+
+		/**
+		 * Most events sent in one request.
+		 */
+		private int maxBatchSize = 1000;
+
+		/**
+		 * Whether a background thread sends the buffered events every flushIntervalMillis. Only for server mode:
+		 * on Lambda the container is frozen between invocations, so each request sends its events before it
+		 * returns instead.
+		 */
+		private boolean scheduledFlush = false;
+
+		/**
+		 * How often buffered events are sent, with scheduledFlush.
+		 */
+		private long flushIntervalMillis = 10000;
+
+		/**
+		 * Longest a request waits for its events to be sent, without scheduledFlush.
+		 */
+		private long flushTimeoutMillis = 2000;
+
+		/**
+		 * Without scheduledFlush, a request only sends the buffered events once at least this many are waiting, or
+		 * once the oldest has waited flushMaxAgeMillis. 1 sends them after every request.
+		 */
+		private int flushBatchSize = 100;
+
+		/**
+		 * Without scheduledFlush, how long the oldest buffered event may wait before a request sends it regardless of
+		 * flushBatchSize.
+		 */
+		private long flushMaxAgeMillis = 60000;
+
+		/**
+		 * Whether to gzip the event batches.
+		 */
+		private boolean compress = true;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public void setUrl(String url) {
+			this.url = url;
+		}
+
+		public String getInsertKey() {
+			return insertKey;
+		}
+
+		public void setInsertKey(String insertKey) {
+			this.insertKey = insertKey;
+		}
+
+		public String getEventType() {
+			return eventType;
+		}
+
+		public void setEventType(String eventType) {
+			this.eventType = eventType;
+		}
+
+		public int getBufferSize() {
+			return bufferSize;
+		}
+
+		public void setBufferSize(int bufferSize) {
+			this.bufferSize = bufferSize;
+		}
+
+		public int getMaxBatchSize() {
+			return maxBatchSize;
+		}
+
+		public void setMaxBatchSize(int maxBatchSize) {
+			this.maxBatchSize = maxBatchSize;
+		}
+
+		public boolean isScheduledFlush() {
+			return scheduledFlush;
+		}
+
+		public void setScheduledFlush(boolean scheduledFlush) {
+			this.scheduledFlush = scheduledFlush;
+		}
+
+		public long getFlushIntervalMillis() {
+			return flushIntervalMillis;
+		}
+
+		public void setFlushIntervalMillis(long flushIntervalMillis) {
+			this.flushIntervalMillis = flushIntervalMillis;
+		}
+
+		public long getFlushTimeoutMillis() {
+			return flushTimeoutMillis;
+		}
+
+		public void setFlushTimeoutMillis(long flushTimeoutMillis) {
+			this.flushTimeoutMillis = flushTimeoutMillis;
+		}
+
+		public int getFlushBatchSize() {
+			return flushBatchSize;
+		}
+
+		public void setFlushBatchSize(int flushBatchSize) {
+			this.flushBatchSize = flushBatchSize;
+		}
+
+		public long getFlushMaxAgeMillis() {
+			return flushMaxAgeMillis;
+		}
+
+		public void setFlushMaxAgeMillis(long flushMaxAgeMillis) {
+			this.flushMaxAgeMillis = flushMaxAgeMillis;
+		}
+
+		public boolean isCompress() {
+			return compress;
+		}
+
+		public void setCompress(boolean compress) {
+			this.compress = compress;
+		}
+	}
+
+	public static class PayloadLogging {
+
+		/**
+		 * Share of requests, between 0 and 1, whose payloads to and from New Relic are logged; others log summaries
+		 * only. A request can ask for its payloads to be logged with {@code debug}.
+		 */
+		private double sampleRate = 0.0;
+
+		/**
+		 * Longest logged payload in characters; longer payloads are cut off.
+		 */
+		private int maxLength = 2048;
+
+		public double getSampleRate() {
+			return sampleRate;
+		}
+
+		public void setSampleRate(double sampleRate) {
+			this.sampleRate = sampleRate;
+		}
+
+		public int getMaxLength() {
+			return maxLength;
+		}
+
+		public void setMaxLength(int maxLength) {
+			this.maxLength = maxLength;
+		}
+	}
+
+	public static class Recording {
+
+		/**
+		 * Directory New Relic exchanges are recorded to, one JSON line each, for replaying with the REPLAY
+		 * transport. Nothing is recorded if unset.
+		 */
+		private String directory;
+
+		public String getDirectory() {
+			return directory;
+		}
+
+		public void setDirectory(String directory) {
+			this.directory = directory;
+		}
+	}
+
+	public static class Replay {
+
+		public enum Latency {
+			RECORDED, FIXED, UNIFORM, LOG_NORMAL
+		}
+
+		/**
+		 * Recording file, or directory of recording files, answered from by the REPLAY transport.
+		 */
+		private String path;
+
+		/**
+		 * How long each replayed response takes.
+		 */
+		private Latency latency = Latency.RECORDED;
+
+		/**
+		 * Latency for FIXED, upper bound for UNIFORM and median for LOG_NORMAL, in milliseconds.
+		 */
+		private long latencyMillis = 100;
+
+		/**
+		 * Spread of LOG_NORMAL latencies: the standard deviation of their logarithm.
+		 */
+		private double latencySigma = 0.5;
+
+		/**
+		 * Share of requests, between 0 and 1, answered with a 503.
+		 */
+		private double errorRate = 0.0;
+
+		/**
+		 * Chance, between 0 and 1, that a request starts a burst of 429 responses.
+		 */
+		private double throttleRate = 0.0;
+
+		/**
+		 * Number of consecutive requests answered with a 429 in each burst.
+		 */
+		private int throttleBurst = 5;
+
+		/**
+		 * Seed for latencies, errors and throttling, so that runs repeat; 0 for different ones on every run.
+		 */
+		private long seed = 0;
+
+		public String getPath() {
+			return path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public Latency getLatency() {
+			return latency;
+		}
+
+		public void setLatency(Latency latency) {
+			this.latency = latency;
+		}
+
+		public long getLatencyMillis() {
+			return latencyMillis;
+		}
+
+		public void setLatencyMillis(long latencyMillis) {
+			this.latencyMillis = latencyMillis;
+		}
+
+		public double getLatencySigma() {
+			return latencySigma;
+		}
+
+		public void setLatencySigma(double latencySigma) {
+			this.latencySigma = latencySigma;
+		}
+
+		public double getErrorRate() {
+			return errorRate;
+		}
+
+		public void setErrorRate(double errorRate) {
+			this.errorRate = errorRate;
+		}
+
+		public double getThrottleRate() {
+			return throttleRate;
+		}
+
+		public void setThrottleRate(double throttleRate) {
+			this.throttleRate = throttleRate;
+		}
+
+		public int getThrottleBurst() {
+			return throttleBurst;
+		}
+
+		public void setThrottleBurst(int throttleBurst) {
+			this.throttleBurst = throttleBurst;
+		}
+
+		public long getSeed() {
+			return seed;
+		}
+
+		public void setSeed(long seed) {
+			this.seed = seed;
+		}
+	}
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicAccount;
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicAccounts;
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicClientConfig;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicApplicationDeploymentRequest;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerJobStatus;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerResponse;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicConfiguration;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ApplicationDeployment;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.CreateApplicationDeploymentRequest;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.CreateApplicationDeploymentResponse;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ListApplicationsResponse;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Primes the broker once the application context is ready, which on Lambda is during container initialization
+ * rather than inside the first invocation. It resolves the New Relic hosts, opens pooled connections to them, builds
+ * the Jackson serializers for the request, response and New Relic types, and runs complete broker requests against
+ * an in-process transport so the hot paths are loaded and compiled before real traffic arrives.
+ */
+@Component
+public class NewRelicBrokerWarmup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NewRelicBrokerWarmup.class);
+
+    private static final String WARMUP_API_KEY = "herman-newrelic-broker-warmup";
+    private static final String WARMUP_NAME = "herman-newrelic-broker-warmup";
+    private static final ObjectMapper WARMUP_JSON = new ObjectMapper();
+
+    private static final List<String> ROOT_URIS = Arrays.asList(
+        NewRelicClientConfig.API_ROOT_URI,
+        NewRelicClientConfig.INFRA_API_ROOT_URI,
+        NewRelicClientConfig.SYNTHETICS_API_ROOT_URI);
+
+    private static final List<Class<?>> JSON_TYPES = Arrays.asList(
+        NewRelicBrokerRequest.class,
+        NewRelicBrokerResponse.class,
+        NewRelicBrokerJobStatus.class,
+        HermanBrokerUpdate.class,
+        Application.class,
+        ApplicationDeployment.class,
+        CreateApplicationDeploymentRequest.class,
+        CreateApplicationDeploymentResponse.class,
+        ListApplicationsResponse.class,
+        ResourceSummary.class);
+
+    @Autowired
+    private NewRelicBrokerProperties properties;
+
+    @Autowired
+    private NewRelicAccounts newRelicAccounts;
+
+    @Autowired
+    private NewRelicClientConfig newRelicClientConfig;
+
+    @Autowired
+    private NewRelicBrokerController newRelicBrokerController;
+
+    @Autowired(required = false)
+    private ObjectMapper objectMapper;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        NewRelicBrokerProperties.Warmup warmup = properties.getWarmup();
+        if (!warmup.isEnabled()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            resolveHosts();
+            prebuildSerializers();
+            if (warmup.isPrimeConnections()) {
+                primeConnections();
+            }
+            exerciseBroker(warmup.getIterations());
+        } catch (RuntimeException ex) {
+            // Warm-up only saves time; the broker works without it
+            LOG.warn("New Relic Broker warm-up did not complete", ex);
+        }
+        LOG.info("New Relic Broker warm-up took {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void resolveHosts() {
+        for (String rootUri : ROOT_URIS) {
+            String host = URI.create(rootUri).getHost();
+            try {
+                InetAddress.getAllByName(host);
+            } catch (UnknownHostException ex) {
+                LOG.warn("Could not resolve {} during warm-up: {}", host, ex.getMessage());
+            }
+        }
+    }
+
+    private void prebuildSerializers() {
+        List<ObjectMapper> objectMappers = new ArrayList<>();
+        if (objectMapper != null) {
+            objectMappers.add(objectMapper);
+        }
+        // Every account shares these converters, so serializers built here serve all API keys
+        for (HttpMessageConverter<?> converter : newRelicAccounts.current().getRestTemplate()
+            .getMessageConverters()) {
+            if (converter instanceof MappingJackson2HttpMessageConverter) {
+                objectMappers.add(((MappingJackson2HttpMessageConverter) converter).getObjectMapper());
+            }
+        }
+
+        for (ObjectMapper mapper : objectMappers) {
+            for (Class<?> type : JSON_TYPES) {
+                try {
+                    mapper.readValue(mapper.writeValueAsBytes(BeanUtils.instantiateClass(type)), type);
+                } catch (Exception ex) {
+                    LOG.debug("Could not prebuild JSON serializers for {}", type.getName(), ex);
+                }
+            }
+        }
+    }
+
+    private void primeConnections() {
+        NewRelicAccount account = newRelicAccounts.current();
+        for (RestTemplate restTemplate : Arrays.asList(account.getRestTemplate(), account.getInfraRestTemplate(),
+            account.getSyntheticsRestTemplate())) {
+            try {
+                // Any response will do: the TLS session and the pooled connection are what is being kept
+                restTemplate.headForHeaders("/");
+            } catch (RestClientException ex) {
+                LOG.debug("Priming New Relic connection: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private void exerciseBroker(int iterations) {
+        newRelicAccounts.register(WARMUP_API_KEY, newRelicClientConfig.offlineAccount(WARMUP_API_KEY));
+        try {
+            long firstMillis = 0;
+            long lastMillis = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                newRelicBrokerController.process(warmupRequest(), update -> {
+                });
+                lastMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (i == 0) {
+                    firstMillis = lastMillis;
+                }
+            }
+            if (iterations > 0) {
+                LOG.info("New Relic Broker warm-up: first request took {} ms, request {} took {} ms", firstMillis,
+                    iterations, lastMillis);
+            }
+        } finally {
+            newRelicAccounts.unregister(WARMUP_API_KEY);
+        }
+    }
+
+    /**
+     * Whether {@code request} is one of the warm-up's own, which never reaches New Relic.
+     */
+    static boolean isWarmupRequest(NewRelicBrokerRequest request) {
+        return WARMUP_API_KEY.equals(request.getNrApiKey());
+    }
+
+    private NewRelicBrokerRequest warmupRequest() {
+        // Synthetics are left out: creating their conditions waits for the monitor to propagate
+        return new NewRelicBrokerRequest()
+            .withPolicyName(WARMUP_NAME)
+            .withNewRelicApplicationName(WARMUP_NAME)
+            .withNrApiKey(WARMUP_API_KEY)
+            .withDeployment(new NewRelicApplicationDeploymentRequest()
+                .withRevision("warmup")
+                .withVersion("warmup")
+                .withUser("warmup"))
+            .withConfiguration(new NewRelicConfiguration()
+                .withApdex("0.5")
+                .withChannels(json("[{\"name\":\"warmup\",\"type\":\"email\","
+                    + "\"configuration\":{\"recipients\":\"warmup@example.com\"}}]"))
+                .withConditions(json("[{\"name\":\"warmup\",\"type\":\"apm_app_metric\",\"metric\":\"apdex\","
+                    + "\"terms\":[{\"duration\":\"5\",\"operator\":\"below\",\"threshold\":\"0.5\","
+                    + "\"time_function\":\"all\"}]}]"))
+                .withNrqlConditions(json("[{\"name\":\"warmup\","
+                    + "\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\",\"since_value\":\"3\"},"
+                    + "\"terms\":[{\"duration\":\"5\",\"operator\":\"above\",\"threshold\":\"1\","
+                    + "\"time_function\":\"all\"}]}]"))
+                .withInfrastructureConditions(json(
+                    "[{\"name\":\"warmup\",\"type\":\"infra_host_not_reporting\"}]")));
+    }
+
+    private static JsonNode json(String json) {
+        try {
+            return WARMUP_JSON.readTree(json);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
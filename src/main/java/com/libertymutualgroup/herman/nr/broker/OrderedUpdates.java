@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Merges the updates of phases that run concurrently so that they reach the listener grouped by phase, in the order
+ * the phases were declared. The first unfinished phase streams its updates straight through; later phases are
+ * buffered until every phase before them has completed.
+ */
+class OrderedUpdates {
+
+    private final Consumer<HermanBrokerUpdate> listener;
+    private final List<List<HermanBrokerUpdate>> buffers = new ArrayList<>();
+    private final List<Boolean> completed = new ArrayList<>();
+    private int head;
+
+    OrderedUpdates(Consumer<HermanBrokerUpdate> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Declares the next phase and returns the consumer it reports to.
+     */
+    synchronized Phase phase() {
+        int index = buffers.size();
+        buffers.add(new ArrayList<>());
+        completed.add(false);
+        return new Phase(index);
+    }
+
+    /**
+     * Releases whatever is still buffered, for when every phase has finished.
+     */
+    synchronized void completeAll() {
+        for (int i = 0; i < completed.size(); i++) {
+            complete(i);
+        }
+    }
+
+    private synchronized void accept(int index, HermanBrokerUpdate update) {
+        if (index <= head) {
+            listener.accept(update);
+        } else {
+            buffers.get(index).add(update);
+        }
+    }
+
+    private synchronized void complete(int index) {
+        completed.set(index, true);
+        while (head < completed.size() && completed.get(head)) {
+            head++;
+            if (head < buffers.size()) {
+                buffers.get(head).forEach(listener);
+                buffers.get(head).clear();
+            }
+        }
+    }
+
+    class Phase implements Consumer<HermanBrokerUpdate> {
+
+        private final int index;
+
+        private Phase(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void accept(HermanBrokerUpdate update) {
+            OrderedUpdates.this.accept(index, update);
+        }
+
+        void complete() {
+            OrderedUpdates.this.complete(index);
+        }
+    }
+}
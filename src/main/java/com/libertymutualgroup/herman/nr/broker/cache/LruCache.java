@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A small thread-safe cache bounded by entry count, evicting the least recently used entry first. Entries can
+ * optionally expire a fixed time after they were written.
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Consumer<V> evictionListener;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    public LruCache(int maxSize) {
+        this(maxSize, 0, TimeUnit.SECONDS, value -> {
+        });
+    }
+
+    public LruCache(int maxSize, long ttl, TimeUnit ttlUnit) {
+        this(maxSize, ttl, ttlUnit, value -> {
+        });
+    }
+
+    /**
+     * @param ttl time to live after write; zero or less keeps entries until they are evicted
+     * @param evictionListener called with every value that is evicted or expires, while the cache lock is held
+     */
+    public LruCache(int maxSize, long ttl, TimeUnit ttlUnit, Consumer<V> evictionListener) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl > 0 ? ttlUnit.toNanos(ttl) : 0;
+        this.evictionListener = evictionListener;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    LruCache.this.evictionListener.accept(eldest.getValue().value);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry)) {
+            entries.remove(key);
+            evictionListener.accept(entry.value);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        Entry<V> previous = entries.put(key, new Entry<>(value, System.nanoTime()));
+        if (previous != null && previous.value != value) {
+            evictionListener.accept(previous.value);
+        }
+    }
+
+    /**
+     * Adds {@code value} unless {@code key} already has a value that has not expired.
+     *
+     * @return the value already cached for {@code key}, or {@code null} if {@code value} was added
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        V existing = get(key);
+        if (existing == null) {
+            put(key, value);
+        }
+        return existing;
+    }
+
+    /**
+     * Returns the value cached for {@code key}, loading and adding it on a miss. The cache stays locked while
+     * {@code loader} runs, so it must be quick; slow values are loaded outside and added with
+     * {@link #putIfAbsent(Object, Object)}.
+     */
+    public synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        return entry != null ? entry.value : null;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            evictionListener.accept(iterator.next().value);
+            iterator.remove();
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return ttlNanos > 0 && System.nanoTime() - entry.writtenNanos > ttlNanos;
+    }
+
+    private static class Entry<V> {
+
+        final V value;
+        final long writtenNanos;
+
+        Entry(V value, long writtenNanos) {
+            this.value = value;
+            this.writtenNanos = writtenNanos;
+        }
+    }
+}
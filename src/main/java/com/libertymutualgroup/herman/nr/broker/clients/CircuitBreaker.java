@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Count-based circuit breaker for one New Relic endpoint family. The breaker opens when, over the last
+ * {@code windowSize} calls, either the failure rate or the slow-call rate reaches its threshold. After
+ * {@code openDurationSeconds} it lets a few probe calls through and closes again only if they are healthy.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final int halfOpenCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    private final byte[] outcomes;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+
+    public CircuitBreaker(String name, NewRelicBrokerProperties.CircuitBreaker properties) {
+        this.name = name;
+        this.minimumCalls = properties.getMinimumCalls();
+        this.halfOpenCalls = properties.getHalfOpenCalls();
+        this.failureRateThreshold = properties.getFailureRateThreshold();
+        this.slowCallRateThreshold = properties.getSlowCallRateThreshold();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(properties.getSlowCallDurationMillis());
+        this.openNanos = TimeUnit.SECONDS.toNanos(properties.getOpenDurationSeconds());
+        this.outcomes = new byte[properties.getWindowSize()];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @throws CircuitBreakerOpenException if the call must not be attempted
+     */
+    public synchronized void acquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                throw new CircuitBreakerOpenException(name);
+            }
+            LOG.info("Circuit breaker for New Relic {} API is half open", name);
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            reset();
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                throw new CircuitBreakerOpenException(name);
+            }
+            halfOpenPermits--;
+        }
+    }
+
+    public synchronized void record(long durationNanos, boolean failed) {
+        if (state == State.OPEN) {
+            // Call started before the breaker opened
+            return;
+        }
+
+        byte outcome = (byte) ((failed ? FAILED : 0) | (durationNanos >= slowCallNanos ? SLOW : 0));
+        if (recorded == outcomes.length) {
+            byte evicted = outcomes[next];
+            failures -= evicted & FAILED;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            recorded++;
+        }
+        outcomes[next] = outcome;
+        next = (next + 1) % outcomes.length;
+        failures += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+
+        if (state == State.HALF_OPEN) {
+            if (recorded >= halfOpenCalls) {
+                if (isTripped()) {
+                    open();
+                } else {
+                    LOG.info("Circuit breaker for New Relic {} API is closed", name);
+                    state = State.CLOSED;
+                    reset();
+                }
+            }
+        } else if (recorded >= minimumCalls && isTripped()) {
+            open();
+        }
+    }
+
+    private boolean isTripped() {
+        return failures * 100.0 / recorded >= failureRateThreshold
+            || slowCalls * 100.0 / recorded >= slowCallRateThreshold;
+    }
+
+    private void open() {
+        LOG.warn("Circuit breaker for New Relic {} API is open: {} of {} calls failed, {} were slow", name, failures,
+            recorded, slowCalls);
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void reset() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
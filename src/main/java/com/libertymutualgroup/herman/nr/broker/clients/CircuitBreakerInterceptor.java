@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import java.io.IOException;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Guards a RestTemplate with a {@link CircuitBreaker}. I/O errors and 5xx responses count as failures.
+ */
+class CircuitBreakerInterceptor implements ClientHttpRequestInterceptor {
+
+    private final CircuitBreaker circuitBreaker;
+
+    CircuitBreakerInterceptor(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+        throws IOException {
+        circuitBreaker.acquirePermission();
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            failed = response.getRawStatusCode() >= 500;
+            return response;
+        } finally {
+            circuitBreaker.record(System.nanoTime() - start, failed);
+        }
+    }
+}
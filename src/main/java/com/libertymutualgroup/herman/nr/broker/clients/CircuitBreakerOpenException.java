@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Thrown instead of calling a New Relic endpoint family whose {@link CircuitBreaker} is open.
+ */
+public class CircuitBreakerOpenException extends RestClientException {
+
+    private final String endpointFamily;
+
+    public CircuitBreakerOpenException(String endpointFamily) {
+        super(String.format("New Relic %s API is unavailable; circuit breaker is open", endpointFamily));
+        this.endpointFamily = endpointFamily;
+    }
+
+    public String getEndpointFamily() {
+        return endpointFamily;
+    }
+
+    /**
+     * Returns the circuit breaker exception in the cause chain of {@code throwable}, or {@code null} if the failure
+     * was not caused by an open circuit.
+     */
+    public static CircuitBreakerOpenException find(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitBreakerOpenException) {
+                return (CircuitBreakerOpenException) cause;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+
+/**
+ * Writes the exchanges with New Relic to a file, one JSON object per line, in the order they completed. Each line
+ * holds the method, URI, status, paging and throttling headers, both bodies and how long the exchange took. API keys
+ * are scrubbed from the URI and the bodies, and no other headers are kept. {@link ReplayTransport} answers from
+ * these files.
+ */
+final class ExchangeRecorder implements Closeable {
+
+    static final String SCRUBBED = "<scrubbed>";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExchangeRecorder.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final BufferedWriter writer;
+
+    /**
+     * @param directory where to create the recording, or {@code null} to record nothing
+     */
+    ExchangeRecorder(String directory) {
+        if (directory == null) {
+            this.writer = null;
+            return;
+        }
+        Path file = Paths.get(directory).resolve(String.format("newrelic-%d.jsonl", System.currentTimeMillis()));
+        try {
+            Files.createDirectories(file.getParent());
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(String.format("Could not create New Relic recording %s", file), ex);
+        }
+        LOG.info("Recording New Relic exchanges to {}", file);
+    }
+
+    boolean isEnabled() {
+        return writer != null;
+    }
+
+    void record(HttpRequest request, byte[] requestBody, int status, HttpHeaders responseHeaders,
+        byte[] responseBody, long elapsedMillis, String apiKey) {
+        ObjectNode exchange = OBJECT_MAPPER.createObjectNode();
+        exchange.put("sequence", sequence.incrementAndGet());
+        exchange.put("method", request.getMethod().name());
+        exchange.put("uri", scrub(request.getURI().toString(), apiKey));
+        exchange.put("status", status);
+        exchange.put("elapsedMillis", elapsedMillis);
+        if (responseHeaders.getFirst("Link") != null) {
+            exchange.put("link", responseHeaders.getFirst("Link"));
+        }
+        if (responseHeaders.getFirst("Retry-After") != null) {
+            exchange.put("retryAfter", responseHeaders.getFirst("Retry-After"));
+        }
+        exchange.put("requestBody", scrub(new String(requestBody, StandardCharsets.UTF_8), apiKey));
+        exchange.put("responseBody", scrub(new String(responseBody, StandardCharsets.UTF_8), apiKey));
+
+        String line = exchange.toString();
+        synchronized (writer) {
+            try {
+                writer.write(line);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException ex) {
+                LOG.warn("Could not record New Relic exchange: {}", ex.getMessage());
+            }
+        }
+    }
+
+    static String scrub(String text, String apiKey) {
+        return apiKey == null || apiKey.isEmpty() ? text : text.replace(apiKey, SCRUBBED);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            synchronized (writer) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
+
+/**
+ * HTTP/2 through OkHttp, multiplexing concurrent requests to a host over a single connection. Hosts or JVMs that
+ * cannot negotiate HTTP/2 through ALPN are served over pooled HTTP/1.1 connections instead.
+ */
+class MultiplexedHttp2Transport implements NewRelicTransport {
+
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private final OkHttpClient httpClient;
+    private final ClientHttpRequestFactory requestFactory;
+
+    MultiplexedHttp2Transport(int maxConnectionsPerHost, int hosts, boolean compressResponses) {
+        this(maxConnectionsPerHost, hosts, compressResponses, Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+    }
+
+    /**
+     * @param protocols the protocols to offer; {@link Protocol#H2_PRIOR_KNOWLEDGE} alone speaks HTTP/2 without TLS
+     */
+    MultiplexedHttp2Transport(int maxConnectionsPerHost, int hosts, boolean compressResponses,
+        List<Protocol> protocols) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+            .protocols(protocols)
+            .connectionPool(new ConnectionPool(maxConnectionsPerHost * hosts, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES));
+        if (!compressResponses) {
+            // OkHttp asks for gzip and unwraps it transparently unless the request names an encoding itself
+            builder.addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                .header("Accept-Encoding", "identity")
+                .build()));
+        }
+
+        this.httpClient = builder.build();
+        this.requestFactory = new OkHttp3ClientHttpRequestFactory(httpClient);
+    }
+
+    OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public ClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    @Override
+    public void close() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+}
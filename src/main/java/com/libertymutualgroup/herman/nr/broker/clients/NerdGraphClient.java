@@ -0,0 +1,352 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.AccountState;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.AlertTemplate;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.MutationResult;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NotificationChannel;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NrqlCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import com.libertymutualgroup.herman.nr.broker.telemetry.PayloadLogging;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Talks to New Relic's GraphQL API. Creations are packed into as few requests as possible: each item becomes an
+ * aliased mutation, and a request holds at most {@code newrelic.nerdGraph.maxMutationsPerRequest} of them and
+ * {@code newrelic.nerdGraph.maxRequestBytes} of body. The account state a request reads is fetched in one query,
+ * plus one more per further page of channels, and of policies until the policy is found.
+ *
+ * <p>NerdGraph needs a user API key and the account ID, which are only configured for the default account, so it
+ * is only available to requests running with the default {@code newrelic.apiKey}.
+ */
+@Component
+public class NerdGraphClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NerdGraphClient.class);
+
+    private static final String NRQL_CONDITION_MUTATION =
+        "alertsNrqlConditionStaticCreate(accountId: $accountId, policyId: $policyId, condition: $%s) { id }";
+    private static final String CHANNEL_MUTATION =
+        "alertsNotificationChannelCreate(accountId: $accountId, notificationChannel: $%s) "
+            + "{ notificationChannel { id } error { description } }";
+
+    private static final String APPLICATION_QUERY =
+        "application: entitySearch(query: $applicationQuery) { results { entities { name "
+            + "... on ApmApplicationEntityOutline { applicationId } } } } ";
+    private static final String MONITOR_QUERY =
+        "monitors: entitySearch(query: $monitorQuery) { results { entities { name "
+            + "... on SyntheticMonitorEntityOutline { monitorId } } } } ";
+    private static final String POLICY_QUERY =
+        "policies: policiesSearch(cursor: $policyCursor, searchCriteria: {name: $policyName}) "
+            + "{ policies { id name } nextCursor } ";
+    private static final String CHANNEL_QUERY =
+        "channels: notificationChannels(cursor: $cursor) { channels { id name } nextCursor } ";
+
+    // Room for the query text around the variables of one item
+    private static final int MUTATION_OVERHEAD_BYTES = 256;
+
+    @Autowired
+    NewRelicAccounts newRelicAccounts;
+
+    @Autowired
+    NewRelicBrokerProperties properties;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Whether NerdGraph can be used for the account bound to the current thread.
+     */
+    public boolean isAvailable() {
+        NewRelicBrokerProperties.NerdGraph nerdGraph = properties.getNerdGraph();
+        return nerdGraph.getApiKey() != null
+            && nerdGraph.getAccountId() > 0
+            && newRelicAccounts.isDefault(newRelicAccounts.current());
+    }
+
+    public boolean isWriteEnabled() {
+        return properties.getNerdGraph().isWrites() && isAvailable();
+    }
+
+    public boolean isReadEnabled() {
+        return properties.getNerdGraph().isReads() && isAvailable();
+    }
+
+    /**
+     * Reads the application named {@code applicationName}, the alerts policy named {@code policyName}, the channels
+     * whose names start with {@code policyName} and, if {@code withMonitors}, the policy's Synthetics monitors.
+     *
+     * @param applicationName may be {@code null} if the request names no application
+     */
+    public AccountState readAccountState(String applicationName, String policyName, boolean withMonitors) {
+        long accountId = properties.getNerdGraph().getAccountId();
+        StringBuilder declarations = new StringBuilder(
+            "$accountId: Int!, $policyName: String!, $policyCursor: String, $cursor: String");
+        StringBuilder entities = new StringBuilder();
+        ObjectNode variables = objectMapper.createObjectNode();
+        variables.put("accountId", accountId);
+        variables.put("policyName", policyName);
+        variables.putNull("policyCursor");
+        variables.putNull("cursor");
+        if (applicationName != null) {
+            declarations.append(", $applicationQuery: String!");
+            entities.append(APPLICATION_QUERY);
+            variables.put("applicationQuery", entitySearch(accountId, "APM", "APPLICATION", applicationName));
+        }
+        if (withMonitors) {
+            declarations.append(", $monitorQuery: String!");
+            entities.append(MONITOR_QUERY);
+            variables.put("monitorQuery", entitySearch(accountId, "SYNTH", "MONITOR", policyName + "-synthetics"));
+        }
+
+        LOG.info("Reading account state for policy {} from NerdGraph", policyName);
+        JsonNode data = query("query(" + declarations + ") { actor { " + entities
+            + "account(id: $accountId) { alerts { " + POLICY_QUERY + CHANNEL_QUERY + "} } } }", variables);
+        JsonNode actor = data.path("actor");
+        JsonNode alerts = actor.path("account").path("alerts");
+
+        AccountState state = new AccountState()
+            .withPolicyId(findPolicyId(accountId, alerts.path("policies"), policyName));
+
+        for (JsonNode entity : actor.path("application").path("results").path("entities")) {
+            if (applicationName.equals(entity.path("name").asText()) && entity.hasNonNull("applicationId")) {
+                state.setApplication(new Application()
+                    .withId(entity.get("applicationId").asInt())
+                    .withName(applicationName));
+                break;
+            }
+        }
+
+        List<ResourceSummary> monitors = new ArrayList<>();
+        for (JsonNode entity : actor.path("monitors").path("results").path("entities")) {
+            if (entity.hasNonNull("monitorId")) {
+                monitors.add(new ResourceSummary()
+                    .withId(entity.get("monitorId").asText())
+                    .withName(entity.path("name").asText()));
+            }
+        }
+        state.setMonitors(Collections.unmodifiableList(monitors));
+
+        List<ResourceSummary> channels = new ArrayList<>();
+        JsonNode page = alerts.path("channels");
+        while (true) {
+            for (JsonNode channel : page.path("channels")) {
+                String name = channel.path("name").asText();
+                if (name.startsWith(policyName)) {
+                    channels.add(new ResourceSummary().withId(channel.path("id").asText()).withName(name));
+                }
+            }
+            String cursor = nextCursor(page);
+            if (cursor == null) {
+                break;
+            }
+            ObjectNode pageVariables = objectMapper.createObjectNode();
+            pageVariables.put("accountId", accountId);
+            pageVariables.put("cursor", cursor);
+            page = query("query($accountId: Int!, $cursor: String) { actor { account(id: $accountId) { alerts { "
+                + CHANNEL_QUERY + "} } } }", pageVariables).path("actor").path("account").path("alerts")
+                .path("channels");
+        }
+        state.setChannels(Collections.unmodifiableList(channels));
+
+        LOG.info("Read account state for policy {}: {}", policyName, PayloadLogging.payload(state));
+        return state;
+    }
+
+    /**
+     * @param conditions conditions {@link NerdGraphInputs#nrqlCondition(NrqlCondition)} can map
+     */
+    public List<MutationResult> createNrqlConditions(String policyId, List<NrqlCondition> conditions) {
+        return mutate(conditions, NerdGraphInputs::nrqlCondition, "AlertsNrqlConditionStaticInput!", policyId,
+            NRQL_CONDITION_MUTATION,
+            (data, error) -> new MutationResult()
+                .withId(data.path("id").isMissingNode() || data.path("id").isNull() ? null : data.get("id").asText())
+                .withError(error));
+    }
+
+    /**
+     * @param channels channels whose type {@link NerdGraphInputs#channel(NotificationChannel)} can map
+     */
+    public List<MutationResult> createChannels(List<NotificationChannel> channels) {
+        return mutate(channels, NerdGraphInputs::channel, "AlertsNotificationChannelCreateConfiguration!", null,
+            CHANNEL_MUTATION,
+            (data, error) -> {
+                JsonNode id = data.path("notificationChannel").path("id");
+                String description = data.path("error").path("description").asText(null);
+                return new MutationResult()
+                    .withId(id.isMissingNode() || id.isNull() ? null : id.asText())
+                    .withError(error != null ? error : description);
+            });
+    }
+
+    /**
+     * Sends {@code query} with {@code variables} and returns the whole response, {@code data} and {@code errors}.
+     */
+    public JsonNode execute(String query, ObjectNode variables) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("query", query);
+        body.set("variables", variables);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("API-Key", properties.getNerdGraph().getApiKey());
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        return newRelicAccounts.current().getRestTemplate()
+            .exchange(properties.getNerdGraph().getUrl(), HttpMethod.POST, new HttpEntity<>(body, headers),
+                JsonNode.class)
+            .getBody();
+    }
+
+    private JsonNode query(String query, ObjectNode variables) {
+        JsonNode response = execute(query, variables);
+        JsonNode errors = response.path("errors");
+        if (errors.size() > 0) {
+            throw new RuntimeException(
+                String.format("Error reading from NerdGraph: %s", PayloadLogging.truncate(errors)));
+        }
+        return response.path("data");
+    }
+
+    /**
+     * @param page the first page of {@code policiesSearch}; later pages are read until the policy is found
+     */
+    private String findPolicyId(long accountId, JsonNode page, String policyName) {
+        while (true) {
+            for (JsonNode policy : page.path("policies")) {
+                if (policyName.equals(policy.path("name").asText())) {
+                    return policy.path("id").asText();
+                }
+            }
+            String cursor = nextCursor(page);
+            if (cursor == null) {
+                return null;
+            }
+            ObjectNode pageVariables = objectMapper.createObjectNode();
+            pageVariables.put("accountId", accountId);
+            pageVariables.put("policyName", policyName);
+            pageVariables.put("policyCursor", cursor);
+            page = query("query($accountId: Int!, $policyName: String!, $policyCursor: String) { actor { "
+                + "account(id: $accountId) { alerts { " + POLICY_QUERY + "} } } }", pageVariables).path("actor")
+                .path("account").path("alerts").path("policies");
+        }
+    }
+
+    private static String nextCursor(JsonNode page) {
+        String cursor = page.path("nextCursor").asText(null);
+        return cursor == null || cursor.isEmpty() ? null : cursor;
+    }
+
+    private static String entitySearch(long accountId, String domain, String type, String name) {
+        return String.format("accountId = %d AND domain = '%s' AND type = '%s' AND name = '%s'", accountId, domain,
+            type, name.replace("\\", "\\\\").replace("'", "\\'"));
+    }
+
+    private <T extends AlertTemplate> List<MutationResult> mutate(List<T> items, Function<T, ObjectNode> toInput,
+        String inputType, String policyId, String mutationTemplate,
+        BiFunction<JsonNode, String, MutationResult> resultReader) {
+        NewRelicBrokerProperties.NerdGraph nerdGraph = properties.getNerdGraph();
+        List<ObjectNode> inputs = items.stream().map(toInput).collect(Collectors.toList());
+        List<MutationResult> results = new ArrayList<>();
+
+        int start = 0;
+        while (start < inputs.size()) {
+            int end = start;
+            int bytes = 0;
+            while (end < inputs.size() && end - start < nerdGraph.getMaxMutationsPerRequest()) {
+                int itemBytes = inputs.get(end).toString().getBytes(StandardCharsets.UTF_8).length
+                    + MUTATION_OVERHEAD_BYTES;
+                if (end > start && bytes + itemBytes > nerdGraph.getMaxRequestBytes()) {
+                    break;
+                }
+                bytes += itemBytes;
+                end++;
+            }
+
+            results.addAll(send(items.subList(start, end), inputs.subList(start, end), inputType, policyId,
+                mutationTemplate, resultReader));
+            start = end;
+        }
+        return results;
+    }
+
+    private List<MutationResult> send(List<? extends AlertTemplate> items, List<ObjectNode> inputs, String inputType,
+        String policyId, String mutationTemplate, BiFunction<JsonNode, String, MutationResult> resultReader) {
+        StringBuilder declarations = new StringBuilder("$accountId: Int!");
+        StringBuilder mutations = new StringBuilder();
+        ObjectNode variables = objectMapper.createObjectNode();
+        variables.put("accountId", properties.getNerdGraph().getAccountId());
+        if (policyId != null) {
+            declarations.append(", $policyId: ID!");
+            variables.put("policyId", policyId);
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            String alias = "m" + i;
+            declarations.append(", $").append(alias).append(": ").append(inputType);
+            mutations.append(alias).append(": ").append(String.format(mutationTemplate, alias)).append(' ');
+            variables.set(alias, inputs.get(i));
+        }
+
+        LOG.info("Sending {} NerdGraph mutations in one request", inputs.size());
+        JsonNode response = execute("mutation(" + declarations + ") { " + mutations + "}", variables);
+
+        List<MutationResult> results = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            String alias = "m" + i;
+            MutationResult result = resultReader.apply(response.path("data").path(alias), errorFor(response, alias))
+                .withName(items.get(i).getName());
+            if (!result.isSuccessful() && result.getError() == null) {
+                result.setError("No result returned");
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static String errorFor(JsonNode response, String alias) {
+        for (JsonNode error : response.path("errors")) {
+            JsonNode path = error.path("path");
+            if (path.size() > 0 && alias.equals(path.get(0).asText())) {
+                return error.path("message").asText();
+            }
+        }
+        // An error without a path (e.g. a malformed request) applies to every item
+        for (JsonNode error : response.path("errors")) {
+            if (error.path("path").size() == 0) {
+                return error.path("message").asText();
+            }
+        }
+        return null;
+    }
+}
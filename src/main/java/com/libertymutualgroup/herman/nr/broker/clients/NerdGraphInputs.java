@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.AlertTemplate;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NotificationChannel;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NrqlCondition;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translates the REST v2 shapes used in Herman templates into NerdGraph mutation inputs. A template is only
+ * translated if every field it sets has a NerdGraph equivalent; otherwise {@code null} is returned and the caller
+ * creates it through REST, so that turning on NerdGraph writes never changes what gets created.
+ */
+final class NerdGraphInputs {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private static final Set<String> NRQL_CONDITION_FIELDS = fields("type", "name", "enabled", "runbook_url",
+        "value_function", "violation_time_limit_seconds", "nrql", "terms");
+    private static final Set<String> NRQL_FIELDS = fields("query", "since_value");
+    private static final Set<String> TERM_FIELDS = fields("threshold", "duration", "time_function", "operator",
+        "priority");
+    private static final Set<String> VALUE_FUNCTIONS = fields("single_value", "sum");
+    private static final Set<String> TIME_FUNCTIONS = fields("all", "any");
+    private static final Set<String> OPERATORS = fields("above", "below", "equal");
+    private static final Set<String> PRIORITIES = fields("critical", "warning");
+
+    private static final Set<String> CHANNEL_FIELDS = fields("name", "type", "configuration");
+    private static final Map<String, Set<String>> CHANNEL_CONFIGURATION_FIELDS = new HashMap<>();
+
+    static {
+        CHANNEL_CONFIGURATION_FIELDS.put("email", fields("recipients", "include_json_attachment"));
+        CHANNEL_CONFIGURATION_FIELDS.put("slack", fields("url", "channel"));
+        CHANNEL_CONFIGURATION_FIELDS.put("pagerduty", fields("service_key"));
+        CHANNEL_CONFIGURATION_FIELDS.put("webhook", fields("base_url"));
+        CHANNEL_CONFIGURATION_FIELDS.put("victorops", fields("key", "route_key"));
+    }
+
+    private NerdGraphInputs() {
+    }
+
+    /**
+     * @return an {@code AlertsNrqlConditionStaticInput} for a REST NRQL condition, or {@code null} if it is not a
+     * static condition or sets a field that input cannot carry
+     */
+    static ObjectNode nrqlCondition(NrqlCondition condition) {
+        if (!isStaticCondition(condition)) {
+            return null;
+        }
+
+        ObjectNode input = NODES.objectNode();
+        input.put("name", condition.path("name").asText());
+        input.put("enabled", condition.path("enabled").asBoolean(true));
+        if (isSet(condition.path("runbook_url"))) {
+            input.put("runbookUrl", condition.path("runbook_url").asText());
+        }
+        if (isSet(condition.path("value_function"))) {
+            input.put("valueFunction", condition.path("value_function").asText().toUpperCase(Locale.ROOT));
+        }
+        if (isSet(condition.path("violation_time_limit_seconds"))) {
+            input.put("violationTimeLimitSeconds", condition.path("violation_time_limit_seconds").asInt());
+        }
+
+        ObjectNode nrql = input.putObject("nrql");
+        nrql.put("query", condition.path("nrql").path("query").asText());
+        if (condition.path("nrql").hasNonNull("since_value")) {
+            nrql.put("evaluationOffset", condition.path("nrql").get("since_value").asInt());
+        }
+
+        ArrayNode terms = input.putArray("terms");
+        for (JsonNode term : condition.path("terms")) {
+            ObjectNode termInput = terms.addObject();
+            termInput.put("threshold", term.path("threshold").asDouble());
+            termInput.put("thresholdDuration", term.path("duration").asInt() * 60);
+            termInput.put("thresholdOccurrences",
+                "all".equalsIgnoreCase(term.path("time_function").asText()) ? "ALL" : "AT_LEAST_ONCE");
+            termInput.put("operator", operator(term.path("operator").asText()));
+            termInput.put("priority", term.path("priority").asText("critical").toUpperCase(Locale.ROOT));
+        }
+        return input;
+    }
+
+    /**
+     * @return an {@code AlertsNotificationChannelCreateConfiguration} for a REST channel, or {@code null} if its
+     * type has no NerdGraph equivalent the broker can map or it sets a field the broker does not map, such as a
+     * webhook's payload, headers or credentials
+     */
+    static ObjectNode channel(NotificationChannel channel) {
+        String name = channel.getName();
+        JsonNode configuration = channel.path("configuration");
+        Set<String> configurationFields = CHANNEL_CONFIGURATION_FIELDS.get(channel.getType());
+        if (configurationFields == null
+            || !onlyHas(channel, CHANNEL_FIELDS)
+            || !onlyHas(configuration, configurationFields)) {
+            return null;
+        }
+        ObjectNode input = NODES.objectNode();
+
+        switch (channel.getType()) {
+            case "email":
+                ObjectNode email = input.putObject("email").put("name", name);
+                ArrayNode emails = email.putArray("emails");
+                for (String recipient : configuration.path("recipients").asText().split(",")) {
+                    if (!recipient.trim().isEmpty()) {
+                        emails.add(recipient.trim());
+                    }
+                }
+                email.put("includeJson", configuration.path("include_json_attachment").asBoolean(false));
+                return input;
+            case "slack":
+                ObjectNode slack = input.putObject("slack")
+                    .put("name", name)
+                    .put("url", configuration.path("url").asText());
+                if (configuration.hasNonNull("channel")) {
+                    slack.put("teamChannel", configuration.get("channel").asText());
+                }
+                return input;
+            case "pagerduty":
+                input.putObject("pagerDuty")
+                    .put("name", name)
+                    .put("apiKey", configuration.path("service_key").asText());
+                return input;
+            case "webhook":
+                input.putObject("webhook")
+                    .put("name", name)
+                    .put("baseUrl", configuration.path("base_url").asText());
+                return input;
+            case "victorops":
+                input.putObject("victorOps")
+                    .put("name", name)
+                    .put("key", configuration.path("key").asText())
+                    .put("routeKey", configuration.path("route_key").asText());
+                return input;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isStaticCondition(NrqlCondition condition) {
+        if (!"static".equalsIgnoreCase(condition.path("type").asText("static"))
+            || !onlyHas(condition, NRQL_CONDITION_FIELDS)
+            || !onlyHas(condition.path("nrql"), NRQL_FIELDS)
+            || !isOneOf(condition.path("value_function"), VALUE_FUNCTIONS)) {
+            return false;
+        }
+        for (JsonNode term : condition.path("terms")) {
+            if (!onlyHas(term, TERM_FIELDS)
+                || !isOneOf(term.path("time_function"), TIME_FUNCTIONS)
+                || !isOneOf(term.path("operator"), OPERATORS)
+                || !isOneOf(term.path("priority"), PRIORITIES)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@code object} sets no fields other than {@code mapped}. Null fields count as not set.
+     */
+    private static boolean onlyHas(JsonNode object, Set<String> mapped) {
+        for (Iterator<Map.Entry<String, JsonNode>> it = object.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            if (!field.getValue().isNull() && !mapped.contains(field.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@code template} sets no top-level fields other than {@code mapped}, read without copying its tree.
+     */
+    private static boolean onlyHas(AlertTemplate template, Set<String> mapped) {
+        for (String field : template.getFieldNames()) {
+            if (!template.path(field).isNull() && !mapped.contains(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOneOf(JsonNode value, Set<String> values) {
+        return !isSet(value) || values.contains(value.asText().toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isSet(JsonNode value) {
+        return !value.isMissingNode() && !value.isNull();
+    }
+
+    private static Set<String> fields(String... names) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names)));
+    }
+
+    private static String operator(String restOperator) {
+        switch (restOperator.toLowerCase(Locale.ROOT)) {
+            case "below":
+                return "BELOW";
+            case "equal":
+                return "EQUALS";
+            default:
+                return "ABOVE";
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Everything the broker keeps for one New Relic API key: its RestTemplates (sharing one {@link NewRelicTransport}),
+ * the request headers carrying the key, a shared rate-limit budget and the lookup caches.
+ *
+ * <p>The Infrastructure and Synthetics RestTemplates are only built once a request needs them, since most templates
+ * use neither.
+ *
+ * <p>Accounts are leased by {@link NewRelicAccounts} for the duration of a broker request. An account that has
+ * been evicted is closed once its last lease is released.
+ */
+public class NewRelicAccount {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NewRelicAccount.class);
+
+    private final String apiKey;
+    private final HttpHeaders httpHeaders;
+    private final RestTemplate restTemplate;
+    private final Supplier<RestTemplate> infraRestTemplateFactory;
+    private final Supplier<RestTemplate> syntheticsRestTemplateFactory;
+    private final LruCache<String, Application> applications;
+    private final List<? extends Closeable> resources;
+
+    private final AtomicInteger leases = new AtomicInteger();
+    private volatile boolean retired;
+    private boolean closed;
+
+    private volatile RestTemplate infraRestTemplate;
+    private volatile RestTemplate syntheticsRestTemplate;
+
+    NewRelicAccount(String apiKey, HttpHeaders httpHeaders, RestTemplate restTemplate,
+        Supplier<RestTemplate> infraRestTemplateFactory, Supplier<RestTemplate> syntheticsRestTemplateFactory,
+        LruCache<String, Application> applications, List<? extends Closeable> resources) {
+        this.apiKey = apiKey;
+        this.httpHeaders = httpHeaders;
+        this.restTemplate = restTemplate;
+        this.infraRestTemplateFactory = infraRestTemplateFactory;
+        this.syntheticsRestTemplateFactory = syntheticsRestTemplateFactory;
+        this.applications = applications;
+        this.resources = resources;
+    }
+
+    String getApiKey() {
+        return apiKey;
+    }
+
+    public HttpHeaders getHttpHeaders() {
+        return httpHeaders;
+    }
+
+    public RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+    public RestTemplate getInfraRestTemplate() {
+        RestTemplate template = infraRestTemplate;
+        if (template == null) {
+            synchronized (this) {
+                if (infraRestTemplate == null) {
+                    infraRestTemplate = infraRestTemplateFactory.get();
+                }
+                template = infraRestTemplate;
+            }
+        }
+        return template;
+    }
+
+    public RestTemplate getSyntheticsRestTemplate() {
+        RestTemplate template = syntheticsRestTemplate;
+        if (template == null) {
+            synchronized (this) {
+                if (syntheticsRestTemplate == null) {
+                    syntheticsRestTemplate = syntheticsRestTemplateFactory.get();
+                }
+                template = syntheticsRestTemplate;
+            }
+        }
+        return template;
+    }
+
+    public LruCache<String, Application> getApplications() {
+        return applications;
+    }
+
+    void lease() {
+        leases.incrementAndGet();
+    }
+
+    void release() {
+        if (leases.decrementAndGet() == 0 && retired) {
+            close();
+        }
+    }
+
+    void retire() {
+        retired = true;
+        if (leases.get() == 0) {
+            close();
+        }
+    }
+
+    private synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        applications.clear();
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException ex) {
+                LOG.warn("Error closing New Relic HTTP client", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Registry of {@link NewRelicAccount}s keyed by API key. Requests without a key of their own use the account for
+ * the configured {@code newrelic.apiKey}, which is never evicted; all other accounts are bounded and evicted least
+ * recently used first.
+ *
+ * <p>The account for the request being processed is bound to the current thread by {@link #enter(String)} and is
+ * what {@link NewRelicClient} and {@link NewRelicSyntheticsClient} talk to.
+ */
+public class NewRelicAccounts {
+
+    private static final ThreadLocal<NewRelicAccount> CURRENT = new ThreadLocal<>();
+
+    private final String defaultApiKey;
+    private final Function<String, NewRelicAccount> accountFactory;
+    private final LruCache<String, NewRelicAccount> accounts;
+    private NewRelicAccount defaultAccount;
+
+    public NewRelicAccounts(String defaultApiKey, int maxAccounts, Function<String, NewRelicAccount> accountFactory) {
+        this.defaultApiKey = defaultApiKey;
+        this.accountFactory = accountFactory;
+        this.accounts = new LruCache<>(maxAccounts, 0, TimeUnit.SECONDS, NewRelicAccount::retire);
+    }
+
+    /**
+     * Binds the account for {@code apiKey} to the current thread until the returned scope is closed.
+     */
+    public Scope enter(String apiKey) {
+        NewRelicAccount account = lease(apiKey);
+        Scope scope = new Scope(account, CURRENT.get());
+        CURRENT.set(account);
+        return scope;
+    }
+
+    /**
+     * Makes {@code account} the one used for {@code apiKey}, replacing any account already kept for it. Meant for
+     * accounts built outside the registry, such as {@link NewRelicClientConfig#offlineAccount(String)}.
+     */
+    public void register(String apiKey, NewRelicAccount account) {
+        synchronized (accounts) {
+            accounts.put(apiKey, account);
+        }
+    }
+
+    /**
+     * Drops and closes the account kept for {@code apiKey}, once it is no longer in use.
+     */
+    public void unregister(String apiKey) {
+        NewRelicAccount account;
+        synchronized (accounts) {
+            account = accounts.remove(apiKey);
+        }
+        if (account != null) {
+            account.retire();
+        }
+    }
+
+    /**
+     * Whether {@code account} is the one for the configured {@code newrelic.apiKey}.
+     */
+    public synchronized boolean isDefault(NewRelicAccount account) {
+        return account != null && account == defaultAccount;
+    }
+
+    public NewRelicAccount current() {
+        NewRelicAccount account = CURRENT.get();
+        return account != null ? account : getDefaultAccount();
+    }
+
+    /**
+     * Wraps {@code task} so that it runs against the account bound to the submitting thread. Used as the task
+     * decorator of the I/O executor; the submitter's scope must outlive the task.
+     */
+    public static Runnable propagate(Runnable task) {
+        NewRelicAccount account = CURRENT.get();
+        return () -> {
+            NewRelicAccount previous = CURRENT.get();
+            if (account != null) {
+                CURRENT.set(account);
+            }
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    public void close() {
+        accounts.clear();
+        synchronized (this) {
+            if (defaultAccount != null) {
+                defaultAccount.retire();
+            }
+        }
+    }
+
+    private NewRelicAccount lease(String apiKey) {
+        if (apiKey == null || apiKey.isEmpty() || apiKey.equals(defaultApiKey)) {
+            NewRelicAccount account = getDefaultAccount();
+            account.lease();
+            return account;
+        }
+
+        synchronized (accounts) {
+            NewRelicAccount account = accounts.computeIfAbsent(apiKey, accountFactory);
+            account.lease();
+            return account;
+        }
+    }
+
+    private synchronized NewRelicAccount getDefaultAccount() {
+        if (defaultAccount == null) {
+            defaultAccount = accountFactory.apply(defaultApiKey);
+        }
+        return defaultAccount;
+    }
+
+    public static class Scope implements AutoCloseable {
+
+        private final NewRelicAccount account;
+        private final NewRelicAccount previous;
+
+        Scope(NewRelicAccount account, NewRelicAccount previous) {
+            this.account = account;
+            this.previous = previous;
+        }
+
+        public NewRelicAccount getAccount() {
+            return account;
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+            account.release();
+        }
+    }
+}
@@ -17,19 +17,32 @@ package com.libertymutualgroup.herman.nr.broker.clients;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.AccountState;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ApplicationCondition;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.CreateApplicationDeploymentRequest;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.CreateApplicationDeploymentResponse;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.InfrastructureCondition;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ListApplicationsResponse;
-import java.util.HashSet;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.MutationResult;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NotificationChannel;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NrqlCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.PluginsCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.SyntheticsMonitor;
+import com.libertymutualgroup.herman.nr.broker.telemetry.PayloadLogging;
+import com.libertymutualgroup.herman.nr.broker.telemetry.RequestTelemetry;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -43,37 +56,51 @@ public class NewRelicClient {
     private static final Logger LOG = LoggerFactory.getLogger(NewRelicClient.class);
 
     @Autowired
-    @Qualifier("nr")
-    RestTemplate newRelicRestTemplate;
+    NewRelicAccounts newRelicAccounts;
 
     @Autowired
-    @Qualifier("infra")
-    RestTemplate newRelicInfraRestTemplate;
-
-    @Autowired
-    @Qualifier("synthetics")
-    RestTemplate newRelicSyntheticsTemplate;
+    NewRelicSyntheticsClient newRelicSyntheticsClient;
 
     @Autowired
-    HttpHeaders httpHeaders;
+    NewRelicLookups newRelicLookups;
 
     @Autowired
-    NewRelicSyntheticsClient newRelicSyntheticsClient;
+    NerdGraphClient nerdGraphClient;
 
     public Application getApplicationForAppName(String applicationName) {
+        NewRelicAccount account = newRelicAccounts.current();
+        LruCache<String, Application> applications = account.getApplications();
+        Application application = applications.get(applicationName);
+        if (application != null) {
+            newRelicLookups.recordApplicationHit();
+            RequestTelemetry.recordCacheHit();
+            return application;
+        }
+
+        return newRelicLookups.applications().execute(NewRelicLookups.key(account, applicationName), () -> {
+            Application found = findApplicationForAppName(applicationName);
+            if (found != null) {
+                applications.put(applicationName, found);
+            }
+            return found;
+        });
+    }
+
+    private Application findApplicationForAppName(String applicationName) {
         LOG.info("Finding New Relic applications with name {}", applicationName);
 
-        ResponseEntity<ListApplicationsResponse> listApplicationsResponseEntity = newRelicRestTemplate.exchange(
+        ResponseEntity<ListApplicationsResponse> listApplicationsResponseEntity = restTemplate().exchange(
             String.format("/applications.json?filter[name]=%s", applicationName),
             HttpMethod.GET,
-            new HttpEntity<>(httpHeaders),
+            new HttpEntity<>(httpHeaders()),
             ListApplicationsResponse.class);
 
-        LOG.info("Found New Relic applications with name {}: {}", applicationName,
-            listApplicationsResponseEntity.getBody());
+        ListApplicationsResponse applications = listApplicationsResponseEntity.getBody();
+        LOG.info("Found {} New Relic applications with name {}: {}",
+            applications != null ? applications.getApplications().size() : 0, applicationName,
+            PayloadLogging.payload(applications));
 
-        if (listApplicationsResponseEntity.getBody() != null && !listApplicationsResponseEntity.getBody()
-            .getApplications().isEmpty()) {
+        if (applications != null && !applications.getApplications().isEmpty()) {
             return listApplicationsResponseEntity.getBody().getApplications().stream()
                 .filter(application -> applicationName.equals(application.getName()))
                 .findAny()
@@ -85,112 +112,105 @@ public class NewRelicClient {
 
     public CreateApplicationDeploymentResponse createApplicationDeployment(Integer applicationId,
         CreateApplicationDeploymentRequest createApplicationDeploymentRequest) {
-        return newRelicRestTemplate
+        return restTemplate()
             .exchange(
                 String.format("/applications/%s/deployments.json", applicationId),
                 HttpMethod.POST,
-                new HttpEntity<>(createApplicationDeploymentRequest, httpHeaders),
+                new HttpEntity<>(createApplicationDeploymentRequest, httpHeaders()),
                 CreateApplicationDeploymentResponse.class)
             .getBody();
     }
 
-    public void deletePoliciesByName(String policyName) {
-
-        JsonNode alertsPoliciesResponse;
+    /**
+     * @return the ID of the first alerts policy named {@code policyName}, or {@code null} if there is none
+     */
+    public String findPolicyIdByName(String policyName) {
+        List<ResourceSummary> policies = new ArrayList<>();
         try {
-            alertsPoliciesResponse = newRelicRestTemplate
-                .exchange(
-                    String.format("/alerts_policies.json?filter[name]=%s", policyName),
-                    HttpMethod.GET,
-                    new HttpEntity<>(httpHeaders),
-                    JsonNode.class)
-                .getBody();
+            restTemplate().execute(
+                String.format("/alerts_policies.json?filter[name]=%s", policyName),
+                HttpMethod.GET,
+                ResourceSummaryScanner.withHeaders(httpHeaders()),
+                response -> {
+                    ResourceSummaryScanner.scan(response.getBody(), "policies", name -> true, true, policies);
+                    return null;
+                });
         } catch (Exception ex) {
             throw new RuntimeException(String.format("Error getting alerts policies for name %s", policyName), ex);
         }
 
-        ArrayNode policies = (ArrayNode) alertsPoliciesResponse.get("policies");
-        if (policies.size() > 0) {
-            JsonNode policy = policies.elements().next();
-            String policyId = policy.get("id").asText();
-            if (LOG.isInfoEnabled()) {
-                LOG.info("Deleting policy with ID {}", policyId);
-            }
+        return policies.isEmpty() ? null : policies.get(0).getId();
+    }
 
-            try {
-                newRelicRestTemplate
-                    .exchange(
-                        String.format("/alerts_policies/%s.json", policyId),
-                        HttpMethod.DELETE,
-                        new HttpEntity<>(httpHeaders),
-                        Void.class)
-                    .getBody();
-            } catch (Exception ex) {
-                throw new RuntimeException(String.format("Error deleting alerts policy %s", policyId), ex);
-            }
-        } else {
-            if (LOG.isInfoEnabled()) {
-                LOG.info("No policies to delete");
-            }
+    public void deletePolicy(String policyId) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Deleting policy with ID {}", policyId);
+        }
+
+        try {
+            restTemplate()
+                .exchange(
+                    String.format("/alerts_policies/%s.json", policyId),
+                    HttpMethod.DELETE,
+                    new HttpEntity<>(httpHeaders()),
+                    Void.class)
+                .getBody();
+        } catch (Exception ex) {
+            throw new RuntimeException(String.format("Error deleting alerts policy %s", policyId), ex);
         }
     }
 
-    public void deleteChannelsByApplicationName(String applicationName) {
+    /**
+     * Deletes {@code channels}, as found by {@link #findChannelsWithPrefix(String)} for {@code applicationName}.
+     */
+    public void deleteChannels(String applicationName, List<ResourceSummary> channels) {
         if (LOG.isInfoEnabled()) {
             LOG.info("Deleting channels starting with name {}", applicationName);
         }
 
-        Set<JsonNode> channels = getAllChannelsWithPrefix(applicationName);
         if (channels.isEmpty()) {
-            if (LOG.isInfoEnabled()) {
-                LOG.info(String.format("No channels found starting with name %s", applicationName));
-            }
+            LOG.info("No channels found starting with name {}", applicationName);
         } else {
-            channels.stream().forEach(channel -> {
-                String channelId = channel.get("id").asText();
-                String channelName = channel.get("name").asText();
-                LOG.info(String.format("Deleting channel with name %s and ID %s", channelName, channelId));
-                newRelicRestTemplate.exchange(
+            channels.forEach(channel -> {
+                String channelId = channel.getId();
+                String channelName = channel.getName();
+                LOG.info("Deleting channel with name {} and ID {}", channelName, channelId);
+                restTemplate().exchange(
                     String.format("/alerts_channels/%s.json", channelId),
                     HttpMethod.DELETE,
-                    new HttpEntity<>(httpHeaders),
+                    new HttpEntity<>(httpHeaders()),
                     Void.class);
             });
         }
     }
 
-    private Set<JsonNode> getAllChannelsWithPrefix(String prefix) {
-        Set<JsonNode> channels = new HashSet<>();
+    public List<ResourceSummary> findChannelsWithPrefix(String prefix) {
+        return newRelicLookups.channels().execute(NewRelicLookups.key(newRelicAccounts.current(), prefix),
+            () -> scanChannelsWithPrefix(prefix));
+    }
+
+    private List<ResourceSummary> scanChannelsWithPrefix(String prefix) {
+        List<ResourceSummary> channels = new ArrayList<>();
 
-        String linkHeader;
+        boolean hasNextPage;
         int page = 1;
         do {
-            String url = String.format("/alerts_channels.json?page=%s", page);
-            HttpEntity<JsonNode> responseEntity = newRelicRestTemplate
-                .exchange(
-                    url,
-                    HttpMethod.GET,
-                    new HttpEntity<>(httpHeaders),
-                    JsonNode.class);
-
-            ArrayNode channelArrayNode = (ArrayNode) responseEntity.getBody().get("channels");
-            channelArrayNode.elements().forEachRemaining(channel -> {
-                String channelName = channel.get("name").asText();
-                if (channelName != null && channelName.startsWith(prefix)) {
-                    channels.add(channel);
-                }
-            });
+            hasNextPage = restTemplate().execute(
+                String.format("/alerts_channels.json?page=%s", page),
+                HttpMethod.GET,
+                ResourceSummaryScanner.withHeaders(httpHeaders()),
+                response -> {
+                    ResourceSummaryScanner.scan(response.getBody(), "channels",
+                        channelName -> channelName.startsWith(prefix), false, channels);
 
-            page++;
+                    String linkHeader = response.getHeaders().getFirst("Link");
+                    return linkHeader != null && linkHeader.contains("next");
+                });
 
-            if (responseEntity.getHeaders().containsKey("Link")) {
-                linkHeader = responseEntity.getHeaders().get("Link").get(0);
-            } else {
-                linkHeader = null;
-            }
-        } while (linkHeader != null && linkHeader.contains("next"));
+            page++;
+        } while (hasNextPage);
 
-        return channels;
+        return Collections.unmodifiableList(channels);
     }
 
     public String createPolicy(String policyName) {
@@ -206,11 +226,11 @@ public class NewRelicClient {
         ObjectNode payload = objectMapper.createObjectNode();
         payload.set("policy", policy);
 
-        JsonNode result = newRelicRestTemplate
+        JsonNode result = restTemplate()
             .exchange(
                 "/alerts_policies.json",
                 HttpMethod.POST,
-                new HttpEntity<JsonNode>(payload, httpHeaders),
+                new HttpEntity<JsonNode>(payload, httpHeaders()),
                 JsonNode.class)
             .getBody();
 
@@ -222,112 +242,138 @@ public class NewRelicClient {
             LOG.info("Finding component entity IDs with name {}", componentName);
         }
 
-        JsonNode response = newRelicRestTemplate
-            .exchange(
-                String.format("/components.json?filter[name]=%s", componentName),
-                HttpMethod.GET,
-                new HttpEntity<>(httpHeaders),
-                JsonNode.class)
-            .getBody();
+        List<ResourceSummary> components = new ArrayList<>();
+        restTemplate().execute(
+            String.format("/components.json?filter[name]=%s", componentName),
+            HttpMethod.GET,
+            ResourceSummaryScanner.withHeaders(httpHeaders()),
+            response -> {
+                ResourceSummaryScanner.scan(response.getBody(), "components", componentName::equals, true,
+                    components);
+                return null;
+            });
 
-        ArrayNode applications = (ArrayNode) response.get("components");
-        Iterator<JsonNode> elementsIterator = applications.elements();
-        while (elementsIterator.hasNext()) {
-            JsonNode element = elementsIterator.next();
-            if (componentName.equals(element.get("name").asText())) {
-                String entityId = element.get("id").asText();
-                if (LOG.isInfoEnabled()) {
-                    LOG.info("Component found: {}", entityId);
-                }
-                return entityId;
-            }
+        if (components.isEmpty()) {
+            return null;
+        }
+        String entityId = components.get(0).getId();
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Component found: {}", entityId);
         }
-        return null;
+        return entityId;
     }
 
-    public void createApplicationAlertsConditions(String policyId, JsonNode condition) {
+    /**
+     * Creates {@code condition} for the application {@code applicationId}, which is set as its only entity.
+     */
+    public void createApplicationAlertsConditions(String policyId, String applicationId,
+        ApplicationCondition condition) {
         if (LOG.isInfoEnabled()) {
             LOG.info("Creating application alerts condition with name {} under policy ID {}",
-                condition.get("name").asText(), policyId);
+                condition.getName(), policyId);
         }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        ObjectNode payload = objectMapper.createObjectNode();
-        payload.set("condition", condition);
+        PassthroughBody payload = new PassthroughBody("condition",
+            condition.withEntities(Collections.singletonList(applicationId)));
 
         try {
-            newRelicRestTemplate
+            restTemplate()
                 .exchange(
                     String.format("/alerts_conditions/policies/%s.json", policyId),
                     HttpMethod.POST,
-                    new HttpEntity<JsonNode>(payload, httpHeaders),
+                    new HttpEntity<>(payload, httpHeaders()),
                     Void.class);
         } catch (Exception ex) {
             throw new RuntimeException(String.format("Error creating application alerts condition for policy %s: %s",
                 policyId,
-                payload.toString()),
+                PayloadLogging.truncate(payload)),
                 ex);
         }
     }
 
-    public void createPluginsCondition(String policyId, JsonNode pluginsCondition) {
+    public void createPluginsCondition(String policyId, PluginsCondition pluginsCondition) {
         if (LOG.isInfoEnabled()) {
             LOG.info("Creating plugins condition with name {} under policy ID {}",
-                pluginsCondition.get("name").asText(),
+                pluginsCondition.getName(),
                 policyId);
         }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        ObjectNode payload = objectMapper.createObjectNode();
-        payload.set("plugins_condition", pluginsCondition);
+        PassthroughBody payload = new PassthroughBody("plugins_condition", pluginsCondition);
 
         try {
-            newRelicRestTemplate
+            restTemplate()
                 .exchange(
                     String.format("/alerts_plugins_conditions/policies/%s.json", policyId),
                     HttpMethod.POST,
-                    new HttpEntity<JsonNode>(payload, httpHeaders),
+                    new HttpEntity<>(payload, httpHeaders()),
                     Void.class
                 );
         } catch (Exception ex) {
             throw new RuntimeException(String.format("Error creating plugins conditions for policy %s: %s",
                 policyId,
-                payload.toString()),
+                PayloadLogging.truncate(payload)),
                 ex);
         }
 
     }
 
-    public String createChannel(JsonNode channel) {
+    public String createChannel(NotificationChannel channel) {
         if (LOG.isInfoEnabled()) {
-            LOG.info("Creating channel with name {}", channel.get("name").asText());
+            LOG.info("Creating channel with name {}", channel.getName());
         }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        ObjectNode payload = objectMapper.createObjectNode();
-        payload.set("channel", channel);
+        PassthroughBody payload = new PassthroughBody("channel", channel);
 
-        JsonNode result = newRelicRestTemplate
+        JsonNode result = restTemplate()
             .exchange(
                 "/alerts_channels.json",
                 HttpMethod.POST,
-                new HttpEntity<JsonNode>(payload, httpHeaders),
+                new HttpEntity<>(payload, httpHeaders()),
                 JsonNode.class)
             .getBody();
 
         return result.get("channels").get(0).get("id").asText();
     }
 
+    /**
+     * Creates {@code channels}, in one batched NerdGraph request where batched writes are enabled and the channel
+     * type can be mapped, and one REST call each otherwise.
+     *
+     * @return a result per channel, in the same order
+     */
+    public List<MutationResult> createChannels(List<NotificationChannel> channels) {
+        boolean batched = isBatchWriteEnabled();
+        List<NotificationChannel> viaNerdGraph = batched
+            ? channels.stream().filter(channel -> NerdGraphInputs.channel(channel) != null).collect(Collectors.toList())
+            : Collections.emptyList();
+        Iterator<MutationResult> nerdGraphResults = viaNerdGraph.isEmpty()
+            ? Collections.<MutationResult>emptyList().iterator()
+            : nerdGraphClient.createChannels(viaNerdGraph).iterator();
+
+        List<MutationResult> results = new ArrayList<>();
+        for (NotificationChannel channel : channels) {
+            if (batched && NerdGraphInputs.channel(channel) != null) {
+                results.add(nerdGraphResults.next());
+            } else {
+                results.add(new MutationResult()
+                    .withName(channel.getName())
+                    .withId(createChannel(channel)));
+            }
+        }
+        return results;
+    }
+
     public void addChannelsToPolicy(Set<String> channelIds, String policyId) {
-        LOG.info("Adding channels {} to policy with ID {}", channelIds, policyId);
+        LOG.info("Adding {} channels to policy with ID {}: {}", channelIds.size(), policyId,
+            PayloadLogging.payload(channelIds));
 
-        newRelicRestTemplate
+        restTemplate()
             .exchange(
                 String.format("/alerts_policy_channels.json?policy_id=%s&channel_ids=%s",
                     policyId,
                     String.join(",", channelIds)),
                 HttpMethod.PUT,
-                new HttpEntity<JsonNode>(httpHeaders),
+                new HttpEntity<JsonNode>(httpHeaders()),
                 Void.class);
     }
 
@@ -343,73 +389,157 @@ public class NewRelicClient {
         ObjectNode applicationUpdateNode = mapper.createObjectNode();
         applicationUpdateNode.set("application", applicationNode);
 
-        if (LOG.isInfoEnabled()) {
-            LOG.info("Updating application {}: {}", applicationId, applicationUpdateNode.toString());
-        }
+        LOG.info("Updating application {}: {}", applicationId, PayloadLogging.payload(applicationUpdateNode));
 
-        newRelicRestTemplate
+        restTemplate()
             .exchange(
                 String.format("/applications/%s.json", applicationId),
                 HttpMethod.PUT,
-                new HttpEntity(applicationUpdateNode, httpHeaders),
+                new HttpEntity(applicationUpdateNode, httpHeaders()),
                 Void.class);
     }
 
-    public void createNrqlAlertsConditions(String policyId, JsonNode condition) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        ObjectNode payload = objectMapper.createObjectNode();
-        payload.set("nrql_condition", condition);
+    /**
+     * Whether the state a request reads from the current account can be fetched in one NerdGraph query.
+     */
+    public boolean isBatchReadEnabled() {
+        return nerdGraphClient.isReadEnabled();
+    }
+
+    /**
+     * Reads, in one NerdGraph query, what {@link #getApplicationForAppName(String)},
+     * {@link #findPolicyIdByName(String)}, {@link #findChannelsWithPrefix(String)} and
+     * {@link #findExistingSyntheticsMonitors(String)} would. Only valid if {@link #isBatchReadEnabled()}.
+     */
+    public AccountState readAccountState(String applicationName, String policyName, boolean withMonitors) {
+        AccountState state = nerdGraphClient.readAccountState(applicationName, policyName, withMonitors);
+        if (state.getApplication() != null) {
+            newRelicAccounts.current().getApplications().put(applicationName, state.getApplication());
+        }
+        return state;
+    }
+
+    /**
+     * Whether conditions and channels for the current account can be created in batches through NerdGraph.
+     */
+    public boolean isBatchWriteEnabled() {
+        return nerdGraphClient.isWriteEnabled();
+    }
+
+    /**
+     * Creates NRQL conditions, in batched NerdGraph mutations where NerdGraph can take the condition unchanged, and
+     * one REST call each otherwise, such as for baseline and outlier conditions. Only valid if
+     * {@link #isBatchWriteEnabled()}.
+     *
+     * @return a result per condition, in the same order
+     */
+    public List<MutationResult> createNrqlAlertsConditions(String policyId, List<NrqlCondition> conditions) {
+        List<NrqlCondition> viaNerdGraph = conditions.stream()
+            .filter(condition -> NerdGraphInputs.nrqlCondition(condition) != null)
+            .collect(Collectors.toList());
+        Iterator<MutationResult> nerdGraphResults = viaNerdGraph.isEmpty()
+            ? Collections.<MutationResult>emptyList().iterator()
+            : nerdGraphClient.createNrqlConditions(policyId, viaNerdGraph).iterator();
+
+        List<MutationResult> results = new ArrayList<>();
+        for (NrqlCondition condition : conditions) {
+            if (NerdGraphInputs.nrqlCondition(condition) != null) {
+                results.add(nerdGraphResults.next());
+            } else {
+                results.add(new MutationResult()
+                    .withName(condition.getName())
+                    .withId(createNrqlCondition(policyId, condition)));
+            }
+        }
+        return results;
+    }
+
+    public void createNrqlAlertsConditions(String policyId, NrqlCondition condition) {
+        createNrqlCondition(policyId, condition);
+    }
+
+    /**
+     * @return the ID of the new condition
+     */
+    private String createNrqlCondition(String policyId, NrqlCondition condition) {
+        PassthroughBody payload = new PassthroughBody("nrql_condition", condition);
 
         try {
-            newRelicRestTemplate
+            JsonNode result = restTemplate()
                 .exchange(
                     String.format("/alerts_nrql_conditions/policies/%s.json", policyId),
                     HttpMethod.POST,
-                    new HttpEntity<JsonNode>(payload, httpHeaders),
-                    Void.class
-                );
+                    new HttpEntity<>(payload, httpHeaders()),
+                    JsonNode.class
+                )
+                .getBody();
+            return result != null ? result.path("nrql_condition").path("id").asText() : "";
         } catch (Exception ex) {
             throw new RuntimeException(String.format("Error creating nrql conditions for policy %s: %s",
                 policyId,
-                payload.toString()),
+                PayloadLogging.truncate(payload)),
                 ex);
         }
     }
 
-    public void createInfraAlertsConditions(String policyId, JsonNode condition) {
+    public void createInfraAlertsConditions(String policyId, InfrastructureCondition condition) {
         LOG.info("Creating infrastructure condition under policy ID {}", policyId);
-        ObjectMapper objectMapper = new ObjectMapper();
-        ObjectNode data = ((ObjectNode) condition).put("policy_id", Integer.parseInt(policyId));
-        ObjectNode payload = objectMapper.createObjectNode();
-        payload.set("data", data);
+        PassthroughBody payload = new PassthroughBody("data", condition.withPolicyId(Integer.parseInt(policyId)));
 
         try {
-            newRelicInfraRestTemplate
+            infraRestTemplate()
                 .exchange(
                     "/alerts/conditions",
                     HttpMethod.POST,
-                    new HttpEntity<JsonNode>(payload, httpHeaders),
+                    new HttpEntity<>(payload, httpHeaders()),
                     Void.class
                 );
         } catch (Exception e) {
             throw new RuntimeException(String.format("Error creating Infrastructure conditions for policy %s: %s",
                 policyId,
-                payload),
+                PayloadLogging.truncate(payload)),
                 e);
         }
     }
 
-    public void createSynthetics(JsonNode synthetics, String policyName, String polciyId) {
+    private RestTemplate restTemplate() {
+        return newRelicAccounts.current().getRestTemplate();
+    }
+
+    private RestTemplate infraRestTemplate() {
+        return newRelicAccounts.current().getInfraRestTemplate();
+    }
+
+    private HttpHeaders httpHeaders() {
+        return newRelicAccounts.current().getHttpHeaders();
+    }
+
+    public void createSynthetics(SyntheticsMonitor synthetics, String policyName, String polciyId) {
         deleteExistingSyntheticsMonitors(policyName);
         createSyntheticsMonitors(synthetics, policyName);
         createSyntheticsConditions(policyName, polciyId);
     }
 
+    /**
+     * Like {@link #createSynthetics(SyntheticsMonitor, String, String)}, replacing monitors that were already looked
+     * up with {@link #findExistingSyntheticsMonitors(String)}.
+     */
+    public void createSynthetics(SyntheticsMonitor synthetics, String policyName, String polciyId,
+        List<ResourceSummary> existingMonitors) {
+        newRelicSyntheticsClient.deleteSyntheticsMonitors(policyName, existingMonitors);
+        createSyntheticsMonitors(synthetics, policyName);
+        createSyntheticsConditions(policyName, polciyId);
+    }
+
+    public List<ResourceSummary> findExistingSyntheticsMonitors(String policyName) {
+        return newRelicSyntheticsClient.findExistingSyntheticsMonitors(policyName);
+    }
+
     private void deleteExistingSyntheticsMonitors(String policyName) {
         newRelicSyntheticsClient.deleteExistingSyntheticsMonitors(policyName);
     }
 
-    private void createSyntheticsMonitors(JsonNode synthetics, String policyName) {
+    private void createSyntheticsMonitors(SyntheticsMonitor synthetics, String policyName) {
         newRelicSyntheticsClient.createSyntheticsMonitors(synthetics, policyName);
     }
 
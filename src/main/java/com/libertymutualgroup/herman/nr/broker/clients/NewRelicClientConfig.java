@@ -16,46 +16,163 @@
 package com.libertymutualgroup.herman.nr.broker.clients;
 
 import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import com.libertymutualgroup.herman.nr.broker.telemetry.RequestTelemetryInterceptor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Primary;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.util.Assert;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
 @EnableRetry
 public class NewRelicClientConfig {
 
+    public static final String API_ROOT_URI = "https://api.newrelic.com/v2";
+    public static final String INFRA_API_ROOT_URI = "https://infra-api.newrelic.com/v2/";
+    public static final String SYNTHETICS_API_ROOT_URI = "https://synthetics.newrelic.com/synthetics/api/v3";
+
+    private static final int HOSTS = 3;
+
+    // Shared by every account, so Jackson serializers are built once rather than per API key. Alert template bodies
+    // are written from their prebuilt JSON, ahead of Jackson's converter.
+    private final List<HttpMessageConverter<?>> messageConverters = messageConverters();
+
     @Autowired
     NewRelicBrokerProperties properties;
 
+    private ReplayTransport.Recordings replayRecordings;
+
+    @Bean
+    NewRelicAccounts newRelicAccounts() {
+        return new NewRelicAccounts(properties.getApiKey(), properties.getAccounts().getMaxAccounts(),
+            this::newRelicAccount);
+    }
+
     @Bean
-    @Primary
     @Qualifier("nr")
-    RestTemplate newRelicRestTemplate() {
-        return new RestTemplateBuilder().rootUri("https://api.newrelic.com/v2").build();
+    CircuitBreaker newRelicCircuitBreaker() {
+        return new CircuitBreaker("nr", properties.getCircuitBreaker());
     }
 
     @Bean
     @Qualifier("infra")
-    RestTemplate newRelicInfraRestTemplate() {
-        return new RestTemplateBuilder().rootUri("https://infra-api.newrelic.com/v2/").build();
+    CircuitBreaker newRelicInfraCircuitBreaker() {
+        return new CircuitBreaker("infra", properties.getCircuitBreaker());
     }
 
     @Bean
     @Qualifier("synthetics")
-    RestTemplate newRelicSyntheticsTemplate() {
-        return new RestTemplateBuilder().rootUri("https://synthetics.newrelic.com/synthetics/api/v3").build();
+    CircuitBreaker newRelicSyntheticsCircuitBreaker() {
+        return new CircuitBreaker("synthetics", properties.getCircuitBreaker());
     }
 
     @Bean
-    HttpHeaders httpHeaders() {
+    ExchangeRecorder exchangeRecorder() {
+        return new ExchangeRecorder(properties.getRecording().getDirectory());
+    }
+
+    NewRelicAccount newRelicAccount(String apiKey) {
+        NewRelicTransport transport = newRelicTransport(apiKey);
+        return newRelicAccount(apiKey, transport, !(transport instanceof ReplayTransport));
+    }
+
+    /**
+     * An account whose requests are answered in-process and never reach New Relic, for exercising the broker
+     * without side effects.
+     */
+    public NewRelicAccount offlineAccount(String apiKey) {
+        return newRelicAccount(apiKey, new OfflineClientHttpRequestFactory(), false);
+    }
+
+    private NewRelicTransport newRelicTransport(String apiKey) {
+        int maxConnectionsPerRoute = properties.getAccounts().getMaxConnectionsPerRoute();
+        boolean compressResponses = properties.getCompression().isResponses();
+
+        switch (properties.getTransport().getProtocol()) {
+            case HTTP2:
+                return new MultiplexedHttp2Transport(maxConnectionsPerRoute, HOSTS, compressResponses);
+            case REPLAY:
+                return new ReplayTransport(replayRecordings(), properties.getReplay(), apiKey);
+            case HTTP1:
+            default:
+                return new PooledHttp1Transport(maxConnectionsPerRoute, HOSTS, compressResponses);
+        }
+    }
+
+    private synchronized ReplayTransport.Recordings replayRecordings() {
+        if (replayRecordings == null) {
+            Assert.hasText(properties.getReplay().getPath(), "newrelic.replay.path is required for REPLAY");
+            replayRecordings = ReplayTransport.Recordings.load(properties.getReplay().getPath());
+        }
+        return replayRecordings;
+    }
+
+    /**
+     * @param recorded whether the account's exchanges go to the {@link ExchangeRecorder}, if recording is on
+     */
+    private NewRelicAccount newRelicAccount(String apiKey, NewRelicTransport transport, boolean recorded) {
+        NewRelicBrokerProperties.Accounts accounts = properties.getAccounts();
+
+        // Interceptors shared by the three hosts, so the rate limit is a single budget for the API key. Circuit
+        // breakers are per host and shared by every account, since an outage affects all keys alike. Exchanges are
+        // recorded before compression, with the bodies as the clients wrote them.
+        List<ClientHttpRequestInterceptor> interceptors = new ArrayList<>();
+        if (accounts.getRequestsPerSecond() > 0) {
+            interceptors.add(new RateLimitingInterceptor(accounts.getRequestsPerSecond(), accounts.getBurst()));
+        }
+        if (recorded && exchangeRecorder().isEnabled()) {
+            interceptors.add(new RecordingInterceptor(exchangeRecorder(), apiKey));
+        }
+        if (properties.getCompression().isRequests()) {
+            interceptors.add(new GzipRequestInterceptor(properties.getCompression().getMinRequestSize()));
+        }
+
+        ClientHttpRequestFactory requestFactory = transport.getRequestFactory();
+        return new NewRelicAccount(
+            apiKey,
+            httpHeaders(apiKey),
+            restTemplate(API_ROOT_URI, newRelicCircuitBreaker(), interceptors, requestFactory),
+            () -> restTemplate(INFRA_API_ROOT_URI, newRelicInfraCircuitBreaker(), interceptors, requestFactory),
+            () -> restTemplate(SYNTHETICS_API_ROOT_URI, newRelicSyntheticsCircuitBreaker(), interceptors,
+                requestFactory),
+            new LruCache<>(accounts.getCacheSize(), accounts.getCacheTtlSeconds(), TimeUnit.SECONDS),
+            Collections.singletonList(transport));
+    }
+
+    private RestTemplate restTemplate(String rootUri, CircuitBreaker circuitBreaker,
+        List<ClientHttpRequestInterceptor> interceptors, ClientHttpRequestFactory requestFactory) {
+        return new RestTemplateBuilder()
+            .requestFactory(requestFactory)
+            .messageConverters(messageConverters)
+            .additionalInterceptors(interceptors)
+            .additionalInterceptors(new CircuitBreakerInterceptor(circuitBreaker))
+            .additionalInterceptors(new RequestTelemetryInterceptor())
+            .rootUri(rootUri)
+            .build();
+    }
+
+    private static List<HttpMessageConverter<?>> messageConverters() {
+        List<HttpMessageConverter<?>> messageConverters = new ArrayList<>();
+        messageConverters.add(new PassthroughBodyHttpMessageConverter());
+        messageConverters.addAll(new RestTemplate().getMessageConverters());
+        return messageConverters;
+    }
+
+    private HttpHeaders httpHeaders(String apiKey) {
         HttpHeaders headers = new HttpHeaders();
-        headers.set("X-Api-Key", properties.getApiKey());
+        headers.set("X-Api-Key", apiKey);
         headers.set("Content-Type", "application/json");
         return headers;
     }
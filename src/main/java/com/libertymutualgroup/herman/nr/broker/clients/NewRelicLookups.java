@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.libertymutualgroup.herman.nr.broker.cache.SingleFlight;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single-flight groups for the read-only lookups that concurrent broker requests tend to repeat. Keys are scoped
+ * to the {@link NewRelicAccount}, so requests for different API keys never share a result.
+ *
+ * <p>Only applications are cached in front of their group, per account, so only they report cache hits.
+ */
+@Component
+public class NewRelicLookups {
+
+    private final SingleFlight<Entry<NewRelicAccount, String>, Application> applications = new SingleFlight<>();
+    private final SingleFlight<Entry<NewRelicAccount, String>, List<ResourceSummary>> channels = new SingleFlight<>();
+    private final SingleFlight<Entry<NewRelicAccount, String>, List<ResourceSummary>> monitors = new SingleFlight<>();
+    private final LongAdder applicationHits = new LongAdder();
+
+    SingleFlight<Entry<NewRelicAccount, String>, Application> applications() {
+        return applications;
+    }
+
+    SingleFlight<Entry<NewRelicAccount, String>, List<ResourceSummary>> channels() {
+        return channels;
+    }
+
+    SingleFlight<Entry<NewRelicAccount, String>, List<ResourceSummary>> monitors() {
+        return monitors;
+    }
+
+    /**
+     * Counts an application lookup answered by the account's application cache without reaching the group.
+     */
+    void recordApplicationHit() {
+        applicationHits.increment();
+    }
+
+    static Entry<NewRelicAccount, String> key(NewRelicAccount account, String name) {
+        return new SimpleImmutableEntry<>(account, name);
+    }
+
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        Map<String, Long> applicationStats = new LinkedHashMap<>();
+        applicationStats.put("hits", applicationHits.sum());
+        applicationStats.putAll(applications.getStats());
+        stats.put("applications", applicationStats);
+        stats.put("channels", channels.getStats());
+        stats.put("monitors", monitors.getStats());
+        return stats;
+    }
+}
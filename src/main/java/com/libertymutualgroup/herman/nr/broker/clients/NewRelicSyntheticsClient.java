@@ -1,13 +1,16 @@
 package com.libertymutualgroup.herman.nr.broker.clients;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.SyntheticsMonitor;
+import com.libertymutualgroup.herman.nr.broker.telemetry.PayloadLogging;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -20,76 +23,65 @@ import org.springframework.web.client.RestTemplate;
 public class NewRelicSyntheticsClient {
 
   @Autowired
-  @Qualifier("nr")
-  RestTemplate newRelicRestTemplate;
+  NewRelicAccounts newRelicAccounts;
 
   @Autowired
-  @Qualifier("synthetics")
-  RestTemplate newRelicSyntheticsTemplate;
-
-  @Autowired
-  HttpHeaders httpHeaders;
+  NewRelicLookups newRelicLookups;
 
   private static final Logger LOG = LoggerFactory.getLogger(NewRelicSyntheticsClient.class);
 
-  public void createSyntheticsMonitors(JsonNode synthetics, String policyName) {
+  public void createSyntheticsMonitors(SyntheticsMonitor synthetics, String policyName) {
     LOG.info("Creating new Synthetics Monitor for {}", policyName);
-    ObjectNode payload = ((ObjectNode)synthetics).put("name", policyName + "-synthetics");
+    PassthroughBody payload = new PassthroughBody(synthetics.withName(policyName + "-synthetics"));
 
     try {
-      newRelicSyntheticsTemplate
+      syntheticsRestTemplate()
           .exchange(
               "/monitors",
               HttpMethod.POST,
-              new HttpEntity<>(payload, httpHeaders),
+              new HttpEntity<>(payload, httpHeaders()),
               Void.class
           );
     } catch (Exception e) {
-      throw new RuntimeException(String.format("Error Creating Synthetics Monitor: %s", payload), e);
+      throw new RuntimeException(
+          String.format("Error Creating Synthetics Monitor: %s", PayloadLogging.truncate(payload)), e);
     }
   }
 
   public void deleteExistingSyntheticsMonitors(String policyName) {
-    LOG.info("Deleting any existing Synthetics Monitors for {}", policyName);
-    JsonNode syntheticsMonitorsResponse;
+    deleteSyntheticsMonitors(policyName, findExistingSyntheticsMonitors(policyName));
+  }
+
+  public List<ResourceSummary> findExistingSyntheticsMonitors(String policyName) {
     try {
-      syntheticsMonitorsResponse = newRelicSyntheticsTemplate
-          .exchange(
-              "/monitors",
-              HttpMethod.GET,
-              new HttpEntity<>(httpHeaders),
-              JsonNode.class
-          ).getBody();
+      return findMonitors(policyName + "-synthetics");
     } catch (Exception e) {
       throw new RuntimeException(
-          String.format("Error deleting synthetics monitor: %s", policyName));
+          String.format("Error deleting synthetics monitor: %s", policyName), e);
     }
+  }
 
-    ArrayNode monitors = (ArrayNode) syntheticsMonitorsResponse.get("monitors");
-    if (monitors.size() > 0) {
-      for (JsonNode monitor : monitors) {
-        String monitorName = monitor.get("name").asText();
-        if (monitorName.equals(policyName + "-synthetics")) {
-          String id = monitor.get("id").asText();
-
-          LOG.info("Deleting Synthetics Monitor with ID: {}", id);
-          try {
-            newRelicSyntheticsTemplate.exchange(
-                String.format("/monitors/%s", id),
-                HttpMethod.DELETE,
-                new HttpEntity<>(httpHeaders),
-                Void.class
-            );
-          } catch (Exception e) {
-            throw new RuntimeException(
-                String.format("Error deleting synthetics monitor: %s", policyName));
-          }
-        }
+  public void deleteSyntheticsMonitors(String policyName, List<ResourceSummary> monitors) {
+    LOG.info("Deleting any existing Synthetics Monitors for {}", policyName);
+    for (ResourceSummary monitor : monitors) {
+      String id = monitor.getId();
+
+      LOG.info("Deleting Synthetics Monitor with ID: {}", id);
+      try {
+        syntheticsRestTemplate().exchange(
+            String.format("/monitors/%s", id),
+            HttpMethod.DELETE,
+            new HttpEntity<>(httpHeaders()),
+            Void.class
+        );
+      } catch (Exception e) {
+        throw new RuntimeException(
+            String.format("Error deleting synthetics monitor: %s", policyName), e);
       }
     }
   }
 
-  @Retryable(backoff = @Backoff(delay=10000))
+  @Retryable(exclude = CircuitBreakerOpenException.class, backoff = @Backoff(delay=10000))
   public void createSyntheticsConditions(String policyName, String policyId) {
     LOG.info("Creating Synthetics Alert Conditions for {} under policy ID {}", policyName, policyId);
     ObjectMapper objectMapper = new ObjectMapper();
@@ -105,42 +97,63 @@ public class NewRelicSyntheticsClient {
 
     try {
       Thread.sleep(10000);
-      newRelicRestTemplate.exchange(
+      restTemplate().exchange(
           String.format("/alerts_synthetics_conditions/policies/%s.json", policyId),
           HttpMethod.POST,
-          new HttpEntity<>(payload, httpHeaders),
+          new HttpEntity<>(payload, httpHeaders()),
           Void.class
       );
+    } catch (CircuitBreakerOpenException e) {
+      throw e;
     } catch (Exception e) {
       LOG.error("Error creating Synthetics alert condition policyId: {}", policyId, e);
-      throw new RuntimeException("Error Creating Synthetics Conditions: " + payload);
+      throw new RuntimeException("Error Creating Synthetics Conditions: " + PayloadLogging.truncate(payload), e);
     }
   }
 
   private String getMonitorId(String policyName) {
-    JsonNode syntheticsMonitorsResponse;
+    List<ResourceSummary> monitors;
     try {
-      syntheticsMonitorsResponse = newRelicSyntheticsTemplate
-          .exchange(
-              "/monitors",
-              HttpMethod.GET,
-              new HttpEntity<>(httpHeaders),
-              JsonNode.class
-          ).getBody();
+      // Not shared through the single-flight group: a read already in flight may have started before the monitor
+      // was created and would not see it
+      monitors = scanMonitors(policyName, true);
+    } catch (CircuitBreakerOpenException e) {
+      throw e;
     } catch (Exception e) {
       throw new RuntimeException(
-          String.format("Error deleting synthetics monitor: %s", policyName));
+          String.format("Error deleting synthetics monitor: %s", policyName), e);
     }
 
-    ArrayNode monitors = (ArrayNode) syntheticsMonitorsResponse.get("monitors");
-    if (monitors.size() > 0) {
-      for (JsonNode monitor : monitors) {
-        String monitorName = monitor.get("name").asText();
-        if (monitorName.equals(policyName)) {
-          return monitor.get("id").asText();
-        }
-      }
-    }
-    return null;
+    return monitors.isEmpty() ? null : monitors.get(0).getId();
+  }
+
+  private List<ResourceSummary> findMonitors(String monitorName) {
+    return newRelicLookups.monitors().execute(NewRelicLookups.key(newRelicAccounts.current(), monitorName),
+        () -> scanMonitors(monitorName, false));
+  }
+
+  private List<ResourceSummary> scanMonitors(String monitorName, boolean firstOnly) {
+    List<ResourceSummary> monitors = new ArrayList<>();
+    syntheticsRestTemplate().execute(
+        "/monitors",
+        HttpMethod.GET,
+        ResourceSummaryScanner.withHeaders(httpHeaders()),
+        response -> {
+          ResourceSummaryScanner.scan(response.getBody(), "monitors", monitorName::equals, firstOnly, monitors);
+          return null;
+        });
+    return Collections.unmodifiableList(monitors);
+  }
+
+  private RestTemplate restTemplate() {
+    return newRelicAccounts.current().getRestTemplate();
+  }
+
+  private RestTemplate syntheticsRestTemplate() {
+    return newRelicAccounts.current().getSyntheticsRestTemplate();
+  }
+
+  private HttpHeaders httpHeaders() {
+    return newRelicAccounts.current().getHttpHeaders();
   }
 }
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import java.io.Closeable;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+/**
+ * The HTTP engine behind one {@link NewRelicAccount}. Every request {@link NewRelicClient} and
+ * {@link NewRelicSyntheticsClient} send for the account goes through its request factory, to all three New Relic
+ * hosts. Which engine is used is chosen with {@code newrelic.transport.protocol}.
+ */
+public interface NewRelicTransport extends Closeable {
+
+    ClientHttpRequestFactory getRequestFactory();
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * A transport that never leaves the process. Every request succeeds with the smallest response body the clients
+ * can parse: lists are empty, created resources get ID 0 and application lookups find the application asked for.
+ * Used as the transport of accounts that exercise the broker's code paths during warm-up.
+ */
+final class OfflineClientHttpRequestFactory implements ClientHttpRequestFactory, NewRelicTransport {
+
+    @Override
+    public ClientHttpRequestFactory getRequestFactory() {
+        return this;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new OfflineRequest(uri, httpMethod);
+    }
+
+    /**
+     * The smallest response body the clients can parse for a request to {@code uri}.
+     */
+    static String responseBody(URI uri, HttpMethod method) {
+        String path = uri.getPath();
+        if (method == HttpMethod.GET) {
+            if (path.endsWith("/applications.json")) {
+                return String.format("{\"applications\":[{\"id\":0,\"name\":\"%s\"}]}", filteredName(uri));
+            } else if (path.endsWith("/alerts_policies.json")) {
+                return "{\"policies\":[]}";
+            } else if (path.endsWith("/alerts_channels.json")) {
+                return "{\"channels\":[]}";
+            } else if (path.endsWith("/components.json")) {
+                return "{\"components\":[]}";
+            } else if (path.endsWith("/monitors")) {
+                return "{\"monitors\":[]}";
+            }
+        } else if (method == HttpMethod.POST) {
+            if (path.endsWith("/deployments.json")) {
+                return "{\"deployment\":{\"id\":\"0\"}}";
+            } else if (path.endsWith("/alerts_policies.json")) {
+                return "{\"policy\":{\"id\":0}}";
+            } else if (path.endsWith("/alerts_channels.json")) {
+                return "{\"channels\":[{\"id\":0}]}";
+            } else if (path.contains("/alerts_nrql_conditions/")) {
+                return "{\"nrql_condition\":{\"id\":0}}";
+            }
+        }
+        return "{}";
+    }
+
+    private static String filteredName(URI uri) {
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return "";
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && decode(parameter.substring(0, separator)).equals("filter[name]")) {
+                return decode(parameter.substring(separator + 1)).replace("\"", "");
+            }
+        }
+        return "";
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class OfflineRequest implements ClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        OfflineRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public ClientHttpResponse execute() {
+            return new OfflineResponse(HttpStatus.OK, responseBody(uri, method).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    /**
+     * A JSON response held in memory.
+     */
+    static class OfflineResponse implements ClientHttpResponse {
+
+        private final HttpStatus status;
+        private final byte[] body;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        OfflineResponse(HttpStatus status, byte[] body) {
+            this.status = status;
+            this.body = body;
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentLength(body.length);
+        }
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return status.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return status.getReasonPhrase();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.AlertTemplate;
+import java.io.IOException;
+
+/**
+ * A request body holding one {@link AlertTemplate}, either on its own or as {@code {"<envelope>": <template>}}. The
+ * template streams itself into the request's generator, so no document or string is built for the body.
+ */
+final class PassthroughBody {
+
+    private final String envelope;
+    private final AlertTemplate content;
+
+    PassthroughBody(AlertTemplate content) {
+        this(null, content);
+    }
+
+    PassthroughBody(String envelope, AlertTemplate content) {
+        this.envelope = envelope;
+        this.content = content;
+    }
+
+    void writeTo(JsonGenerator generator) throws IOException {
+        if (envelope == null) {
+            content.writeTo(generator);
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeFieldName(envelope);
+        content.writeTo(generator);
+        generator.writeEndObject();
+    }
+
+    @Override
+    public String toString() {
+        return envelope == null ? content.toJson() : String.format("{\"%s\":%s}", envelope, content.toJson());
+    }
+}
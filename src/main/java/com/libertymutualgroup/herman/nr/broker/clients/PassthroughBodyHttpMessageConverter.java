@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * Writes {@link PassthroughBody} request bodies straight to the request's output stream. Write-only.
+ */
+class PassthroughBodyHttpMessageConverter extends AbstractHttpMessageConverter<PassthroughBody> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    PassthroughBodyHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PassthroughBody.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected PassthroughBody readInternal(Class<? extends PassthroughBody> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("PassthroughBody is write-only");
+    }
+
+    @Override
+    protected void writeInternal(PassthroughBody body, HttpOutputMessage outputMessage) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(outputMessage.getBody(), JsonEncoding.UTF8);
+        body.writeTo(generator);
+        generator.flush();
+    }
+}
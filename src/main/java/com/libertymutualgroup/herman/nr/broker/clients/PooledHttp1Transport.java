@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import java.io.IOException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+/**
+ * HTTP/1.1 over a pool of Apache HttpClient connections, each carrying one request at a time.
+ */
+class PooledHttp1Transport implements NewRelicTransport {
+
+    private final CloseableHttpClient httpClient;
+    private final ClientHttpRequestFactory requestFactory;
+
+    PooledHttp1Transport(int maxConnectionsPerHost, int hosts, boolean compressResponses) {
+        // The Apache client sends Accept-Encoding and unwraps gzip/deflate bodies lazily while they are read,
+        // so large list responses are never buffered in compressed or decompressed form.
+        HttpClientBuilder httpClientBuilder = HttpClients.custom()
+            .setMaxConnPerRoute(maxConnectionsPerHost)
+            .setMaxConnTotal(maxConnectionsPerHost * hosts);
+        if (!compressResponses) {
+            httpClientBuilder.disableContentCompression();
+        }
+
+        this.httpClient = httpClientBuilder.build();
+        this.requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    @Override
+    public ClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Spaces out requests so that a New Relic account never receives more than {@code requestsPerSecond} on average,
+ * while still letting a burst of up to {@code burst} requests through immediately.
+ */
+class RateLimitingInterceptor implements ClientHttpRequestInterceptor {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private long nextFreeNanos;
+
+    RateLimitingInterceptor(double requestsPerSecond, int burst) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.burstNanos = Math.max(0, burst - 1) * intervalNanos;
+        this.nextFreeNanos = System.nanoTime() - burstNanos;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+        throws IOException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the New Relic rate limit");
+            }
+        }
+        return execution.execute(request, body);
+    }
+
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        long earliest = now - burstNanos;
+        if (nextFreeNanos - earliest < 0) {
+            nextFreeNanos = earliest;
+        }
+        long waitNanos = nextFreeNanos - now;
+        nextFreeNanos += intervalNanos;
+        return waitNanos;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Hands every completed exchange of one account to an {@link ExchangeRecorder}. The response body is read into
+ * memory so it can be recorded, so responses are no longer streamed while recording. Exchanges that fail without
+ * a response, including those refused by an open circuit breaker, are not recorded.
+ */
+class RecordingInterceptor implements ClientHttpRequestInterceptor {
+
+    private final ExchangeRecorder recorder;
+    private final String apiKey;
+
+    RecordingInterceptor(ExchangeRecorder recorder, String apiKey) {
+        this.recorder = recorder;
+        this.apiKey = apiKey;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+        throws IOException {
+        long start = System.nanoTime();
+        ClientHttpResponse response = execution.execute(request, body);
+        byte[] responseBody;
+        try (InputStream in = response.getBody()) {
+            responseBody = StreamUtils.copyToByteArray(in);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        recorder.record(request, body, response.getRawStatusCode(), response.getHeaders(), responseBody,
+            elapsedMillis, apiKey);
+        return new RecordedResponse(response, responseBody);
+    }
+
+    private static class RecordedResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final byte[] body;
+
+        RecordedResponse(ClientHttpResponse response, byte[] body) {
+            this.response = response;
+            this.body = body;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import com.libertymutualgroup.herman.nr.broker.clients.OfflineClientHttpRequestFactory.OfflineResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * A transport that answers from exchanges recorded by {@link ExchangeRecorder} and never contacts New Relic, for
+ * repeatable runs against production-like traffic. Requests are matched on their method, URI and body, with the
+ * API key scrubbed as it was when recording. A request gets the recorded responses for the same request in the order
+ * they were recorded, starting over once they run out; requests that were never recorded get the same answer as
+ * with {@link OfflineClientHttpRequestFactory}.
+ *
+ * <p>Latency, 503 errors and bursts of 429 responses are added as set in {@code newrelic.replay}. They are drawn for
+ * each exchange from the request and how many times it has been sent before, not from a generator shared by every
+ * thread, so with a seed the same requests see the same latencies and failures on every run however they
+ * interleave. A burst of 429 responses throttles the attempts that follow for the same request.
+ */
+final class ReplayTransport implements NewRelicTransport, ClientHttpRequestFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayTransport.class);
+
+    private final Recordings recordings;
+    private final NewRelicBrokerProperties.Replay replay;
+    private final String apiKey;
+    private final long seed;
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+    /**
+     * @param apiKey the key of the account the transport belongs to, scrubbed from requests before they are matched
+     */
+    ReplayTransport(Recordings recordings, NewRelicBrokerProperties.Replay replay, String apiKey) {
+        this.recordings = recordings;
+        this.replay = replay;
+        this.apiKey = apiKey;
+        this.seed = replay.getSeed() != 0 ? replay.getSeed() : ThreadLocalRandom.current().nextLong();
+    }
+
+    @Override
+    public ClientHttpRequestFactory getRequestFactory() {
+        return this;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new ReplayRequest(uri, httpMethod);
+    }
+
+    private ClientHttpResponse respond(URI uri, HttpMethod method, HttpHeaders headers, byte[] body) {
+        String key = Recordings.key(method.name(), ExchangeRecorder.scrub(uri.toString(), apiKey),
+            ExchangeRecorder.scrub(requestBody(headers, body), apiKey));
+        int attempt = attempts.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+        JsonNode exchange = recordings.get(key, attempt);
+
+        SplittableRandom random = random(key, attempt);
+        Fault fault = fault(key, attempt, random);
+        sleep(latencyMillis(exchange, random));
+
+        if (fault == Fault.THROTTLED) {
+            OfflineResponse response = response(HttpStatus.TOO_MANY_REQUESTS,
+                "{\"error\":{\"title\":\"Throttled by replay\"}}");
+            response.getHeaders().set("Retry-After", "1");
+            return response;
+        } else if (fault == Fault.ERROR) {
+            return response(HttpStatus.SERVICE_UNAVAILABLE, "{\"error\":{\"title\":\"Error injected by replay\"}}");
+        } else if (exchange == null) {
+            return response(HttpStatus.OK, OfflineClientHttpRequestFactory.responseBody(uri, method));
+        }
+
+        OfflineResponse response = response(HttpStatus.valueOf(exchange.path("status").asInt()),
+            exchange.path("responseBody").asText());
+        if (exchange.hasNonNull("link")) {
+            response.getHeaders().set("Link", exchange.get("link").asText());
+        }
+        if (exchange.hasNonNull("retryAfter")) {
+            response.getHeaders().set("Retry-After", exchange.get("retryAfter").asText());
+        }
+        return response;
+    }
+
+    private enum Fault {
+        NONE, ERROR, THROTTLED
+    }
+
+    /**
+     * The generator for one attempt at a request: its first draw decides whether a burst of 429 responses starts
+     * there, its second whether it fails with a 503, and the rest are its latency.
+     */
+    private SplittableRandom random(String key, int attempt) {
+        return new SplittableRandom(seed ^ ((long) key.hashCode() << 32 | attempt & 0xffffffffL));
+    }
+
+    private Fault fault(String key, int attempt, SplittableRandom random) {
+        double throttleRate = replay.getThrottleRate();
+        if (throttleRate > 0) {
+            if (random.nextDouble() < throttleRate) {
+                return Fault.THROTTLED;
+            }
+            // Still inside a burst that one of the previous attempts started
+            for (int previous = Math.max(attempt - replay.getThrottleBurst() + 1, 0); previous < attempt; previous++) {
+                if (random(key, previous).nextDouble() < throttleRate) {
+                    return Fault.THROTTLED;
+                }
+            }
+        } else {
+            random.nextDouble();
+        }
+        if (replay.getErrorRate() > 0 && random.nextDouble() < replay.getErrorRate()) {
+            return Fault.ERROR;
+        }
+        return Fault.NONE;
+    }
+
+    private long latencyMillis(JsonNode exchange, SplittableRandom random) {
+        switch (replay.getLatency()) {
+            case FIXED:
+                return replay.getLatencyMillis();
+            case UNIFORM:
+                return (long) (random.nextDouble() * replay.getLatencyMillis());
+            case LOG_NORMAL:
+                return (long) (replay.getLatencyMillis() * Math.exp(replay.getLatencySigma() * gaussian(random)));
+            case RECORDED:
+            default:
+                return exchange != null ? exchange.path("elapsedMillis").asLong() : 0;
+        }
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; 1 - u keeps the logarithm away from zero
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    /**
+     * The body as the clients wrote it, before {@link GzipRequestInterceptor} compressed it.
+     */
+    private static String requestBody(HttpHeaders headers, byte[] body) {
+        if (!"gzip".equalsIgnoreCase(headers.getFirst(HttpHeaders.CONTENT_ENCODING))) {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not decompress a request to replay", ex);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static OfflineResponse response(HttpStatus status, String body) {
+        return new OfflineResponse(status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The exchanges of one or more recordings, grouped by request. Shared by the transports of every account.
+     */
+    static final class Recordings {
+
+        private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+        private final Map<String, List<JsonNode>> exchanges;
+
+        private Recordings(Map<String, List<JsonNode>> exchanges) {
+            this.exchanges = exchanges;
+        }
+
+        /**
+         * Reads the recording at {@code path}, or every {@code .jsonl} file in it if it is a directory, in name
+         * order.
+         */
+        static Recordings load(String path) {
+            Path root = Paths.get(path);
+            List<Path> files;
+            try {
+                if (Files.isDirectory(root)) {
+                    try (Stream<Path> listing = Files.list(root)) {
+                        files = listing.filter(file -> file.toString().endsWith(".jsonl")).sorted()
+                            .collect(Collectors.toList());
+                    }
+                } else {
+                    files = Collections.singletonList(root);
+                }
+
+                Map<String, List<JsonNode>> exchanges = new HashMap<>();
+                int count = 0;
+                for (Path file : files) {
+                    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (line.trim().isEmpty()) {
+                                continue;
+                            }
+                            JsonNode exchange = OBJECT_MAPPER.readTree(line);
+                            exchanges.computeIfAbsent(
+                                key(exchange.path("method").asText(), exchange.path("uri").asText(),
+                                    exchange.path("requestBody").asText()),
+                                key -> new ArrayList<>()).add(exchange);
+                            count++;
+                        }
+                    }
+                }
+                LOG.info("Replaying {} recorded New Relic exchanges from {} files", count, files.size());
+                return new Recordings(exchanges);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(String.format("Could not read New Relic recordings from %s", path),
+                    ex);
+            }
+        }
+
+        /**
+         * @return the recorded exchange to answer the given attempt at the request with {@code key}, or {@code null}
+         * if none was recorded
+         */
+        JsonNode get(String key, int attempt) {
+            List<JsonNode> recorded = exchanges.get(key);
+            return recorded != null ? recorded.get(attempt % recorded.size()) : null;
+        }
+
+        /**
+         * Identifies a request by its method, scrubbed URI and a digest of its scrubbed body.
+         */
+        static String key(String method, String uri, String body) {
+            return method + " " + uri + " " + DigestUtils.md5DigestAsHex(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private class ReplayRequest implements ClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        ReplayRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public ClientHttpResponse execute() {
+            return respond(uri, method, headers, body.toByteArray());
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RequestCallback;
+
+/**
+ * Streams a New Relic list response (e.g. {@code {"channels": [...]}}) and keeps only the {@code id} and
+ * {@code name} of matching elements. Every other token is skipped without building a tree.
+ */
+final class ResourceSummaryScanner {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ResourceSummaryScanner() {
+    }
+
+    static RequestCallback withHeaders(HttpHeaders httpHeaders) {
+        return request -> {
+            request.getHeaders().putAll(httpHeaders);
+            request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        };
+    }
+
+    /**
+     * Adds every element of {@code arrayField} whose name matches to {@code results}.
+     *
+     * @param firstOnly stop reading as soon as one element matched
+     */
+    static void scan(InputStream body, String arrayField, Predicate<String> nameFilter, boolean firstOnly,
+        List<ResourceSummary> results) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!arrayField.equals(field) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    ResourceSummary resource = readResource(parser);
+                    if (resource.getName() != null && nameFilter.test(resource.getName())) {
+                        results.add(resource);
+                        if (firstOnly) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static ResourceSummary readResource(JsonParser parser) throws IOException {
+        ResourceSummary resource = new ResourceSummary();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field) && value.isScalarValue()) {
+                resource.setId(parser.getValueAsString());
+            } else if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                resource.setName(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return resource;
+    }
+}
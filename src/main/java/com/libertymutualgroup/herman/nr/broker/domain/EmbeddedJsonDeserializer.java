@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import java.io.IOException;
+
+/**
+ * Reads a field of the alert configuration that is either JSON itself or, as older versions of Herman send it, a
+ * string holding the JSON. Native JSON is read as part of the request; a string is parsed on the spot. A string
+ * that is not valid JSON is kept as text, so that validation can report it along with everything else.
+ *
+ * <p>Company-standard templates arrive as the same strings from many services, so parsed strings are cached by
+ * their content and every request sending the same string gets the same tree. The trees are read-only: the broker
+ * only reads them and wraps them in {@code AlertTemplate}s, which are cached in turn by the tree's content.
+ */
+public class EmbeddedJsonDeserializer extends JsonDeserializer<JsonNode> {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // At most 64 templates of up to 64K characters each, about 4M characters in all, which keeps the cache inside
+    // the low-memory budget
+    private static final int CACHE_SIZE = 64;
+    private static final int MAX_CACHED_LENGTH = 64 * 1024;
+    private static final LruCache<String, JsonNode> PARSED = new LruCache<>(CACHE_SIZE);
+
+    @Override
+    public JsonNode deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            return parser.readValueAsTree();
+        }
+
+        return parse(parser.getText());
+    }
+
+    /**
+     * Parses an alert configuration field sent as a string, keeping it as text if it is not valid JSON.
+     *
+     * @return {@code null} if {@code json} is {@code null}
+     */
+    public static JsonNode parse(String json) {
+        if (json == null) {
+            return null;
+        }
+        JsonNode cached = PARSED.get(json);
+        if (cached != null) {
+            return cached;
+        }
+
+        JsonNode node;
+        try {
+            node = OBJECT_MAPPER.readTree(json);
+        } catch (IOException ex) {
+            return TextNode.valueOf(json);
+        }
+        if (node == null) {
+            return TextNode.valueOf(json);
+        }
+        if (json.length() <= MAX_CACHED_LENGTH) {
+            JsonNode existing = PARSED.putIfAbsent(json, node);
+            return existing != null ? existing : node;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain;
+
+public enum HermanBrokerPhase {
+    APPLICATION_LOOKUP("Application found"),
+    APPLICATION_DEPLOYMENT("Application deployment created"),
+    APPLICATION_APDEX("Application apdex updated"),
+    ALERTS_CLEANUP("Previous alerts policy and channels deleted"),
+    ALERTS_POLICY("Alerts policy created"),
+    ALERTS_CONDITIONS("Alerts conditions created"),
+    ALERTS_CHANNELS("Alerts policy channels created"),
+    COMPLETE("New Relic Broker processing has completed successfully");
+
+    private final String description;
+
+    HermanBrokerPhase(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
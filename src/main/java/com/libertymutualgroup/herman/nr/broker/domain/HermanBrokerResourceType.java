@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain;
+
+public enum HermanBrokerResourceType {
+    APPLICATION("application"),
+    APPLICATION_DEPLOYMENT("application deployment"),
+    ALERTS_POLICY("alerts policy"),
+    APPLICATION_CONDITION("alerts condition"),
+    PLUGIN_CONDITION("plugin alerts condition"),
+    NRQL_CONDITION("NRQL alerts condition"),
+    INFRASTRUCTURE_CONDITION("Infrastructure alerts condition"),
+    SYNTHETICS_MONITOR("Synthetics Monitor"),
+    CHANNEL("alerts policy channel");
+
+    private final String label;
+
+    HermanBrokerResourceType(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
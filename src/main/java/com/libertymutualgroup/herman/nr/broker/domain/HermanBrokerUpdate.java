@@ -15,11 +15,26 @@
  */
 package com.libertymutualgroup.herman.nr.broker.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * A single progress event reported back to Herman. Updates are built from structured fields; the human-readable
+ * message is only rendered when {@link #getMessage()} is called, which normally happens during serialization. The
+ * rendered text matches the messages Herman has always received; timings are reported only in
+ * {@code durationMillis}.
+ */
+@JsonInclude(Include.NON_NULL)
 public class HermanBrokerUpdate {
 
     HermanBrokerStatus status;
+    HermanBrokerPhase phase;
+    HermanBrokerResourceType resourceType;
+    String resourceId;
+    Integer count;
+    Long durationMillis;
     String message;
 
     public HermanBrokerStatus getStatus() {
@@ -30,19 +45,85 @@ public class HermanBrokerUpdate {
         this.status = status;
     }
 
+    public HermanBrokerPhase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(HermanBrokerPhase phase) {
+        this.phase = phase;
+    }
+
+    public HermanBrokerResourceType getResourceType() {
+        return resourceType;
+    }
+
+    public void setResourceType(HermanBrokerResourceType resourceType) {
+        this.resourceType = resourceType;
+    }
+
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(String resourceId) {
+        this.resourceId = resourceId;
+    }
+
+    public Integer getCount() {
+        return count;
+    }
+
+    public void setCount(Integer count) {
+        this.count = count;
+    }
+
+    public Long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(Long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
     public String getMessage() {
-        return message;
+        return message != null ? message : renderMessage();
     }
 
     public void setMessage(String message) {
         this.message = message;
     }
 
+    private String renderMessage() {
+        if (phase == null) {
+            return null;
+        }
+
+        StringBuilder rendered = new StringBuilder(64);
+        if (count != null && resourceType != null) {
+            rendered.append(count).append(' ').append(resourceType.getLabel());
+            if (count > 1) {
+                rendered.append('s');
+            }
+            rendered.append(" created");
+        } else {
+            rendered.append(phase.getDescription());
+            if (resourceId != null) {
+                rendered.append(": ID = ").append(resourceId);
+            }
+        }
+        return rendered.toString();
+    }
+
     @Override
     public String toString() {
         return "HermanBrokerUpdate{" +
             "status=" + status +
-            ", message='" + message + '\'' +
+            ", phase=" + phase +
+            ", resourceType=" + resourceType +
+            ", resourceId='" + resourceId + '\'' +
+            ", count=" + count +
+            ", durationMillis=" + durationMillis +
+            ", message='" + getMessage() + '\'' +
             '}';
     }
 
@@ -51,6 +132,36 @@ public class HermanBrokerUpdate {
         return this;
     }
 
+    public HermanBrokerUpdate withPhase(final HermanBrokerPhase phase) {
+        this.phase = phase;
+        return this;
+    }
+
+    public HermanBrokerUpdate withResourceType(final HermanBrokerResourceType resourceType) {
+        this.resourceType = resourceType;
+        return this;
+    }
+
+    public HermanBrokerUpdate withResourceId(final String resourceId) {
+        this.resourceId = resourceId;
+        return this;
+    }
+
+    public HermanBrokerUpdate withCount(final Integer count) {
+        this.count = count;
+        return this;
+    }
+
+    public HermanBrokerUpdate withDurationMillis(final Long durationMillis) {
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    public HermanBrokerUpdate withDurationSince(final long startNanos) {
+        this.durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return this;
+    }
+
     public HermanBrokerUpdate withMessage(final String message) {
         this.message = message;
         return this;
@@ -66,11 +177,16 @@ public class HermanBrokerUpdate {
         }
         HermanBrokerUpdate that = (HermanBrokerUpdate) o;
         return status == that.status &&
+            phase == that.phase &&
+            resourceType == that.resourceType &&
+            Objects.equals(resourceId, that.resourceId) &&
+            Objects.equals(count, that.count) &&
+            Objects.equals(durationMillis, that.durationMillis) &&
             Objects.equals(message, that.message);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(status, message);
+        return Objects.hash(status, phase, resourceType, resourceId, count, durationMillis, message);
     }
 }
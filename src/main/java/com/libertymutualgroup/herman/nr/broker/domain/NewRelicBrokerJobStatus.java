@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class NewRelicBrokerJobStatus {
+
+    String jobId;
+    NewRelicBrokerJobState state;
+    String applicationId;
+    List<HermanBrokerUpdate> updates = new ArrayList<>();
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public NewRelicBrokerJobState getState() {
+        return state;
+    }
+
+    public void setState(NewRelicBrokerJobState state) {
+        this.state = state;
+    }
+
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    public void setApplicationId(String applicationId) {
+        this.applicationId = applicationId;
+    }
+
+    public List<HermanBrokerUpdate> getUpdates() {
+        return updates;
+    }
+
+    public void setUpdates(List<HermanBrokerUpdate> updates) {
+        this.updates = updates;
+    }
+
+    public NewRelicBrokerJobStatus withJobId(final String jobId) {
+        this.jobId = jobId;
+        return this;
+    }
+
+    public NewRelicBrokerJobStatus withState(final NewRelicBrokerJobState state) {
+        this.state = state;
+        return this;
+    }
+
+    public NewRelicBrokerJobStatus withApplicationId(final String applicationId) {
+        this.applicationId = applicationId;
+        return this;
+    }
+
+    public NewRelicBrokerJobStatus withUpdates(final List<HermanBrokerUpdate> updates) {
+        this.updates = updates;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "NewRelicBrokerJobStatus{" +
+            "jobId='" + jobId + '\'' +
+            ", state=" + state +
+            ", applicationId='" + applicationId + '\'' +
+            ", updates=" + updates +
+            '}';
+    }
+}
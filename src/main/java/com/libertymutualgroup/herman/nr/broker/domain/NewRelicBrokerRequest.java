@@ -28,6 +28,7 @@ public class NewRelicBrokerRequest {
     private String nrApiKey;
     private NewRelicApplicationDeploymentRequest deployment;
     private NewRelicConfiguration configuration;
+    private Boolean debug;
 
     public String getPolicyName() {
         return policyName;
@@ -69,6 +70,17 @@ public class NewRelicBrokerRequest {
         this.configuration = configuration;
     }
 
+    /**
+     * Whether to log the payloads exchanged with New Relic for this request in full, regardless of sampling.
+     */
+    public Boolean getDebug() {
+        return debug;
+    }
+
+    public void setDebug(Boolean debug) {
+        this.debug = debug;
+    }
+
     public NewRelicBrokerRequest withPolicyName(final String policyName) {
         this.policyName = policyName;
         return this;
@@ -96,14 +108,20 @@ public class NewRelicBrokerRequest {
         return this;
     }
 
+    public NewRelicBrokerRequest withDebug(final Boolean debug) {
+        this.debug = debug;
+        return this;
+    }
+
     @Override
     public String toString() {
         return "NewRelicBrokerRequest{" +
             "policyName='" + policyName + '\'' +
             ", newRelicApplicationName='" + newRelicApplicationName + '\'' +
-            ", nrApiKey='" + nrApiKey + '\'' +
+            ", nrApiKey='" + (nrApiKey != null ? "****" : null) + '\'' +
             ", deployment=" + deployment +
             ", configuration=" + configuration +
+            ", debug=" + debug +
             '}';
     }
 }
@@ -18,66 +18,110 @@ package com.libertymutualgroup.herman.nr.broker.domain;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 @JsonInclude(Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class NewRelicConfiguration {
-    private String conditions;
-    private String channels;
-    private String pluginConditions;
-    private String nrqlConditions;
-    private String infrastructureConditions;
-    private String synthetics;
+
+    // Each of these is a JSON array, sent either as such or as a string holding it. The arrays are read-only: a
+    // parsed string may be shared with other requests, and AlertTemplate caches the templates built from them.
+    // The String setters and withers take the string form, as they did before the fields were JSON; Jackson uses
+    // the JsonNode setters, which are marked with @JsonSetter.
+    @JsonDeserialize(using = EmbeddedJsonDeserializer.class)
+    private JsonNode conditions;
+    @JsonDeserialize(using = EmbeddedJsonDeserializer.class)
+    private JsonNode channels;
+    @JsonDeserialize(using = EmbeddedJsonDeserializer.class)
+    private JsonNode pluginConditions;
+    @JsonDeserialize(using = EmbeddedJsonDeserializer.class)
+    private JsonNode nrqlConditions;
+    @JsonDeserialize(using = EmbeddedJsonDeserializer.class)
+    private JsonNode infrastructureConditions;
+    @JsonDeserialize(using = EmbeddedJsonDeserializer.class)
+    private JsonNode synthetics;
     private String apdex;
 
-    public String getConditions() {
+    public JsonNode getConditions() {
         return conditions;
     }
 
-    public void setConditions(String conditions) {
+    @JsonSetter
+    public void setConditions(JsonNode conditions) {
         this.conditions = conditions;
     }
 
-    public String getChannels() {
+    public void setConditions(String conditions) {
+        this.conditions = EmbeddedJsonDeserializer.parse(conditions);
+    }
+
+    public JsonNode getChannels() {
         return channels;
     }
 
-    public void setChannels(String channels) {
+    @JsonSetter
+    public void setChannels(JsonNode channels) {
         this.channels = channels;
     }
 
-    public String getPluginConditions() {
+    public void setChannels(String channels) {
+        this.channels = EmbeddedJsonDeserializer.parse(channels);
+    }
+
+    public JsonNode getPluginConditions() {
         return pluginConditions;
     }
 
-    public void setPluginConditions(String pluginConditions) {
+    @JsonSetter
+    public void setPluginConditions(JsonNode pluginConditions) {
         this.pluginConditions = pluginConditions;
     }
 
-    public String getNrqlConditions() {
+    public void setPluginConditions(String pluginConditions) {
+        this.pluginConditions = EmbeddedJsonDeserializer.parse(pluginConditions);
+    }
+
+    public JsonNode getNrqlConditions() {
         return nrqlConditions;
     }
 
-    public void setNrqlConditions(String nrqlConditions) {
+    @JsonSetter
+    public void setNrqlConditions(JsonNode nrqlConditions) {
         this.nrqlConditions = nrqlConditions;
     }
 
-    public String getInfrastructureConditions() {
+    public void setNrqlConditions(String nrqlConditions) {
+        this.nrqlConditions = EmbeddedJsonDeserializer.parse(nrqlConditions);
+    }
+
+    public JsonNode getInfrastructureConditions() {
         return infrastructureConditions;
     }
 
-    public void setInfrastructureConditions(String infrastructureConditions) {
+    @JsonSetter
+    public void setInfrastructureConditions(JsonNode infrastructureConditions) {
         this.infrastructureConditions = infrastructureConditions;
     }
 
-    public String getSynthetics() {
+    public void setInfrastructureConditions(String infrastructureConditions) {
+        this.infrastructureConditions = EmbeddedJsonDeserializer.parse(infrastructureConditions);
+    }
+
+    public JsonNode getSynthetics() {
         return synthetics;
     }
 
-    public void setSynthetics(String synthetics) {
+    @JsonSetter
+    public void setSynthetics(JsonNode synthetics) {
         this.synthetics = synthetics;
     }
 
+    public void setSynthetics(String synthetics) {
+        this.synthetics = EmbeddedJsonDeserializer.parse(synthetics);
+    }
+
     public String getApdex() {
         return apdex;
     }
@@ -86,36 +130,66 @@ public class NewRelicConfiguration {
         this.apdex = apdex;
     }
 
-    public NewRelicConfiguration withConditions(final String conditions) {
+    public NewRelicConfiguration withConditions(final JsonNode conditions) {
         this.conditions = conditions;
         return this;
     }
 
-    public NewRelicConfiguration withChannels(final String channels) {
+    public NewRelicConfiguration withConditions(final String conditions) {
+        this.conditions = EmbeddedJsonDeserializer.parse(conditions);
+        return this;
+    }
+
+    public NewRelicConfiguration withChannels(final JsonNode channels) {
         this.channels = channels;
         return this;
     }
 
-    public NewRelicConfiguration withPluginConditions(final String pluginConditions) {
+    public NewRelicConfiguration withChannels(final String channels) {
+        this.channels = EmbeddedJsonDeserializer.parse(channels);
+        return this;
+    }
+
+    public NewRelicConfiguration withPluginConditions(final JsonNode pluginConditions) {
         this.pluginConditions = pluginConditions;
         return this;
     }
 
-    public NewRelicConfiguration withNrqlConditions(final String nrqlConditions) {
+    public NewRelicConfiguration withPluginConditions(final String pluginConditions) {
+        this.pluginConditions = EmbeddedJsonDeserializer.parse(pluginConditions);
+        return this;
+    }
+
+    public NewRelicConfiguration withNrqlConditions(final JsonNode nrqlConditions) {
         this.nrqlConditions = nrqlConditions;
         return this;
     }
 
-    public NewRelicConfiguration withInfrastructureConditions(final String infrastructureConditions) {
+    public NewRelicConfiguration withNrqlConditions(final String nrqlConditions) {
+        this.nrqlConditions = EmbeddedJsonDeserializer.parse(nrqlConditions);
+        return this;
+    }
+
+    public NewRelicConfiguration withInfrastructureConditions(final JsonNode infrastructureConditions) {
         this.infrastructureConditions = infrastructureConditions;
         return this;
     }
 
-    public NewRelicConfiguration withSynthetics(final String synthetics) {
+    public NewRelicConfiguration withInfrastructureConditions(final String infrastructureConditions) {
+        this.infrastructureConditions = EmbeddedJsonDeserializer.parse(infrastructureConditions);
+        return this;
+    }
+
+    public NewRelicConfiguration withSynthetics(final JsonNode synthetics) {
         this.synthetics = synthetics;
         return this;
     }
 
+    public NewRelicConfiguration withSynthetics(final String synthetics) {
+        this.synthetics = EmbeddedJsonDeserializer.parse(synthetics);
+        return this;
+    }
+
     public NewRelicConfiguration withApdex(final String apdex) {
         this.apdex = apdex;
         return this;
@@ -124,12 +198,12 @@ public class NewRelicConfiguration {
     @Override
     public String toString() {
         return "NewRelicConfiguration{" +
-            "conditions='" + conditions + '\'' +
-            ", channels='" + channels + '\'' +
-            ", pluginConditions='" + pluginConditions + '\'' +
-            ", nrqlConditions='" + nrqlConditions + '\'' +
-            ", infrastructureConditions='" + infrastructureConditions + '\'' +
-            ", synthetics='" + synthetics + '\'' +
+            "conditions=" + conditions +
+            ", channels=" + channels +
+            ", pluginConditions=" + pluginConditions +
+            ", nrqlConditions=" + nrqlConditions +
+            ", infrastructureConditions=" + infrastructureConditions +
+            ", synthetics=" + synthetics +
             ", apdex='" + apdex + '\'' +
             '}';
     }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain.newRelic;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What already exists in an account for one broker request, as read in a single NerdGraph query.
+ */
+public class AccountState {
+
+    Application application;
+    String policyId;
+    List<ResourceSummary> channels = Collections.emptyList();
+    List<ResourceSummary> monitors = Collections.emptyList();
+
+    /**
+     * The application named in the request, or {@code null} if it was not asked for or could not be found.
+     */
+    public Application getApplication() {
+        return application;
+    }
+
+    public void setApplication(Application application) {
+        this.application = application;
+    }
+
+    /**
+     * The ID of the alerts policy with the request's policy name, or {@code null} if there is none.
+     */
+    public String getPolicyId() {
+        return policyId;
+    }
+
+    public void setPolicyId(String policyId) {
+        this.policyId = policyId;
+    }
+
+    public List<ResourceSummary> getChannels() {
+        return channels;
+    }
+
+    public void setChannels(List<ResourceSummary> channels) {
+        this.channels = channels;
+    }
+
+    public List<ResourceSummary> getMonitors() {
+        return monitors;
+    }
+
+    public void setMonitors(List<ResourceSummary> monitors) {
+        this.monitors = monitors;
+    }
+
+    public AccountState withApplication(final Application application) {
+        this.application = application;
+        return this;
+    }
+
+    public AccountState withPolicyId(final String policyId) {
+        this.policyId = policyId;
+        return this;
+    }
+
+    public AccountState withChannels(final List<ResourceSummary> channels) {
+        this.channels = channels;
+        return this;
+    }
+
+    public AccountState withMonitors(final List<ResourceSummary> monitors) {
+        this.monitors = monitors;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountState{" +
+            "application=" + application +
+            ", policyId='" + policyId + '\'' +
+            ", channels=" + channels +
+            ", monitors=" + monitors +
+            '}';
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain.newRelic;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * One object from a request's alert configuration, such as a condition or a channel. Instances are immutable and can
+ * be shared between threads and requests. The fields the broker sets for a particular call are changed through
+ * withers, which return a new instance and leave the template untouched.
+ *
+ * <p>Each of the template's own fields is serialized once, when the template is built. {@link #writeTo(JsonGenerator)}
+ * writes those serialized values as they are and only serializes the fields set through withers.
+ */
+public abstract class AlertTemplate {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Company-standard templates are sent by many services; 64 lists covers them within the low-memory budget
+    private static final int CACHE_SIZE = 64;
+    private static final LruCache<ListKey, List<? extends AlertTemplate>> LISTS = new LruCache<>(CACHE_SIZE);
+
+    private final JsonNode json;
+    private final List<Member> members;
+    private final Set<String> settableFields;
+    private final Map<String, Object> fields;
+
+    /**
+     * @param json a JSON object, which the template takes over and which must not be modified afterwards
+     * @param settableFields the fields the broker may set on this kind of object
+     */
+    protected AlertTemplate(JsonNode json, String... settableFields) {
+        if (json == null || !json.isObject()) {
+            throw new IllegalArgumentException(String.format("Expected a JSON object: %s", json));
+        }
+        List<Member> members = new ArrayList<>(json.size());
+        for (Iterator<Entry<String, JsonNode>> it = json.fields(); it.hasNext(); ) {
+            Entry<String, JsonNode> field = it.next();
+            members.add(new Member(field.getKey(), serialize(field.getValue())));
+        }
+
+        this.json = json;
+        this.members = Collections.unmodifiableList(members);
+        this.settableFields = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(settableFields)));
+        this.fields = Collections.emptyMap();
+    }
+
+    /**
+     * A copy of {@code template} with {@code field} set to {@code value}.
+     *
+     * @param value a string, number, boolean or collection of those
+     */
+    protected AlertTemplate(AlertTemplate template, String field, Object value) {
+        if (!template.settableFields.contains(field) && template.json.has(field)) {
+            throw new IllegalArgumentException(String.format("%s cannot be set on %s", field, getClass().getName()));
+        }
+        Map<String, Object> fields = new LinkedHashMap<>(template.fields);
+        fields.put(field, value);
+
+        this.json = template.json;
+        this.members = template.members;
+        this.settableFields = template.settableFields;
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * The elements of {@code array} as templates of one kind. Lists are cached by the array's content, so requests
+     * sending the same templates share one list and serialize the templates once.
+     *
+     * @return {@code null} if {@code array} is {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    protected static <T extends AlertTemplate> List<T> elementsOf(JsonNode array, Class<T> type,
+        Function<JsonNode, T> kind) {
+        if (array == null) {
+            return null;
+        }
+        ListKey key = new ListKey(type, array);
+        List<T> cached = (List<T>) LISTS.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<T> elements = new ArrayList<>(array.size());
+        for (JsonNode element : array) {
+            elements.add(kind.apply(element));
+        }
+        elements = Collections.unmodifiableList(elements);
+        List<T> existing = (List<T>) LISTS.putIfAbsent(key, elements);
+        return existing != null ? existing : elements;
+    }
+
+    /**
+     * A copy of the template as the request sent it, without any fields set through withers.
+     */
+    public JsonNode getJson() {
+        return json.deepCopy();
+    }
+
+    /**
+     * The names of the template's own top-level fields, in the order the request sent them.
+     */
+    public List<String> getFieldNames() {
+        List<String> names = new ArrayList<>(members.size());
+        for (Member member : members) {
+            names.add(member.name.getValue());
+        }
+        return names;
+    }
+
+    /**
+     * The top-level {@code field} of the template as the request sent it, or a missing node. The node is the
+     * template's own: read it, never modify it. {@link #getJson()} returns a copy that may be changed.
+     */
+    public JsonNode path(String field) {
+        return json.path(field);
+    }
+
+    /**
+     * The object's top-level {@code name}, or {@code null} if it has none.
+     */
+    public String getName() {
+        Object name = fields.containsKey("name") ? fields.get("name") : json.get("name");
+        if (name instanceof JsonNode) {
+            return ((JsonNode) name).isNull() ? null : ((JsonNode) name).asText();
+        }
+        return name != null ? name.toString() : null;
+    }
+
+    /**
+     * Writes the object as New Relic's REST API takes it, with every field set through withers. The template's own
+     * fields keep their order and are written from their serialized form; fields it did not have come last.
+     */
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Member member : members) {
+            generator.writeFieldName(member.name);
+            if (fields.containsKey(member.name.getValue())) {
+                writeValue(generator, fields.get(member.name.getValue()));
+            } else {
+                generator.writeRawValue(member.value);
+            }
+        }
+        for (Entry<String, Object> field : fields.entrySet()) {
+            if (!json.has(field.getKey())) {
+                generator.writeFieldName(field.getKey());
+                writeValue(generator, field.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * The object as {@link #writeTo(JsonGenerator)} writes it, for logging. Requests stream it instead.
+     */
+    public String toJson() {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+            writeTo(generator);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return json.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    private static SerializedString serialize(JsonNode value) {
+        StringWriter serialized = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(serialized)) {
+            writeValue(generator, value);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new SerializedString(serialized.toString());
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof JsonNode) {
+            try (JsonParser parser = ((JsonNode) value).traverse()) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Integer || value instanceof Long) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+    /**
+     * A cache key comparing arrays by content. The hash is computed up front, outside the cache's lock; arrays
+     * parsed from the same string are the same tree and compare by identity.
+     */
+    private static final class ListKey {
+
+        final Class<?> type;
+        final JsonNode array;
+        final int hash;
+
+        ListKey(Class<?> type, JsonNode array) {
+            this.type = type;
+            this.array = array;
+            this.hash = 31 * type.hashCode() + array.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ListKey)) {
+                return false;
+            }
+            ListKey other = (ListKey) o;
+            return hash == other.hash && type == other.type && array.equals(other.array);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A top-level field of the template, with its name and value serialized once. {@link SerializedString} keeps
+     * their UTF-8 encoding after the first write, so later requests copy bytes.
+     */
+    private static final class Member {
+
+        final SerializedString name;
+        final SerializedString value;
+
+        Member(String name, SerializedString value) {
+            this.name = new SerializedString(name);
+            this.value = value;
+        }
+    }
+}
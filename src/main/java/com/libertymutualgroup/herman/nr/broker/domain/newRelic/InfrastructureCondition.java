@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain.newRelic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.List;
+
+/**
+ * An infrastructure condition, as sent to the Infrastructure API's {@code /alerts/conditions}.
+ */
+public final class InfrastructureCondition extends AlertTemplate {
+
+    private InfrastructureCondition(JsonNode json) {
+        super(json, "policy_id");
+    }
+
+    private InfrastructureCondition(InfrastructureCondition template, String field, Object value) {
+        super(template, field, value);
+    }
+
+    /**
+     * @return {@code null} if {@code conditions} is {@code null}
+     */
+    public static List<InfrastructureCondition> listOf(JsonNode conditions) {
+        return elementsOf(conditions, InfrastructureCondition.class, InfrastructureCondition::new);
+    }
+
+    public InfrastructureCondition withPolicyId(int policyId) {
+        return new InfrastructureCondition(this, "policy_id", policyId);
+    }
+}
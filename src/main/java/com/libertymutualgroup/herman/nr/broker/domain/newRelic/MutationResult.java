@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain.newRelic;
+
+/**
+ * The outcome of creating one resource as part of a batched NerdGraph request: the new resource's ID, or the error
+ * New Relic reported for it.
+ */
+public class MutationResult {
+
+    String name;
+    String id;
+    String error;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isSuccessful() {
+        return id != null && error == null;
+    }
+
+    public MutationResult withName(final String name) {
+        this.name = name;
+        return this;
+    }
+
+    public MutationResult withId(final String id) {
+        this.id = id;
+        return this;
+    }
+
+    public MutationResult withError(final String error) {
+        this.error = error;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "MutationResult{" +
+            "name='" + name + '\'' +
+            ", id='" + id + '\'' +
+            ", error='" + error + '\'' +
+            '}';
+    }
+}
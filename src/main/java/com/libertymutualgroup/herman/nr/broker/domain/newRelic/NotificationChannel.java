@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain.newRelic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.List;
+
+/**
+ * A notification channel, as sent to {@code /alerts_channels}.
+ */
+public final class NotificationChannel extends AlertTemplate {
+
+    private NotificationChannel(JsonNode json) {
+        super(json, "name");
+    }
+
+    private NotificationChannel(NotificationChannel template, String field, Object value) {
+        super(template, field, value);
+    }
+
+    /**
+     * @return {@code null} if {@code channels} is {@code null}
+     */
+    public static List<NotificationChannel> listOf(JsonNode channels) {
+        return elementsOf(channels, NotificationChannel.class, NotificationChannel::new);
+    }
+
+    public String getType() {
+        return path("type").asText();
+    }
+
+    /**
+     * A copy of the channel's {@code configuration} object.
+     */
+    public JsonNode getConfiguration() {
+        return path("configuration").deepCopy();
+    }
+
+    public NotificationChannel withName(String name) {
+        return new NotificationChannel(this, "name", name);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain.newRelic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.List;
+
+/**
+ * A Synthetics monitor, as sent to the Synthetics API's {@code /monitors}.
+ */
+public final class SyntheticsMonitor extends AlertTemplate {
+
+    private SyntheticsMonitor(JsonNode json) {
+        super(json, "name");
+    }
+
+    private SyntheticsMonitor(SyntheticsMonitor template, String field, Object value) {
+        super(template, field, value);
+    }
+
+    /**
+     * @return {@code null} if {@code monitors} is {@code null}
+     */
+    public static List<SyntheticsMonitor> listOf(JsonNode monitors) {
+        return elementsOf(monitors, SyntheticsMonitor.class, SyntheticsMonitor::new);
+    }
+
+    public SyntheticsMonitor withName(String name) {
+        return new SyntheticsMonitor(this, "name", name);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.operations;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a shared executor with at most {@code limit} of them in flight; the rest wait in submission order.
+ */
+class LimitedExecutor implements Executor {
+
+    private final Executor delegate;
+    private final int limit;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    LimitedExecutor(Executor delegate, int limit) {
+        this.delegate = delegate;
+        this.limit = Math.max(1, limit);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        pending.add(task);
+        drain();
+    }
+
+    private void drain() {
+        while (!pending.isEmpty()) {
+            int current = active.get();
+            if (current >= limit) {
+                return;
+            }
+            if (!active.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable task = pending.poll();
+            if (task == null) {
+                active.decrementAndGet();
+                continue;
+            }
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    drain();
+                }
+            });
+        }
+    }
+}
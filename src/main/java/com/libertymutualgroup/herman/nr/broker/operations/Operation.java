@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.operations;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * One step of a broker run. An operation is started by the {@link OperationExecutor} as soon as all of its
+ * dependencies have completed successfully; if any of them failed it is skipped.
+ */
+public class Operation<T> {
+
+    private final String name;
+    private final Supplier<T> action;
+    private final List<Operation<?>> dependencies;
+    private final CompletableFuture<T> source;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    private volatile boolean ran;
+    private volatile Throwable dependencyFailure;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    Operation(String name, Supplier<T> action, List<Operation<?>> dependencies) {
+        this.name = name;
+        this.action = action;
+        this.dependencies = dependencies;
+        this.source = null;
+    }
+
+    Operation(String name, CompletableFuture<T> source) {
+        this.name = name;
+        this.action = null;
+        this.dependencies = Collections.emptyList();
+        this.source = source;
+        this.startNanos = System.nanoTime();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Operation<?>> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * The result of this operation. Only valid from a dependent operation, or once the run has finished.
+     */
+    public T get() {
+        return result.join();
+    }
+
+    /**
+     * Why this operation did not complete: its own failure, or the failure of the dependency that caused it to be
+     * skipped. {@code null} if it succeeded or has not finished.
+     */
+    public Throwable getFailure() {
+        if (!result.isCompletedExceptionally()) {
+            return null;
+        }
+        if (dependencyFailure != null) {
+            return dependencyFailure;
+        }
+        try {
+            result.join();
+            return null;
+        } catch (CompletionException ex) {
+            return ex.getCause();
+        }
+    }
+
+    public long getDurationMillis() {
+        return ran ? TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos) : 0;
+    }
+
+    boolean hasRun() {
+        return ran;
+    }
+
+    long getEndNanos() {
+        return endNanos;
+    }
+
+    CompletableFuture<T> future() {
+        return result;
+    }
+
+    boolean isAwaiting() {
+        return source != null;
+    }
+
+    /**
+     * Completes this operation with the outcome of work that was started outside the graph, without occupying a
+     * thread while it is in flight.
+     */
+    void await() {
+        ran = true;
+        source.whenComplete((value, ex) -> {
+            endNanos = System.nanoTime();
+            if (ex != null) {
+                result.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null
+                    ? ex.getCause()
+                    : ex);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    void run() {
+        ran = true;
+        startNanos = System.nanoTime();
+        try {
+            T value = action.get();
+            endNanos = System.nanoTime();
+            result.complete(value);
+        } catch (Throwable ex) {
+            endNanos = System.nanoTime();
+            result.completeExceptionally(ex);
+        }
+    }
+
+    void skip(Throwable dependencyFailure) {
+        this.dependencyFailure = dependencyFailure;
+        startNanos = System.nanoTime();
+        endNanos = startNanos;
+        result.completeExceptionally(
+            new IllegalStateException(String.format("Skipped %s because a dependency failed", name),
+                dependencyFailure));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
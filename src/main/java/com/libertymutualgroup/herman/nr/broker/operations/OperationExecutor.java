@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.operations;
+
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Executes an {@link OperationGraph} on the New Relic I/O executor. Each operation starts as soon as its
+ * dependencies have completed, with at most {@code newrelic.execution.maxOperationConcurrency} operations of one
+ * run in flight. A failed operation does not stop unrelated branches; only its dependents are skipped.
+ */
+@Component
+public class OperationExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OperationExecutor.class);
+
+    private final Executor executor;
+    private final int maxConcurrency;
+
+    @Autowired
+    public OperationExecutor(@Qualifier("newRelicIoExecutor") ThreadPoolTaskExecutor executor,
+        NewRelicBrokerProperties properties) {
+        this.executor = executor;
+        this.maxConcurrency = properties.getExecution().getMaxOperationConcurrency();
+    }
+
+    /**
+     * Runs every operation of {@code graph} and waits for all of them to finish.
+     */
+    public OperationRun execute(String runName, OperationGraph graph) {
+        long start = System.nanoTime();
+        Executor limited = new LimitedExecutor(executor, maxConcurrency);
+        List<Operation<?>> operations = graph.getOperations();
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[operations.size()];
+        for (int i = 0; i < operations.size(); i++) {
+            Operation<?> operation = operations.get(i);
+            schedule(operation, limited);
+            futures[i] = operation.future();
+        }
+        CompletableFuture.allOf(futures).handle((ignored, ex) -> null).join();
+
+        OperationRun run = new OperationRun(operations, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOG.info("{} finished in {} ms, critical path: {}", runName, run.getElapsedMillis(),
+            run.describeCriticalPath());
+        return run;
+    }
+
+    private void schedule(Operation<?> operation, Executor limited) {
+        if (operation.isAwaiting()) {
+            operation.await();
+            return;
+        }
+
+        CompletableFuture<?>[] dependencies = operation.getDependencies().stream()
+            .map(Operation::future)
+            .toArray(CompletableFuture<?>[]::new);
+
+        CompletableFuture.allOf(dependencies).whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                // Report the failure that started the chain, not the skips in between
+                operation.skip(operation.getDependencies().stream()
+                    .map(Operation::getFailure)
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(ex));
+                return;
+            }
+            try {
+                limited.execute(operation::run);
+            } catch (RuntimeException rejected) {
+                operation.skip(rejected);
+            }
+        });
+    }
+}
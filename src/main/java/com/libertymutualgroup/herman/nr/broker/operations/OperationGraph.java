@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * The steps of a broker run and what each one needs first. Because an operation can only depend on operations
+ * that were already added, the graph is acyclic by construction.
+ */
+public class OperationGraph {
+
+    private final List<Operation<?>> operations = new ArrayList<>();
+
+    public <T> Operation<T> supply(String name, Supplier<T> action, Operation<?>... dependencies) {
+        Operation<T> operation = new Operation<>(name, action,
+            Collections.unmodifiableList(Arrays.asList(dependencies)));
+        operations.add(operation);
+        return operation;
+    }
+
+    public Operation<Void> run(String name, Runnable action, Operation<?>... dependencies) {
+        return supply(name, () -> {
+            action.run();
+            return null;
+        }, dependencies);
+    }
+
+    /**
+     * Adds the outcome of work already in flight, such as a prefetched lookup, so that operations can depend on it.
+     * Its duration is measured from this call.
+     */
+    public <T> Operation<T> await(String name, CompletableFuture<T> future) {
+        Operation<T> operation = new Operation<>(name, future);
+        operations.add(operation);
+        return operation;
+    }
+
+    List<Operation<?>> getOperations() {
+        return operations;
+    }
+}
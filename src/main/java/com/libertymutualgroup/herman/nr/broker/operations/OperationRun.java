@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.operations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The outcome of executing an {@link OperationGraph}.
+ */
+public class OperationRun {
+
+    private final List<Operation<?>> operations;
+    private final long elapsedMillis;
+
+    OperationRun(List<Operation<?>> operations, long elapsedMillis) {
+        this.operations = operations;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * The first failure of an operation that actually ran, or {@code null} if every operation succeeded.
+     */
+    public Throwable getFailure() {
+        for (Operation<?> operation : operations) {
+            if (operation.hasRun() && operation.getFailure() != null) {
+                return operation.getFailure();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The chain of operations that determined the run's total duration: starting from the operation that finished
+     * last, each step is the dependency that finished last.
+     */
+    public List<Operation<?>> getCriticalPath() {
+        Comparator<Operation<?>> byEnd = Comparator.comparingLong(Operation::getEndNanos);
+
+        List<Operation<?>> path = new ArrayList<>();
+        Operation<?> current = operations.stream().filter(Operation::hasRun).max(byEnd).orElse(null);
+        while (current != null) {
+            path.add(current);
+            current = current.getDependencies().stream().filter(Operation::hasRun).max(byEnd).orElse(null);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    public String describeCriticalPath() {
+        return getCriticalPath().stream()
+            .map(operation -> String.format("%s (%d ms)", operation.getName(), operation.getDurationMillis()))
+            .collect(Collectors.joining(" -> "));
+    }
+}
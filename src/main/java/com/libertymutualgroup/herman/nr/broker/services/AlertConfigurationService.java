@@ -15,18 +15,34 @@
  */
 package com.libertymutualgroup.herman.nr.broker.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.libertymutualgroup.herman.nr.broker.clients.CircuitBreakerOpenException;
 import com.libertymutualgroup.herman.nr.broker.clients.NewRelicClient;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerPhase;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerResourceType;
 import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
 import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
 import com.libertymutualgroup.herman.nr.broker.domain.NewRelicConfiguration;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ApplicationCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.InfrastructureCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.MutationResult;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NotificationChannel;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NrqlCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.PluginsCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.SyntheticsMonitor;
+import com.libertymutualgroup.herman.nr.broker.operations.Operation;
+import com.libertymutualgroup.herman.nr.broker.operations.OperationGraph;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
@@ -37,22 +53,31 @@ public class AlertConfigurationService {
     @Autowired
     NewRelicClient newRelicClient;
 
-    public List<HermanBrokerUpdate> configureAlerts(Application application, String policyName,
-        NewRelicConfiguration configuration) {
+    /**
+     * Adds the steps that configure alerts to {@code graph}. Existing account state is taken from {@code prefetch}
+     * where it was prefetched, and read by the graph otherwise. Application conditions need {@code application};
+     * if it completes with {@code null}, they are reported as skipped, naming {@code applicationName}.
+     *
+     * @return an operation that completes once every alert configuration step has finished, and fails if any of
+     * them did
+     */
+    public Operation<Void> planAlerts(OperationGraph graph, Operation<Application> application, String applicationName,
+        String policyName, NewRelicConfiguration configuration, Consumer<HermanBrokerUpdate> brokerUpdates,
+        NewRelicPrefetch prefetch) {
         try {
-            List<HermanBrokerUpdate> brokerUpdates = new ArrayList<>();
             if (configuration != null && configuration.getChannels() != null) {
-                ObjectMapper objectMapper = new ObjectMapper();
-
                 // Required property values
-                ArrayNode channels = objectMapper.readValue(configuration.getChannels(), ArrayNode.class);
+                List<NotificationChannel> channels = NotificationChannel.listOf(configuration.getChannels());
 
                 // Optional property values
-                ArrayNode applicationAlertsConditions = getApplicationAlertsConditions(configuration);
-                ArrayNode pluginAlertsConditions = getPluginAlertsConditions(configuration);
-                ArrayNode nrqlAlertsConditions = getNrqlAlertsConditions(configuration);
-                ArrayNode infrastructureAlertsConditions = getInfrastructureAlertsConditions(configuration);
-                ArrayNode synthetics = getSynthetics(configuration);
+                List<ApplicationCondition> applicationAlertsConditions =
+                    ApplicationCondition.listOf(configuration.getConditions());
+                List<PluginsCondition> pluginAlertsConditions =
+                    PluginsCondition.listOf(configuration.getPluginConditions());
+                List<NrqlCondition> nrqlAlertsConditions = NrqlCondition.listOf(configuration.getNrqlConditions());
+                List<InfrastructureCondition> infrastructureAlertsConditions =
+                    InfrastructureCondition.listOf(configuration.getInfrastructureConditions());
+                List<SyntheticsMonitor> synthetics = SyntheticsMonitor.listOf(configuration.getSynthetics());
 
                 Assert.isTrue(
                     applicationAlertsConditions != null
@@ -62,99 +87,145 @@ public class AlertConfigurationService {
                         || synthetics != null,
                     "There are no alerts conditions defined");
 
-                // Delete existing policies and channels
-                newRelicClient.deletePoliciesByName(policyName);
-                newRelicClient.deleteChannelsByApplicationName(policyName);
+                List<Operation<?>> steps = new ArrayList<>();
 
-                brokerUpdates.add(new HermanBrokerUpdate()
+                // Delete existing policies and channels
+                long cleanupStart = System.nanoTime();
+                Operation<String> existingPolicy = add(steps, lookup(graph, "findPolicy", prefetch.getPolicyId(),
+                    () -> newRelicClient.findPolicyIdByName(policyName)));
+                Operation<Void> deletePolicies = add(steps, graph.run("deletePolicy", () -> {
+                    String existingPolicyId = existingPolicy.get();
+                    if (existingPolicyId != null) {
+                        newRelicClient.deletePolicy(existingPolicyId);
+                    }
+                }, existingPolicy));
+                Operation<List<ResourceSummary>> existingChannels = add(steps, lookup(graph, "findChannels",
+                    prefetch.getChannels(), () -> newRelicClient.findChannelsWithPrefix(policyName)));
+                Operation<Void> deleteChannels = add(steps, graph.run("deleteChannels",
+                    () -> newRelicClient.deleteChannels(policyName, existingChannels.get()), existingChannels));
+                add(steps, graph.run("reportCleanup", () -> brokerUpdates.accept(new HermanBrokerUpdate()
                     .withStatus(HermanBrokerStatus.PENDING)
-                    .withMessage("Previous alerts policy and channels deleted for application " + policyName));
+                    .withPhase(HermanBrokerPhase.ALERTS_CLEANUP)
+                    .withDurationSince(cleanupStart)
+                    .withMessage("Previous alerts policy and channels deleted for application " + policyName)),
+                    deletePolicies, deleteChannels));
 
                 // Create new policy
-                String policyId = newRelicClient.createPolicy(policyName);
-
-                brokerUpdates.add(new HermanBrokerUpdate()
-                    .withStatus(HermanBrokerStatus.PENDING)
-                    .withMessage("Alerts policy created: ID = " + policyId));
+                Operation<String> createPolicy = add(steps, graph.supply("createPolicy", () -> {
+                    long policyStart = System.nanoTime();
+                    String policyId = newRelicClient.createPolicy(policyName);
+                    brokerUpdates.accept(new HermanBrokerUpdate()
+                        .withStatus(HermanBrokerStatus.PENDING)
+                        .withPhase(HermanBrokerPhase.ALERTS_POLICY)
+                        .withResourceType(HermanBrokerResourceType.ALERTS_POLICY)
+                        .withResourceId(policyId)
+                        .withDurationSince(policyStart));
+                    return policyId;
+                }, deletePolicies));
 
                 // Create application alerts conditions
-                if (applicationAlertsConditions != null && application != null) {
-                    createApplicationAlertsConditions(application.getId(), objectMapper, applicationAlertsConditions,
-                        policyId);
-
-                    brokerUpdates.add(new HermanBrokerUpdate()
-                        .withStatus(HermanBrokerStatus.PENDING)
-                        .withMessage(String.format("%s alerts condition%s created", applicationAlertsConditions.size(),
-                            applicationAlertsConditions.size() > 1 ? "s" : "")));
+                if (applicationAlertsConditions != null) {
+                    add(steps, graph.run("createApplicationConditions", () -> {
+                        if (application.get() != null) {
+                            String applicationId = application.get().getId().toString();
+                            createConditions(HermanBrokerResourceType.APPLICATION_CONDITION,
+                                applicationAlertsConditions,
+                                condition -> newRelicClient.createApplicationAlertsConditions(createPolicy.get(),
+                                    applicationId, condition),
+                                brokerUpdates);
+                        } else {
+                            reportSkippedApplicationConditions(applicationAlertsConditions, applicationName,
+                                brokerUpdates);
+                        }
+                    }, createPolicy, application));
                 }
 
                 // Create plugin alerts conditions
                 if (pluginAlertsConditions != null) {
-                    pluginAlertsConditions.elements()
-                        .forEachRemaining(condition -> newRelicClient.createPluginsCondition(policyId, condition));
-
-                    brokerUpdates.add(new HermanBrokerUpdate()
-                        .withStatus(HermanBrokerStatus.PENDING)
-                        .withMessage(String
-                            .format("%s plugin alerts condition%s created", pluginAlertsConditions.size(),
-                                pluginAlertsConditions.size() > 1 ? "s" : "")));
+                    add(steps, graph.run("createPluginConditions", () -> createConditions(
+                        HermanBrokerResourceType.PLUGIN_CONDITION, pluginAlertsConditions,
+                        condition -> newRelicClient.createPluginsCondition(createPolicy.get(), condition),
+                        brokerUpdates), createPolicy));
                 }
 
                 // Create NRQL alerts conditions
                 if (nrqlAlertsConditions != null) {
-                    nrqlAlertsConditions.elements()
-                        .forEachRemaining(condition -> newRelicClient.createNrqlAlertsConditions(policyId, condition));
-
-                    brokerUpdates.add(new HermanBrokerUpdate()
-                        .withStatus(HermanBrokerStatus.PENDING)
-                        .withMessage(String.format("%s NRQL alerts condition%s created", nrqlAlertsConditions.size(),
-                            nrqlAlertsConditions.size() > 1 ? "s" : "")));
+                    add(steps, graph.run("createNrqlConditions", () -> {
+                        if (newRelicClient.isBatchWriteEnabled()) {
+                            createConditionsInBatches(HermanBrokerResourceType.NRQL_CONDITION, nrqlAlertsConditions,
+                                conditions -> newRelicClient.createNrqlAlertsConditions(createPolicy.get(),
+                                    conditions),
+                                brokerUpdates);
+                        } else {
+                            createConditions(HermanBrokerResourceType.NRQL_CONDITION, nrqlAlertsConditions,
+                                condition -> newRelicClient.createNrqlAlertsConditions(createPolicy.get(), condition),
+                                brokerUpdates);
+                        }
+                    }, createPolicy));
                 }
 
                 if (infrastructureAlertsConditions != null) {
-                    infrastructureAlertsConditions.elements()
-                        .forEachRemaining(condition -> newRelicClient.createInfraAlertsConditions(policyId, condition));
-
-                    brokerUpdates.add(new HermanBrokerUpdate()
-                        .withStatus(HermanBrokerStatus.PENDING)
-                        .withMessage(String.format("%s Infrastructure alerts condition%s created",
-                            infrastructureAlertsConditions.size(),
-                            infrastructureAlertsConditions.size() > 1 ? "s" : "")));
+                    add(steps, graph.run("createInfrastructureConditions", () -> createConditions(
+                        HermanBrokerResourceType.INFRASTRUCTURE_CONDITION, infrastructureAlertsConditions,
+                        condition -> newRelicClient.createInfraAlertsConditions(createPolicy.get(), condition),
+                        brokerUpdates), createPolicy));
                 }
 
                 if (synthetics != null) {
-                    synthetics.elements().forEachRemaining(
-                        condition -> newRelicClient.createSynthetics(condition, policyName, policyId));
-
-                    brokerUpdates.add(new HermanBrokerUpdate()
-                        .withStatus(HermanBrokerStatus.PENDING)
-                        .withMessage(String.format("%s Synthetics Monitor%s created", synthetics.size(),
-                            synthetics.size() > 1 ? "s" : "")));
+                    Operation<List<ResourceSummary>> existingMonitors = add(steps, lookup(graph, "findMonitors",
+                        prefetch.getMonitors(), () -> newRelicClient.findExistingSyntheticsMonitors(policyName)));
+                    add(steps, graph.run("createSynthetics", () -> {
+                        // Only the first monitor replaces what was looked up; later ones look again, as before
+                        AtomicReference<List<ResourceSummary>> lookedUp =
+                            new AtomicReference<>(existingMonitors.get());
+                        createConditions(HermanBrokerResourceType.SYNTHETICS_MONITOR, synthetics, condition -> {
+                            List<ResourceSummary> monitors = lookedUp.getAndSet(null);
+                            if (monitors != null) {
+                                newRelicClient.createSynthetics(condition, policyName, createPolicy.get(), monitors);
+                            } else {
+                                newRelicClient.createSynthetics(condition, policyName, createPolicy.get());
+                            }
+                        }, brokerUpdates);
+                    }, createPolicy, existingMonitors));
                 }
 
                 // Create alerts policy channels
-                Set<String> channelIds = new HashSet<>();
-                channels.elements().forEachRemaining(channel -> {
-                    String channelName = channel.get("name").asText();
-                    ((ObjectNode) channel).put("name", String.format("%s-%s", policyName, channelName));
-                    channelIds.add(newRelicClient.createChannel(channel));
-                });
+                long channelsStart = System.nanoTime();
+                Operation<Set<String>> createChannels = add(steps, graph.supply("createChannels", () -> {
+                    List<NotificationChannel> policyChannels = channels.stream()
+                        .map(channel -> channel.withName(policyName + "-" + channel.getName()))
+                        .collect(Collectors.toList());
+
+                    Set<String> channelIds = new HashSet<>();
+                    for (MutationResult result : newRelicClient.createChannels(policyChannels)) {
+                        if (result.isSuccessful()) {
+                            channelIds.add(result.getId());
+                        } else {
+                            reportFailedCreation(HermanBrokerResourceType.CHANNEL, result, brokerUpdates);
+                        }
+                    }
+                    return channelIds;
+                }, deleteChannels));
 
                 // Add channels to the policy
-                newRelicClient.addChannelsToPolicy(channelIds, policyId);
+                add(steps, graph.run("addChannelsToPolicy", () -> {
+                    Set<String> channelIds = createChannels.get();
+                    newRelicClient.addChannelsToPolicy(channelIds, createPolicy.get());
 
-                brokerUpdates.add(new HermanBrokerUpdate()
-                    .withStatus(HermanBrokerStatus.PENDING)
-                    .withMessage(String.format("%s alerts policy channel%s created", channelIds.size(),
-                        channelIds.size() > 1 ? "s" : "")));
+                    brokerUpdates.accept(new HermanBrokerUpdate()
+                        .withStatus(HermanBrokerStatus.PENDING)
+                        .withPhase(HermanBrokerPhase.ALERTS_CHANNELS)
+                        .withResourceType(HermanBrokerResourceType.CHANNEL)
+                        .withCount(channelIds.size())
+                        .withDurationSince(channelsStart));
+                }, createPolicy, createChannels));
 
+                return graph.run("alertConfiguration", () -> { }, steps.toArray(new Operation<?>[0]));
             } else {
-                brokerUpdates.add(new HermanBrokerUpdate()
+                return graph.run("alertConfiguration", () -> brokerUpdates.accept(new HermanBrokerUpdate()
                     .withStatus(HermanBrokerStatus.PENDING)
-                    .withMessage("Alert configuration is not defined in the Herman template file"));
+                    .withMessage("Alert configuration is not defined in the Herman template file")));
             }
-
-            return brokerUpdates;
         } catch (Exception ex) {
             throw new RuntimeException(
                 String.format("Error processing alert configuration request for policy %s", policyName),
@@ -162,85 +233,116 @@ public class AlertConfigurationService {
         }
     }
 
-    private void createApplicationAlertsConditions(Integer applicationId, ObjectMapper objectMapper,
-        ArrayNode conditions,
-        String policyId) {
-        conditions.elements().forEachRemaining(condition -> {
-            ArrayNode entities = objectMapper.createArrayNode().add(applicationId.toString());
-            ((ObjectNode) condition).set("entities", entities);
-            newRelicClient.createApplicationAlertsConditions(policyId, condition);
-        });
+    private static <T> Operation<T> lookup(OperationGraph graph, String name, CompletableFuture<T> prefetched,
+        Supplier<T> read) {
+        return prefetched != null ? graph.await(name, prefetched) : graph.supply(name, read);
     }
 
-    private ArrayNode getApplicationAlertsConditions(NewRelicConfiguration configuration) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            ArrayNode applicationAlertsConditions = null;
-            if (configuration.getConditions() != null) {
-                applicationAlertsConditions = objectMapper.readValue(configuration.getConditions(), ArrayNode.class);
-            }
-            return applicationAlertsConditions;
-        } catch (Exception ex) {
-            throw new RuntimeException("Error getting application alerts conditions", ex);
-        }
+    private static <T> Operation<T> add(List<Operation<?>> steps, Operation<T> step) {
+        steps.add(step);
+        return step;
     }
 
-    private ArrayNode getPluginAlertsConditions(NewRelicConfiguration configuration) {
+    /**
+     * Creates one kind of condition. If the New Relic endpoint behind it is failing fast because its circuit breaker
+     * is open, an ERROR update is reported for this kind only and the remaining phases carry on.
+     */
+    private <T> void createConditions(HermanBrokerResourceType resourceType, List<T> conditions,
+        Consumer<T> creator, Consumer<HermanBrokerUpdate> brokerUpdates) {
+        long start = System.nanoTime();
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-
-            ArrayNode pluginsConditions = null;
-            if (configuration.getPluginConditions() != null) {
-                pluginsConditions = objectMapper.readValue(configuration.getPluginConditions(), ArrayNode.class);
+            conditions.forEach(creator);
+        } catch (RuntimeException ex) {
+            CircuitBreakerOpenException circuitBreakerOpen = CircuitBreakerOpenException.find(ex);
+            if (circuitBreakerOpen == null) {
+                throw ex;
             }
-            return pluginsConditions;
-
-        } catch (Exception ex) {
-            throw new RuntimeException("Error getting plugin alerts conditions", ex);
+            brokerUpdates.accept(new HermanBrokerUpdate()
+                .withStatus(HermanBrokerStatus.ERROR)
+                .withPhase(HermanBrokerPhase.ALERTS_CONDITIONS)
+                .withResourceType(resourceType)
+                .withDurationSince(start)
+                .withMessage(String.format("Skipped creating %ss: %s", resourceType.getLabel(),
+                    circuitBreakerOpen.getMessage())));
+            return;
         }
+
+        brokerUpdates.accept(new HermanBrokerUpdate()
+            .withStatus(HermanBrokerStatus.PENDING)
+            .withPhase(HermanBrokerPhase.ALERTS_CONDITIONS)
+            .withResourceType(resourceType)
+            .withCount(conditions.size())
+            .withDurationSince(start));
     }
 
-    private ArrayNode getNrqlAlertsConditions(NewRelicConfiguration configuration) {
+    /**
+     * Creates one kind of condition through batched requests. Conditions New Relic rejects are reported one ERROR
+     * update each; the rest are counted together as with {@link #createConditions}.
+     */
+    private <T> void createConditionsInBatches(HermanBrokerResourceType resourceType, List<T> conditions,
+        Function<List<T>, List<MutationResult>> creator, Consumer<HermanBrokerUpdate> brokerUpdates) {
+        long start = System.nanoTime();
+        List<MutationResult> results;
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-
-            ArrayNode getNrqlConditions = null;
-            if (configuration.getNrqlConditions() != null) {
-                getNrqlConditions = objectMapper.readValue(configuration.getNrqlConditions(), ArrayNode.class);
+            results = creator.apply(conditions);
+        } catch (RuntimeException ex) {
+            CircuitBreakerOpenException circuitBreakerOpen = CircuitBreakerOpenException.find(ex);
+            if (circuitBreakerOpen == null) {
+                throw ex;
             }
-            return getNrqlConditions;
-
-        } catch (Exception ex) {
-            throw new RuntimeException("Error getting NRQL alerts conditions", ex);
+            brokerUpdates.accept(new HermanBrokerUpdate()
+                .withStatus(HermanBrokerStatus.ERROR)
+                .withPhase(HermanBrokerPhase.ALERTS_CONDITIONS)
+                .withResourceType(resourceType)
+                .withDurationSince(start)
+                .withMessage(String.format("Skipped creating %ss: %s", resourceType.getLabel(),
+                    circuitBreakerOpen.getMessage())));
+            return;
         }
-    }
-
-    private ArrayNode getInfrastructureAlertsConditions(NewRelicConfiguration configuration) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
 
-            ArrayNode getInfrastructureConditions = null;
-            if (configuration.getInfrastructureConditions() != null) {
-                getInfrastructureConditions = objectMapper
-                    .readValue(configuration.getInfrastructureConditions(), ArrayNode.class);
+        int created = 0;
+        for (MutationResult result : results) {
+            if (result.isSuccessful()) {
+                created++;
+            } else {
+                reportFailedCreation(resourceType, result, brokerUpdates);
             }
-            return getInfrastructureConditions;
-        } catch (Exception e) {
-            throw new RuntimeException("Error getting Infrastructure alerts coinditions", e);
         }
+
+        brokerUpdates.accept(new HermanBrokerUpdate()
+            .withStatus(HermanBrokerStatus.PENDING)
+            .withPhase(HermanBrokerPhase.ALERTS_CONDITIONS)
+            .withResourceType(resourceType)
+            .withCount(created)
+            .withDurationSince(start));
     }
 
-    private ArrayNode getSynthetics(NewRelicConfiguration configuration) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
+    /**
+     * Application conditions are created against the application, so without it none of them can be.
+     */
+    private void reportSkippedApplicationConditions(List<ApplicationCondition> conditions, String applicationName,
+        Consumer<HermanBrokerUpdate> brokerUpdates) {
+        HermanBrokerResourceType resourceType = HermanBrokerResourceType.APPLICATION_CONDITION;
+        String names = conditions.stream().map(ApplicationCondition::getName).collect(Collectors.joining(", "));
+        brokerUpdates.accept(new HermanBrokerUpdate()
+            .withStatus(HermanBrokerStatus.ERROR)
+            .withPhase(HermanBrokerPhase.ALERTS_CONDITIONS)
+            .withResourceType(resourceType)
+            .withMessage(String.format("Skipped creating %d %ss (%s): %s", conditions.size(), resourceType.getLabel(),
+                names, applicationName != null
+                    ? "New Relic application " + applicationName + " could not be found"
+                    : "no New Relic application was named in the request")));
+    }
 
-            ArrayNode getSynthetics = null;
-            if (configuration.getSynthetics() != null) {
-                getSynthetics = objectMapper.readValue(configuration.getSynthetics(), ArrayNode.class);
-            }
-            return getSynthetics;
-        } catch (Exception e) {
-            throw new RuntimeException("Error getting Synthetics", e);
-        }
+    private void reportFailedCreation(HermanBrokerResourceType resourceType, MutationResult result,
+        Consumer<HermanBrokerUpdate> brokerUpdates) {
+        brokerUpdates.accept(new HermanBrokerUpdate()
+            .withStatus(HermanBrokerStatus.ERROR)
+            .withPhase(resourceType == HermanBrokerResourceType.CHANNEL
+                ? HermanBrokerPhase.ALERTS_CHANNELS
+                : HermanBrokerPhase.ALERTS_CONDITIONS)
+            .withResourceType(resourceType)
+            .withMessage(String.format("Could not create %s %s: %s", resourceType.getLabel(), result.getName(),
+                result.getError())));
     }
 }
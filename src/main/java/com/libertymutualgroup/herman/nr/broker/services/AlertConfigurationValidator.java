@@ -0,0 +1,278 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicConfiguration;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks the alert configuration of a request before anything is sent to New Relic, so that a malformed template
+ * fails before the existing policy and channels are deleted. Results are cached by a hash of the configuration, so
+ * a template that has been seen before is not checked again.
+ *
+ * <p>Channels of the types listed here have their configuration checked. Other types are passed on to New Relic with
+ * a warning, since New Relic may support channel types the broker does not know about.
+ */
+@Component
+public class AlertConfigurationValidator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AlertConfigurationValidator.class);
+
+    private static final int CACHE_SIZE = 512;
+
+    private static final Schema TERM = new Schema("duration", "operator", "threshold", "time_function");
+
+    private static final Schema APPLICATION_CONDITION = new Schema("name", "type", "metric", "terms")
+        .withElements("terms", TERM);
+    private static final Schema PLUGIN_CONDITION = new Schema("name", "metric", "value_function", "entities",
+        "plugin.id", "plugin.guid", "terms")
+        .withElements("terms", TERM);
+    private static final Schema NRQL_CONDITION = new Schema("name", "nrql.query", "nrql.since_value", "terms")
+        .withElements("terms", TERM);
+    private static final Schema INFRASTRUCTURE_CONDITION = new Schema("name", "type");
+    private static final Schema SYNTHETICS_MONITOR = new Schema("type", "frequency", "locations", "status");
+
+    private static final Schema CHANNEL = new Schema("name", "type", "configuration");
+    private static final Map<String, Schema> CHANNEL_TYPES = new HashMap<>();
+
+    static {
+        CHANNEL_TYPES.put("email", new Schema("configuration.recipients"));
+        CHANNEL_TYPES.put("slack", new Schema("configuration.url"));
+        CHANNEL_TYPES.put("pagerduty", new Schema("configuration.service_key"));
+        CHANNEL_TYPES.put("webhook", new Schema("configuration.base_url"));
+        CHANNEL_TYPES.put("opsgenie", new Schema("configuration.api_key"));
+        CHANNEL_TYPES.put("victorops", new Schema("configuration.key", "configuration.route_key"));
+        CHANNEL_TYPES.put("user", new Schema("configuration.user_id"));
+        CHANNEL_TYPES.put("campfire", new Schema("configuration.subdomain", "configuration.token",
+            "configuration.room"));
+        CHANNEL_TYPES.put("hipchat", new Schema("configuration.auth_token", "configuration.room_id"));
+    }
+
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LruCache<String, List<String>> results = new LruCache<>(CACHE_SIZE);
+
+    /**
+     * @throws InvalidAlertConfigurationException listing every problem, if the configuration is invalid
+     */
+    public void validate(NewRelicConfiguration configuration) {
+        if (configuration == null || configuration.getChannels() == null) {
+            return;
+        }
+
+        // Checked outside the cache lock, so requests with other templates are not held up; when two requests
+        // check the same template at once, the first result published is kept
+        String hash = hash(configuration);
+        List<String> errors = results.get(hash);
+        if (errors == null) {
+            List<String> checked = check(configuration);
+            errors = results.putIfAbsent(hash, checked);
+            if (errors == null) {
+                errors = checked;
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new InvalidAlertConfigurationException(errors);
+        }
+    }
+
+    private List<String> check(NewRelicConfiguration configuration) {
+        List<String> errors = new ArrayList<>();
+
+        JsonNode channels = parse("channels", configuration.getChannels(), errors);
+        if (channels != null) {
+            checkElements("channels", channels, CHANNEL, errors);
+            for (int i = 0; i < channels.size(); i++) {
+                JsonNode type = channels.get(i).get("type");
+                if (type == null || !type.isTextual()) {
+                    continue;
+                }
+                Schema channelType = CHANNEL_TYPES.get(type.asText());
+                if (channelType == null) {
+                    LOG.warn("channels[{}]: channel type '{}' is not known to the broker, so its configuration is "
+                        + "not checked", i, type.asText());
+                } else {
+                    channelType.check("channels[" + i + "]", channels.get(i), errors);
+                }
+            }
+        }
+
+        boolean anyConditions = false;
+        anyConditions |= checkArray("conditions", configuration.getConditions(), APPLICATION_CONDITION, errors);
+        anyConditions |= checkArray("pluginConditions", configuration.getPluginConditions(), PLUGIN_CONDITION,
+            errors);
+        anyConditions |= checkArray("nrqlConditions", configuration.getNrqlConditions(), NRQL_CONDITION, errors);
+        anyConditions |= checkArray("infrastructureConditions", configuration.getInfrastructureConditions(),
+            INFRASTRUCTURE_CONDITION, errors);
+        anyConditions |= checkArray("synthetics", configuration.getSynthetics(), SYNTHETICS_MONITOR, errors);
+        if (!anyConditions) {
+            errors.add("There are no alerts conditions defined");
+        }
+
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * @return whether the array is present
+     */
+    private boolean checkArray(String field, JsonNode json, Schema schema, List<String> errors) {
+        if (json == null) {
+            return false;
+        }
+        JsonNode array = parse(field, json, errors);
+        if (array != null) {
+            checkElements(field, array, schema, errors);
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code json} if it is an array; a string here is one the request deserializer could not parse
+     */
+    private JsonNode parse(String field, JsonNode json, List<String> errors) {
+        if (json.isArray()) {
+            return json;
+        }
+        if (json.isTextual()) {
+            try {
+                objectMapper.readTree(json.asText());
+            } catch (Exception ex) {
+                errors.add(String.format("%s: not valid JSON (%s)", field, ex.getMessage()));
+                return null;
+            }
+        }
+        errors.add(String.format("%s: must be a JSON array", field));
+        return null;
+    }
+
+    private static void checkElements(String path, JsonNode array, Schema schema, List<String> errors) {
+        for (int i = 0; i < array.size(); i++) {
+            schema.check(path + "[" + i + "]", array.get(i), errors);
+        }
+    }
+
+    private String hash(NewRelicConfiguration configuration) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // The arrays are written straight into the digest; an absent array is written as null, unlike an empty one
+            try (JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(new DigestOutputStream(NULL_OUTPUT, digest))) {
+                generator.writeStartArray();
+                for (JsonNode json : Arrays.asList(configuration.getChannels(), configuration.getConditions(),
+                    configuration.getPluginConditions(), configuration.getNrqlConditions(),
+                    configuration.getInfrastructureConditions(), configuration.getSynthetics())) {
+                    if (json == null) {
+                        generator.writeNull();
+                    } else {
+                        generator.writeTree(json);
+                    }
+                }
+                generator.writeEndArray();
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Required fields of one kind of object, given as dotted paths and split once when the schema is built.
+     */
+    private static class Schema {
+
+        private final List<String[]> required = new ArrayList<>();
+        private final Map<String, Schema> elements = new HashMap<>();
+
+        Schema(String... requiredPaths) {
+            for (String path : requiredPaths) {
+                required.add(path.split("\\."));
+            }
+        }
+
+        Schema withElements(String arrayField, Schema elementSchema) {
+            elements.put(arrayField, elementSchema);
+            return this;
+        }
+
+        void check(String path, JsonNode node, List<String> errors) {
+            if (node == null || !node.isObject()) {
+                errors.add(String.format("%s: must be a JSON object", path));
+                return;
+            }
+
+            for (String[] fieldPath : required) {
+                JsonNode value = node;
+                for (String segment : fieldPath) {
+                    value = value.isObject() ? value.get(segment) : null;
+                    if (value == null) {
+                        break;
+                    }
+                }
+                if (value == null || value.isNull() || (value.isTextual() && value.asText().isEmpty())) {
+                    errors.add(String.format("%s: missing required field '%s'", path, String.join(".", fieldPath)));
+                }
+            }
+
+            elements.forEach((arrayField, elementSchema) -> {
+                JsonNode array = node.get(arrayField);
+                if (array == null) {
+                    return;
+                }
+                if (!array.isArray()) {
+                    errors.add(String.format("%s.%s: must be a JSON array", path, arrayField));
+                } else if (array.size() == 0) {
+                    errors.add(String.format("%s.%s: must not be empty", path, arrayField));
+                } else {
+                    checkElements(path + "." + arrayField, array, elementSchema, errors);
+                }
+            });
+        }
+    }
+}
@@ -16,12 +16,13 @@
 package com.libertymutualgroup.herman.nr.broker.services;
 
 import com.libertymutualgroup.herman.nr.broker.clients.NewRelicClient;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerPhase;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerResourceType;
 import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
 import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
 import com.libertymutualgroup.herman.nr.broker.domain.NewRelicConfiguration;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.Consumer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -31,15 +32,18 @@ public class ApplicationConfigurationService {
     @Autowired
     NewRelicClient newRelicClient;
 
-    public List<HermanBrokerUpdate> setApplicationApdex(Application application, NewRelicConfiguration configuration) {
-        List<HermanBrokerUpdate> updates = new ArrayList<>();
+    public void setApplicationApdex(Application application, NewRelicConfiguration configuration,
+        Consumer<HermanBrokerUpdate> updates) {
         if (configuration != null && configuration.getApdex() != null) {
+            long start = System.nanoTime();
             newRelicClient.setApplicationApdex(application.getId(), configuration.getApdex());
-            updates.add(new HermanBrokerUpdate()
+            updates.accept(new HermanBrokerUpdate()
                     .withStatus(HermanBrokerStatus.PENDING)
+                    .withPhase(HermanBrokerPhase.APPLICATION_APDEX)
+                    .withResourceType(HermanBrokerResourceType.APPLICATION)
+                    .withResourceId(application.getId().toString())
+                    .withDurationSince(start)
                     .withMessage("Application apdex updated to " + configuration.getApdex()));
         }
-
-        return updates;
     }
 }
@@ -17,6 +17,8 @@ package com.libertymutualgroup.herman.nr.broker.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.libertymutualgroup.herman.nr.broker.clients.NewRelicClient;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerPhase;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerResourceType;
 import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
 import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
 import com.libertymutualgroup.herman.nr.broker.domain.NewRelicApplicationDeploymentRequest;
@@ -24,26 +26,31 @@ import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ApplicationDeployment;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.CreateApplicationDeploymentRequest;
 import com.libertymutualgroup.herman.nr.broker.domain.newRelic.CreateApplicationDeploymentResponse;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.Consumer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
 public class ApplicationDeploymentService {
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     @Autowired
     NewRelicClient newRelicClient;
 
-    public List<HermanBrokerUpdate> createApplicationDeployment(Application application, NewRelicApplicationDeploymentRequest deployment) {
+    public void createApplicationDeployment(Application application, NewRelicApplicationDeploymentRequest deployment,
+        Consumer<HermanBrokerUpdate> updates) {
         try {
-            List<HermanBrokerUpdate> updates = new ArrayList<>();
+            long start = System.nanoTime();
+            String applicationId = application.getId().toString();
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            updates.add(new HermanBrokerUpdate()
+            updates.accept(new HermanBrokerUpdate()
                     .withStatus(HermanBrokerStatus.PENDING)
+                    .withPhase(HermanBrokerPhase.APPLICATION_DEPLOYMENT)
+                    .withResourceType(HermanBrokerResourceType.APPLICATION)
+                    .withResourceId(applicationId)
                     .withMessage(
-                        String.format("Application found: %s", objectMapper.writeValueAsString(application))));
+                        String.format("Application found: %s", OBJECT_MAPPER.writeValueAsString(application))));
 
             CreateApplicationDeploymentRequest createApplicationDeploymentRequest = new CreateApplicationDeploymentRequest()
                 .withDeployment(new ApplicationDeployment()
@@ -51,20 +58,23 @@ public class ApplicationDeploymentService {
                     .withDescription(deployment.getVersion())
                     .withUser(deployment.getUser()));
 
-            updates.add(new HermanBrokerUpdate()
+            updates.accept(new HermanBrokerUpdate()
                     .withStatus(HermanBrokerStatus.PENDING)
-                    .withMessage(
-                        String.format("Application deployment request: %s", objectMapper.writeValueAsString(createApplicationDeploymentRequest.getDeployment()))));
+                    .withPhase(HermanBrokerPhase.APPLICATION_DEPLOYMENT)
+                    .withResourceType(HermanBrokerResourceType.APPLICATION)
+                    .withResourceId(applicationId)
+                    .withMessage(String.format("Application deployment request: %s",
+                        OBJECT_MAPPER.writeValueAsString(createApplicationDeploymentRequest.getDeployment()))));
 
             CreateApplicationDeploymentResponse createApplicationDeploymentResponse = newRelicClient
                 .createApplicationDeployment(application.getId(), createApplicationDeploymentRequest);
 
-            updates.add(new HermanBrokerUpdate()
+            updates.accept(new HermanBrokerUpdate()
                     .withStatus(HermanBrokerStatus.PENDING)
-                    .withMessage(String.format("Application deployment created: ID = %s",
-                        createApplicationDeploymentResponse.getDeployment().getId())));
-
-            return updates;
+                    .withPhase(HermanBrokerPhase.APPLICATION_DEPLOYMENT)
+                    .withResourceType(HermanBrokerResourceType.APPLICATION_DEPLOYMENT)
+                    .withResourceId(createApplicationDeploymentResponse.getDeployment().getId())
+                    .withDurationSince(start));
         } catch (Exception ex) {
             throw new RuntimeException(
                 String.format("Error processing application deployment request for application %s - Herman Request: %s", application, deployment),
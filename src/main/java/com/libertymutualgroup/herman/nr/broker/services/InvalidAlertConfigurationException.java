@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.services;
+
+import java.util.List;
+
+/**
+ * Thrown when the alert configuration of a request does not describe conditions and channels New Relic would accept.
+ * Carries every problem found, not just the first.
+ */
+public class InvalidAlertConfigurationException extends IllegalArgumentException {
+
+    private final List<String> errors;
+
+    public InvalidAlertConfigurationException(List<String> errors) {
+        super("Invalid alert configuration: " + String.join("; ", errors));
+        this.errors = errors;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.services;
+
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Account state a broker request is going to read, requested from New Relic as soon as the request arrives so that
+ * the reads overlap with parsing the configuration. A {@code null} future means the read was not prefetched and is
+ * left to the operation that needs it.
+ *
+ * <p>The reads run against the account bound to the thread that started them, so the prefetch must be closed
+ * before that account's scope is: reads that have not started yet are cancelled and running ones are waited for.
+ */
+public class NewRelicPrefetch implements AutoCloseable {
+
+    private final CompletableFuture<Application> application;
+    private final CompletableFuture<String> policyId;
+    private final CompletableFuture<List<ResourceSummary>> channels;
+    private final CompletableFuture<List<ResourceSummary>> monitors;
+    private final Reads reads;
+
+    /**
+     * A prefetch whose futures derive from the reads started through {@code reads}, which are settled when the
+     * prefetch is closed.
+     */
+    public NewRelicPrefetch(CompletableFuture<Application> application, CompletableFuture<String> policyId,
+        CompletableFuture<List<ResourceSummary>> channels, CompletableFuture<List<ResourceSummary>> monitors,
+        Reads reads) {
+        this.application = application;
+        this.policyId = policyId;
+        this.channels = channels;
+        this.monitors = monitors;
+        this.reads = reads;
+    }
+
+    /**
+     * The application named in the request, or {@code null} if it could not be found.
+     */
+    public CompletableFuture<Application> getApplication() {
+        return application;
+    }
+
+    /**
+     * The ID of the existing alerts policy with the request's policy name, completing with {@code null} if there
+     * is none.
+     */
+    public CompletableFuture<String> getPolicyId() {
+        return policyId;
+    }
+
+    /**
+     * Existing channels of the request's policy.
+     */
+    public CompletableFuture<List<ResourceSummary>> getChannels() {
+        return channels;
+    }
+
+    /**
+     * Existing Synthetics monitors of the request's policy.
+     */
+    public CompletableFuture<List<ResourceSummary>> getMonitors() {
+        return monitors;
+    }
+
+    /**
+     * Cancels the reads that have not started yet and waits for the ones already running.
+     */
+    @Override
+    public void close() {
+        reads.close();
+    }
+
+    /**
+     * Reads started on an executor and kept track of until they are closed.
+     */
+    public static class Reads implements AutoCloseable {
+
+        private final Executor executor;
+        private final List<Read<?>> started = new ArrayList<>();
+
+        public Reads(Executor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Starts {@code supplier} on the executor, like {@link CompletableFuture#supplyAsync(Supplier, Executor)}.
+         */
+        public synchronized <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+            Read<T> read = new Read<>(supplier);
+            executor.execute(read);
+            started.add(read);
+            return read.result;
+        }
+
+        @Override
+        public void close() {
+            List<Read<?>> toSettle;
+            synchronized (this) {
+                toSettle = new ArrayList<>(started);
+                started.clear();
+            }
+            toSettle.forEach(Read::settle);
+        }
+    }
+
+    private static final class Read<T> implements Runnable {
+
+        private final Supplier<T> supplier;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Read(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+        }
+
+        void settle() {
+            if (claimed.compareAndSet(false, true)) {
+                result.cancel(false);
+            } else {
+                result.handle((value, failure) -> null).join();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.services;
+
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicClient;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicConfiguration;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.AccountState;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+@Service
+public class NewRelicPrefetchService {
+
+    @Autowired
+    NewRelicClient newRelicClient;
+
+    @Autowired
+    ThreadPoolTaskExecutor newRelicIoExecutor;
+
+    /**
+     * Starts every read {@code request} is known to need on the I/O executor, against the account bound to the
+     * current thread. Where NerdGraph reads are enabled, the alerts state comes from one query instead of a REST
+     * call per resource. The returned prefetch must be closed before the current account scope is.
+     */
+    public NewRelicPrefetch start(NewRelicBrokerRequest request) {
+        NewRelicPrefetch.Reads reads = new NewRelicPrefetch.Reads(newRelicIoExecutor);
+        try {
+            return start(request, reads);
+        } catch (RuntimeException ex) {
+            reads.close();
+            throw ex;
+        }
+    }
+
+    private NewRelicPrefetch start(NewRelicBrokerRequest request, NewRelicPrefetch.Reads reads) {
+        String applicationName = request.getNewRelicApplicationName();
+        NewRelicConfiguration configuration = request.getConfiguration();
+        if (configuration == null || configuration.getChannels() == null) {
+            return new NewRelicPrefetch(findApplication(applicationName, reads), null, null, null, reads);
+        }
+
+        String policyName = request.getPolicyName();
+        boolean withMonitors = configuration.getSynthetics() != null;
+        if (newRelicClient.isBatchReadEnabled()) {
+            CompletableFuture<AccountState> state = reads.supply(
+                () -> newRelicClient.readAccountState(applicationName, policyName, withMonitors));
+            return new NewRelicPrefetch(
+                state.thenApply(AccountState::getApplication),
+                state.thenApply(AccountState::getPolicyId),
+                state.thenApply(AccountState::getChannels),
+                withMonitors ? state.thenApply(AccountState::getMonitors) : null,
+                reads);
+        }
+
+        return new NewRelicPrefetch(
+            findApplication(applicationName, reads),
+            reads.supply(() -> newRelicClient.findPolicyIdByName(policyName)),
+            reads.supply(() -> newRelicClient.findChannelsWithPrefix(policyName)),
+            withMonitors ? reads.supply(() -> newRelicClient.findExistingSyntheticsMonitors(policyName)) : null,
+            reads);
+    }
+
+    private CompletableFuture<Application> findApplication(String applicationName, NewRelicPrefetch.Reads reads) {
+        return applicationName != null
+            ? reads.supply(() -> newRelicClient.getApplicationForAppName(applicationName))
+            : CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.telemetry;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue that any number of threads offer to without locking or blocking, and one consumer drains.
+ *
+ * <p>Each slot carries a sequence number telling producers and the consumer whose turn it is: a producer claims a
+ * position with a single compare-and-set and publishes the element by advancing the slot's sequence, so a full
+ * buffer is detected without waiting and the element is simply refused.
+ */
+public class EventRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    public EventRingBuffer(int capacity) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds {@code element} unless the buffer is full.
+     *
+     * @return whether the element was added
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds an element from the previous lap
+                return false;
+            } else {
+                // Another producer claimed this position first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code maxElements} elements, oldest first, into {@code target}. Stops early at an element whose
+     * producer has claimed its slot but not yet published it.
+     *
+     * @return the number of elements moved
+     */
+    public synchronized int drainTo(Collection<? super E> target, int maxElements) {
+        int drained = 0;
+        while (drained < maxElements) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            target.add(elements.get(index));
+            elements.set(index, null);
+            sequences.set(index, head + mask + 1);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Elements offered and not yet drained, counting any whose producer has not finished publishing them. Only a
+     * snapshot while producers or the consumer are busy.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.telemetry;
+
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides, per broker request, whether the payloads exchanged with New Relic are logged: a request asking for it
+ * with {@code debug} always is, otherwise a {@code newrelic.payloadLogging.sampleRate} share of requests is.
+ *
+ * <p>{@link #payload(Object)} is passed as a log argument in place of the payload itself. It is only rendered if
+ * the statement is logged, only in full for a sampled request, and never past
+ * {@code newrelic.payloadLogging.maxLength} characters.
+ */
+@Component
+public class PayloadLogging {
+
+    private static final int DEFAULT_MAX_LENGTH = 2048;
+    private static final ThreadLocal<Mode> CURRENT = new ThreadLocal<>();
+
+    @Autowired
+    NewRelicBrokerProperties properties;
+
+    /**
+     * Binds the logging mode for {@code request} to the current thread until the returned scope is closed.
+     */
+    public Scope enter(NewRelicBrokerRequest request) {
+        NewRelicBrokerProperties.PayloadLogging payloadLogging = properties.getPayloadLogging();
+        boolean full = Boolean.TRUE.equals(request.getDebug())
+            || ThreadLocalRandom.current().nextDouble() < payloadLogging.getSampleRate();
+        Scope scope = new Scope(CURRENT.get());
+        CURRENT.set(new Mode(full, payloadLogging.getMaxLength()));
+        return scope;
+    }
+
+    /**
+     * Wraps {@code task} so that it logs payloads the way the submitting thread's request does.
+     */
+    public static Runnable propagate(Runnable task) {
+        Mode mode = CURRENT.get();
+        if (mode == null) {
+            return task;
+        }
+        return () -> {
+            Mode previous = CURRENT.get();
+            CURRENT.set(mode);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * A log argument standing in for {@code payload}: its {@code toString()} renders the payload, truncated, if
+     * the current request's payloads are logged and a placeholder otherwise.
+     */
+    public static Object payload(Object payload) {
+        Mode mode = CURRENT.get();
+        return new Object() {
+            @Override
+            public String toString() {
+                return mode != null && mode.full ? truncate(payload, mode.maxLength) : "(payload not logged)";
+            }
+        };
+    }
+
+    /**
+     * {@code payload} rendered and cut off at the configured length, for error messages.
+     */
+    public static String truncate(Object payload) {
+        Mode mode = CURRENT.get();
+        return truncate(payload, mode != null ? mode.maxLength : DEFAULT_MAX_LENGTH);
+    }
+
+    private static String truncate(Object payload, int maxLength) {
+        String rendered = String.valueOf(payload);
+        if (rendered.length() <= maxLength) {
+            return rendered;
+        }
+        return rendered.substring(0, maxLength) + "... (" + (rendered.length() - maxLength) + " more characters)";
+    }
+
+    private static class Mode {
+
+        final boolean full;
+        final int maxLength;
+
+        Mode(boolean full, int maxLength) {
+            this.full = full;
+            this.maxLength = maxLength;
+        }
+    }
+
+    public static class Scope implements AutoCloseable {
+
+        private final Mode previous;
+
+        Scope(Mode previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+}
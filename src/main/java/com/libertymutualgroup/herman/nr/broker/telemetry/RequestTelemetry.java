@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.telemetry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one broker request, bound to the thread processing it and carried onto the I/O threads by
+ * {@link #propagate(Runnable)}. Recording outside a request is a no-op.
+ */
+public class RequestTelemetry implements AutoCloseable {
+
+    private static final ThreadLocal<RequestTelemetry> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final RequestTelemetry previous;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private RequestTelemetry(RequestTelemetry previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Binds new counters to the current thread until the returned instance is closed.
+     */
+    public static RequestTelemetry start() {
+        RequestTelemetry telemetry = new RequestTelemetry(CURRENT.get());
+        CURRENT.set(telemetry);
+        return telemetry;
+    }
+
+    /**
+     * Wraps {@code task} so that what it records counts towards the request of the submitting thread.
+     */
+    public static Runnable propagate(Runnable task) {
+        RequestTelemetry telemetry = CURRENT.get();
+        if (telemetry == null) {
+            return task;
+        }
+        return () -> {
+            RequestTelemetry previous = CURRENT.get();
+            CURRENT.set(telemetry);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    public static void recordCall(boolean failed) {
+        RequestTelemetry telemetry = CURRENT.get();
+        if (telemetry != null) {
+            telemetry.calls.increment();
+            if (failed) {
+                telemetry.failedCalls.increment();
+            }
+        }
+    }
+
+    public static void recordRetries(int count) {
+        RequestTelemetry telemetry = CURRENT.get();
+        if (telemetry != null && count > 0) {
+            telemetry.retries.add(count);
+        }
+    }
+
+    public static void recordCacheHit() {
+        RequestTelemetry telemetry = CURRENT.get();
+        if (telemetry != null) {
+            telemetry.cacheHits.increment();
+        }
+    }
+
+    /**
+     * Counts an ERROR update reported to the caller.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * The counters so far as event attributes, along with the time since {@link #start()}.
+     */
+    public Map<String, Object> toEvent() {
+        Map<String, Object> event = new HashMap<>();
+        event.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        event.put("calls", calls.sum());
+        event.put("failedCalls", failedCalls.sum());
+        event.put("retries", retries.sum());
+        event.put("cacheHits", cacheHits.sum());
+        event.put("errors", errors.sum());
+        return event;
+    }
+
+    @Override
+    public void close() {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+}
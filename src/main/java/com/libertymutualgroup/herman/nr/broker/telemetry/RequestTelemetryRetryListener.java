@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.telemetry;
+
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.listener.RetryListenerSupport;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the retries of {@code @Retryable} client methods towards the current request's {@link RequestTelemetry}.
+ * Picked up by {@code @EnableRetry} like any other {@code RetryListener} bean.
+ */
+@Component
+public class RequestTelemetryRetryListener extends RetryListenerSupport {
+
+    @Override
+    public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback,
+        Throwable throwable) {
+        // The retry count is the number of failed attempts; the last one is only a retry if it was followed by one
+        RequestTelemetry.recordRetries(throwable == null ? context.getRetryCount() : context.getRetryCount() - 1);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Sends custom events about the broker itself to New Relic's Event API. {@link #record(Map)} only enqueues the
+ * event into an {@link EventRingBuffer}. What has been buffered is sent gzipped, in batches of up to
+ * {@code newrelic.telemetry.maxBatchSize}: in server mode by a background thread every
+ * {@code newrelic.telemetry.flushIntervalMillis}, and on Lambda, where the container is frozen as soon as an
+ * invocation returns, by a request before it returns ({@link #flushAfterRequest()}). When the buffer is full,
+ * events are dropped rather than slowing the broker down, and a batch that cannot be sent is dropped as well.
+ *
+ * <p>On Lambda, a request only sends once {@code newrelic.telemetry.flushBatchSize} events are waiting or the oldest
+ * has waited {@code newrelic.telemetry.flushMaxAgeMillis}; the other requests return without touching the network.
+ * The request that sends still pays for gzipping the batch and for a synchronous POST, for up to
+ * {@code newrelic.telemetry.flushTimeoutMillis}. Events still buffered when Lambda retires a container are lost, so
+ * up to a batch, or the events of one age limit, can go missing; {@code flushBatchSize=1} sends after every request.
+ *
+ * <p>Events are posted to {@code newrelic.telemetry.url} with a client of their own, so neither the rate limits nor
+ * the circuit breakers of the New Relic accounts are affected, and the URL can point at any local HTTP sink.
+ */
+@Component
+public class TelemetryExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TelemetryExporter.class);
+
+    @Autowired
+    NewRelicBrokerProperties properties;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    // When the oldest event still buffered was recorded, in epoch milliseconds; 0 when nothing is buffered
+    private final AtomicLong oldestBufferedMillis = new AtomicLong();
+
+    private volatile EventRingBuffer<Map<String, Object>> buffer;
+    private ScheduledExecutorService flusher;
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    public void start() {
+        NewRelicBrokerProperties.Telemetry telemetry = properties.getTelemetry();
+        if (!telemetry.isEnabled()) {
+            return;
+        }
+        if (telemetry.getUrl() == null) {
+            LOG.warn("Broker telemetry is enabled but newrelic.telemetry.url is not set; no events will be sent");
+            return;
+        }
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        if (telemetry.isScheduledFlush()) {
+            requestFactory.setConnectTimeout(5000);
+            requestFactory.setReadTimeout(10000);
+        } else {
+            // The request waits for the send, so a slow endpoint must not hold it up for long
+            int timeout = (int) Math.min(telemetry.getFlushTimeoutMillis(), Integer.MAX_VALUE);
+            requestFactory.setConnectTimeout(timeout);
+            requestFactory.setReadTimeout(timeout);
+        }
+        restTemplate = new RestTemplate(requestFactory);
+
+        if (telemetry.isScheduledFlush()) {
+            flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "newrelic-telemetry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, telemetry.getFlushIntervalMillis(),
+                telemetry.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+        buffer = new EventRingBuffer<>(telemetry.getBufferSize());
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Queues an event with {@code attributes} for sending, or drops it if the buffer is full. Never blocks.
+     */
+    public void record(Map<String, Object> attributes) {
+        EventRingBuffer<Map<String, Object>> buffer = this.buffer;
+        if (buffer == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        attributes.put("eventType", properties.getTelemetry().getEventType());
+        attributes.put("timestamp", now);
+        if (buffer.offer(attributes)) {
+            oldestBufferedMillis.compareAndSet(0, now);
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Sends everything buffered so far.
+     */
+    public void flush() {
+        flush(Long.MAX_VALUE);
+    }
+
+    /**
+     * Sends the buffered events before a request returns, unless a background thread sends them or neither
+     * {@code newrelic.telemetry.flushBatchSize} nor {@code newrelic.telemetry.flushMaxAgeMillis} has been reached.
+     * No batch is started once {@code newrelic.telemetry.flushTimeoutMillis} has passed; what is left goes with a
+     * later request.
+     */
+    public void flushAfterRequest() {
+        EventRingBuffer<Map<String, Object>> buffer = this.buffer;
+        if (flusher != null || buffer == null) {
+            return;
+        }
+        NewRelicBrokerProperties.Telemetry telemetry = properties.getTelemetry();
+        long oldest = oldestBufferedMillis.get();
+        boolean due = buffer.size() >= telemetry.getFlushBatchSize()
+            || oldest != 0 && System.currentTimeMillis() - oldest >= telemetry.getFlushMaxAgeMillis();
+        if (due) {
+            flush(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(telemetry.getFlushTimeoutMillis()));
+        }
+    }
+
+    private void flush(long deadlineNanos) {
+        EventRingBuffer<Map<String, Object>> buffer = this.buffer;
+        if (buffer == null) {
+            return;
+        }
+
+        // Events recorded from here on start the age over; any left behind keep the age they had
+        long oldest = oldestBufferedMillis.getAndSet(0);
+        int maxBatchSize = properties.getTelemetry().getMaxBatchSize();
+        List<Map<String, Object>> batch = new ArrayList<>();
+        while ((deadlineNanos == Long.MAX_VALUE || System.nanoTime() - deadlineNanos < 0)
+            && buffer.drainTo(batch, maxBatchSize) > 0) {
+            try {
+                send(batch);
+                sent.add(batch.size());
+            } catch (Exception ex) {
+                failed.add(batch.size());
+                LOG.warn("Could not send {} broker telemetry events: {}", batch.size(), ex.toString());
+            }
+            batch.clear();
+        }
+        if (buffer.size() > 0) {
+            long leftSince = oldest != 0 ? oldest : System.currentTimeMillis();
+            oldestBufferedMillis.accumulateAndGet(leftSince,
+                (current, since) -> current == 0 ? since : Math.min(current, since));
+        }
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sent", sent.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        flush();
+    }
+
+    private void send(List<Map<String, Object>> batch) throws IOException {
+        NewRelicBrokerProperties.Telemetry telemetry = properties.getTelemetry();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (telemetry.getInsertKey() != null) {
+            headers.set("X-Insert-Key", telemetry.getInsertKey());
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (telemetry.isCompress()) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            try (OutputStream gzip = new GZIPOutputStream(body)) {
+                objectMapper.writeValue(gzip, batch);
+            }
+        } else {
+            objectMapper.writeValue(body, batch);
+        }
+
+        restTemplate.exchange(telemetry.getUrl(), HttpMethod.POST, new HttpEntity<>(body.toByteArray(), headers),
+            Void.class);
+    }
+}
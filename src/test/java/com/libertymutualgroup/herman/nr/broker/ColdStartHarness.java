@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Measures what the warm-up saves the first request after a cold start. Each run is a fresh JVM that starts the
+ * broker, with New Relic answered from a replayed recording, and times the start-up and the first two requests; runs
+ * alternate between warm-up off and on, and the medians are printed side by side:
+ *
+ * <pre>
+ * ColdStartHarness &lt;request.json&gt; &lt;recording&gt; [runs] [--property=value ...]
+ * </pre>
+ *
+ * <p>The JVM options of the harness are passed on to every run, so Lambda settings such as
+ * {@code -XX:TieredStopAtLevel=1} can be reproduced. Arguments after the first three are passed to the application
+ * as properties. Connection priming only pays off against the real New Relic hosts, so it is turned off here and
+ * the numbers cover class loading, serializer construction and JIT compilation.
+ */
+public class ColdStartHarness {
+
+    private static final String CHILD = "--child";
+    private static final String RESULT = "COLD START ";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && CHILD.equals(args[0])) {
+            runOnce(Arrays.asList(args).subList(1, args.length));
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: ColdStartHarness <request.json> <recording> [runs] [--property=value ...]");
+            System.exit(2);
+        }
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        List<String> properties = Arrays.asList(args).subList(Math.min(args.length, 3), args.length);
+
+        List<long[]> cold = new ArrayList<>();
+        List<long[]> warm = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            cold.add(fork(args[0], args[1], false, properties));
+            warm.add(fork(args[0], args[1], true, properties));
+        }
+
+        System.out.println(String.format("Median of %d runs       %10s %10s", runs, "no warm-up", "warm-up"));
+        String[] labels = {"start-up", "first request", "second request"};
+        for (int i = 0; i < labels.length; i++) {
+            System.out.println(String.format("%-22s %7d ms %7d ms", labels[i], median(cold, i), median(warm, i)));
+        }
+    }
+
+    private static long[] fork(String request, String recording, boolean warmup, List<String> properties)
+        throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), ColdStartHarness.class.getName(),
+            CHILD, request, recording, "--newrelic.warmup.enabled=" + warmup));
+        command.addAll(properties);
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long[] result = null;
+        try (BufferedReader output = new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line; (line = output.readLine()) != null; ) {
+                if (line.startsWith(RESULT)) {
+                    result = Arrays.stream(line.substring(RESULT.length()).split(" "))
+                        .mapToLong(Long::parseLong)
+                        .toArray();
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Cold start run failed with exit status " + process.exitValue());
+        }
+        return result;
+    }
+
+    private static void runOnce(List<String> args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        NewRelicBrokerRequest first = objectMapper.readValue(new File(args.get(0)), NewRelicBrokerRequest.class);
+        NewRelicBrokerRequest second = objectMapper.readValue(new File(args.get(0)), NewRelicBrokerRequest.class);
+
+        List<String> properties = new ArrayList<>(Arrays.asList(
+            "--newrelic.transport.protocol=REPLAY",
+            "--newrelic.replay.path=" + args.get(1),
+            "--newrelic.warmup.primeConnections=false"));
+        properties.addAll(args.subList(2, args.size()));
+
+        SpringApplication application = new SpringApplication(NewRelicBrokerConfig.class);
+        application.setWebEnvironment(false);
+        try (ConfigurableApplicationContext context = application.run(properties.toArray(new String[0]))) {
+            // Measured from JVM start, as a Lambda init phase would be
+            long startupMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            NewRelicBrokerController controller = context.getBean(NewRelicBrokerController.class);
+            long firstMillis = time(controller, first);
+            long secondMillis = time(controller, second);
+            System.out.println(RESULT + startupMillis + " " + firstMillis + " " + secondMillis);
+        }
+    }
+
+    private static long time(NewRelicBrokerController controller, NewRelicBrokerRequest request) {
+        long start = System.nanoTime();
+        controller.getResponse(request);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static long median(List<long[]> results, int index) {
+        List<Long> values = new ArrayList<>();
+        for (long[] result : results) {
+            values.add(result[index]);
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+}
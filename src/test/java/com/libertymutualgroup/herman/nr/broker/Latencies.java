@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects call durations for the benchmarks and reports their percentiles.
+ */
+public class Latencies {
+
+    private final List<Long> nanos = Collections.synchronizedList(new ArrayList<>());
+
+    public void recordSince(long startNanos) {
+        nanos.add(System.nanoTime() - startNanos);
+    }
+
+    public int count() {
+        return nanos.size();
+    }
+
+    public double percentileMillis(double percentile) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0)) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms", percentileMillis(0.50),
+            percentileMillis(0.90), percentileMillis(0.99), percentileMillis(1.0));
+    }
+}
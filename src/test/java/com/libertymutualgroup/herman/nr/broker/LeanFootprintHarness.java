@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicAccounts;
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicClientConfig;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerPhase;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicApplicationDeploymentRequest;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerResponse;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicConfiguration;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Smoke run and footprint check for the low-memory build. It starts the broker with the {@code lean} Spring profile,
+ * processes a large template against the in-process transport and compares the heap and metaspace in use afterwards
+ * with a budget. Run it against the lean jar, so that classes minimization dropped but the broker loads by name show
+ * up as failures:
+ *
+ * <pre>
+ * mvn -Plean package
+ * java -Xmx160m -XX:MaxMetaspaceSize=96m -XX:+UseSerialGC -XX:TieredStopAtLevel=1 \
+ *     -cp target/herman-newrelic-broker-&lt;version&gt;-aws.jar:target/test-classes \
+ *     com.libertymutualgroup.herman.nr.broker.LeanFootprintHarness [conditions] [heapMb] [metaspaceMb]
+ * </pre>
+ *
+ * <p>Exits with status 1 if the request reports an error or the budget is exceeded.
+ */
+public class LeanFootprintHarness {
+
+    private static final String API_KEY = "herman-newrelic-broker-footprint";
+    private static final String NAME = "herman-newrelic-broker-footprint";
+    private static final long MB = 1024 * 1024;
+
+    public static void main(String[] args) {
+        int conditions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long heapBudget = (args.length > 1 ? Long.parseLong(args[1]) : 96) * MB;
+        long metaspaceBudget = (args.length > 2 ? Long.parseLong(args[2]) : 80) * MB;
+
+        SpringApplication application = new SpringApplication(NewRelicBrokerConfig.class);
+        application.setWebEnvironment(false);
+        application.setAdditionalProfiles("lean");
+        int status;
+        try (ConfigurableApplicationContext context = application.run(
+            "--newrelic.warmup.primeConnections=false")) {
+            NewRelicAccounts accounts = context.getBean(NewRelicAccounts.class);
+            accounts.register(API_KEY, context.getBean(NewRelicClientConfig.class).offlineAccount(API_KEY));
+
+            NewRelicBrokerResponse response = context.getBean(NewRelicBrokerController.class)
+                .getResponse(request(conditions));
+            status = check(response.getUpdates(), heapBudget, metaspaceBudget) ? 0 : 1;
+        }
+        System.exit(status);
+    }
+
+    private static boolean check(List<HermanBrokerUpdate> updates, long heapBudget, long metaspaceBudget) {
+        boolean passed = true;
+        HermanBrokerUpdate last = updates.isEmpty() ? null : updates.get(updates.size() - 1);
+        if (last == null || last.getPhase() != HermanBrokerPhase.COMPLETE
+            || last.getStatus() == HermanBrokerStatus.ERROR) {
+            updates.stream()
+                .filter(update -> update.getStatus() == HermanBrokerStatus.ERROR)
+                .forEach(update -> System.out.println("Error: " + update.getMessage()));
+            passed = false;
+        }
+
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long metaspace = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.NON_HEAP && "Metaspace".equals(pool.getName())) {
+                metaspace = pool.getUsage().getUsed();
+            }
+        }
+        System.out.println(String.format("Heap in use: %d MB of %d MB, metaspace in use: %d MB of %d MB",
+            heap / MB, heapBudget / MB, metaspace / MB, metaspaceBudget / MB));
+        return passed && heap <= heapBudget && metaspace <= metaspaceBudget;
+    }
+
+    private static NewRelicBrokerRequest request(int conditions) {
+        JsonNodeFactory nodes = JsonNodeFactory.instance;
+        ArrayNode channels = nodes.arrayNode();
+        channels.addObject()
+            .put("name", NAME)
+            .put("type", "email")
+            .putObject("configuration").put("recipients", "footprint@example.com");
+
+        ArrayNode applicationConditions = nodes.arrayNode();
+        ArrayNode nrqlConditions = nodes.arrayNode();
+        for (int i = 0; i < conditions; i++) {
+            applicationConditions.addObject()
+                .put("name", NAME + "-" + i)
+                .put("type", "apm_app_metric")
+                .put("metric", "apdex")
+                .set("terms", terms("below", "0.5"));
+            ObjectNode nrqlCondition = nrqlConditions.addObject().put("name", NAME + "-nrql-" + i);
+            nrqlCondition.putObject("nrql")
+                .put("query", "SELECT count(*) FROM Transaction WHERE appName = '" + NAME + "-" + i + "'")
+                .put("since_value", "3");
+            nrqlCondition.set("terms", terms("above", "1"));
+        }
+
+        return new NewRelicBrokerRequest()
+            .withPolicyName(NAME)
+            .withNewRelicApplicationName(NAME)
+            .withNrApiKey(API_KEY)
+            .withDeployment(new NewRelicApplicationDeploymentRequest()
+                .withRevision("footprint")
+                .withVersion("footprint")
+                .withUser("footprint"))
+            .withConfiguration(new NewRelicConfiguration()
+                .withApdex("0.5")
+                .withChannels(channels)
+                .withConditions(applicationConditions)
+                .withNrqlConditions(nrqlConditions));
+    }
+
+    private static ArrayNode terms(String operator, String threshold) {
+        ArrayNode terms = JsonNodeFactory.instance.arrayNode();
+        terms.addObject()
+            .put("duration", "5")
+            .put("operator", operator)
+            .put("threshold", threshold)
+            .put("time_function", "all");
+        return terms;
+    }
+}
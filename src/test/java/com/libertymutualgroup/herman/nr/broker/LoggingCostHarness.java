@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows what logging costs a broker run. It runs {@link ReplayBenchmark} in a fresh JVM for each logging setup and
+ * prints its throughput and latency next to the number of log lines and bytes the run wrote to standard output:
+ *
+ * <pre>
+ * LoggingCostHarness &lt;request.json&gt; &lt;recording&gt; [requests] [threads] [--property=value ...]
+ * </pre>
+ *
+ * <p>The setups are every payload logged ({@code newrelic.payloadLogging.sampleRate=1}), payloads left out (the
+ * default) and payloads left out with the asynchronous appender of the {@code server} profile. Arguments after the
+ * first four are passed to every run.
+ */
+public class LoggingCostHarness {
+
+    private static final Map<String, List<String>> SETUPS = new LinkedHashMap<>();
+
+    static {
+        SETUPS.put("all payloads", Arrays.asList("--newrelic.payloadLogging.sampleRate=1",
+            "--newrelic.payloadLogging.maxLength=1000000"));
+        SETUPS.put("no payloads", Arrays.asList("--newrelic.payloadLogging.sampleRate=0"));
+        SETUPS.put("no payloads, async", Arrays.asList("--newrelic.payloadLogging.sampleRate=0",
+            "--spring.profiles.active=server"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: LoggingCostHarness <request.json> <recording> [requests] [threads] "
+                + "[--property=value ...]");
+            System.exit(2);
+        }
+        List<String> benchmarkArgs = new ArrayList<>(Arrays.asList(args[0], args[1],
+            args.length > 2 ? args[2] : "200", args.length > 3 ? args[3] : "1"));
+
+        for (Map.Entry<String, List<String>> setup : SETUPS.entrySet()) {
+            List<String> runArgs = new ArrayList<>(benchmarkArgs);
+            runArgs.addAll(setup.getValue());
+            runArgs.addAll(Arrays.asList(args).subList(Math.min(args.length, 4), args.length));
+            fork(setup.getKey(), runArgs);
+        }
+    }
+
+    private static void fork(String label, List<String> args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+            ReplayBenchmark.class.getName()));
+        command.addAll(args);
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> results = new ArrayList<>();
+        long logLines = 0;
+        long logBytes = 0;
+        try (BufferedReader output = new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line; (line = output.readLine()) != null; ) {
+                if (line.contains(" requests on ") || line.startsWith("p50 ")) {
+                    results.add(line);
+                } else {
+                    logLines++;
+                    logBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException(label + " run failed with exit status " + process.exitValue());
+        }
+
+        // Start-up logging is included, and is the same for every setup
+        System.out.println(String.format("%s: %d log lines, %d KB logged", label, logLines, logBytes / 1024));
+        results.forEach(result -> System.out.println("  " + result));
+    }
+}
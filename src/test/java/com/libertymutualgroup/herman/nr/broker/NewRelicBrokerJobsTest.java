@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerJobState;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerJobStatus;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NewRelicBrokerJobsTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private NewRelicBrokerProperties properties;
+    private NewRelicBrokerController controller;
+    private NewRelicBrokerJobs jobs;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        properties = new NewRelicBrokerProperties();
+        controller = mock(NewRelicBrokerController.class);
+        when(controller.process(any(NewRelicBrokerRequest.class), any(Consumer.class))).thenAnswer(invocation -> {
+            String policyName = ((NewRelicBrokerRequest) invocation.getArguments()[0]).getPolicyName();
+            Consumer<HermanBrokerUpdate> listener = (Consumer<HermanBrokerUpdate>) invocation.getArguments()[1];
+            switch (policyName) {
+                case "blocked":
+                    release.await(10, TimeUnit.SECONDS);
+                    break;
+                case "failing":
+                    listener.accept(new HermanBrokerUpdate()
+                        .withStatus(HermanBrokerStatus.ERROR)
+                        .withMessage("New Relic Broker processing failed. See logs."));
+                    return null;
+                case "broken":
+                    throw new IllegalStateException("boom");
+                default:
+                    break;
+            }
+            listener.accept(new HermanBrokerUpdate().withStatus(HermanBrokerStatus.OK));
+            return "7";
+        });
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (jobs != null) {
+            jobs.shutdown();
+        }
+    }
+
+    @Test
+    public void completesJobs() throws InterruptedException {
+        jobs = jobs(1, 1, 10);
+
+        String jobId = jobs.submit(request("ok")).getJobId();
+
+        awaitState(jobId, NewRelicBrokerJobState.COMPLETED);
+        assertThat(jobs.getStatus(jobId).getApplicationId()).isEqualTo("7");
+        assertThat(jobs.getStatus(jobId).getUpdates()).extracting(HermanBrokerUpdate::getStatus)
+            .containsExactly(HermanBrokerStatus.OK);
+    }
+
+    @Test
+    public void rejectsJobsBeyondTheQueueWithoutKeepingThem() throws InterruptedException {
+        jobs = jobs(1, 1, 10);
+
+        String running = jobs.submit(request("blocked")).getJobId();
+        awaitState(running, NewRelicBrokerJobState.RUNNING);
+        String queued = jobs.submit(request("ok")).getJobId();
+        assertThat(jobs.getStatus(queued).getState()).isEqualTo(NewRelicBrokerJobState.QUEUED);
+
+        NewRelicBrokerJobStatus rejected = jobs.submit(request("ok"));
+        assertThat(rejected.getState()).isEqualTo(NewRelicBrokerJobState.REJECTED);
+        assertThat(jobs.getStatus(rejected.getJobId()).getState()).isEqualTo(NewRelicBrokerJobState.UNKNOWN);
+
+        release.countDown();
+        awaitState(running, NewRelicBrokerJobState.COMPLETED);
+        awaitState(queued, NewRelicBrokerJobState.COMPLETED);
+    }
+
+    @Test
+    public void failsJobsEndingInAnErrorOrAnException() throws InterruptedException {
+        jobs = jobs(2, 1, 10);
+
+        String failing = jobs.submit(request("failing")).getJobId();
+        String broken = jobs.submit(request("broken")).getJobId();
+
+        awaitState(failing, NewRelicBrokerJobState.FAILED);
+        awaitState(broken, NewRelicBrokerJobState.FAILED);
+        assertThat(jobs.getStatus(failing).getUpdates()).extracting(HermanBrokerUpdate::getStatus)
+            .containsExactly(HermanBrokerStatus.ERROR);
+    }
+
+    @Test
+    public void evictsOnlyFinishedJobs() throws InterruptedException {
+        jobs = jobs(2, 1, 1);
+
+        String running = jobs.submit(request("blocked")).getJobId();
+        awaitState(running, NewRelicBrokerJobState.RUNNING);
+        String first = jobs.submit(request("ok")).getJobId();
+        awaitState(first, NewRelicBrokerJobState.COMPLETED);
+        String second = jobs.submit(request("ok")).getJobId();
+        awaitState(second, NewRelicBrokerJobState.COMPLETED);
+
+        // Two finished jobs for one retained slot: the older is evicted, the running job is not counted
+        assertThat(jobs.getStatus(first).getState()).isEqualTo(NewRelicBrokerJobState.UNKNOWN);
+        assertThat(jobs.getStatus(running).getState()).isEqualTo(NewRelicBrokerJobState.RUNNING);
+
+        release.countDown();
+        awaitState(running, NewRelicBrokerJobState.COMPLETED);
+        assertThat(jobs.getStatus(second).getState()).isEqualTo(NewRelicBrokerJobState.UNKNOWN);
+    }
+
+    private NewRelicBrokerJobs jobs(int workers, int queueCapacity, int maxRetained) {
+        properties.getJobs().setWorkers(workers);
+        properties.getJobs().setQueueCapacity(queueCapacity);
+        properties.getJobs().setMaxRetained(maxRetained);
+        return new NewRelicBrokerJobs(controller, properties);
+    }
+
+    private static NewRelicBrokerRequest request(String policyName) {
+        return new NewRelicBrokerRequest().withPolicyName(policyName);
+    }
+
+    private void awaitState(String jobId, NewRelicBrokerJobState state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (jobs.getStatus(jobId).getState() != state && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(jobs.getStatus(jobId).getState()).isEqualTo(state);
+    }
+}
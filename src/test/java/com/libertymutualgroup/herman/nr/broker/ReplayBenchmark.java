@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerRequest;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicBrokerResponse;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Times {@link NewRelicBrokerController#getResponse(NewRelicBrokerRequest)} against a replayed recording, so that
+ * concurrency and retry settings can be compared on the same traffic:
+ *
+ * <pre>
+ * ReplayBenchmark &lt;request.json&gt; &lt;recording&gt; [requests] [threads] [--property=value ...]
+ * </pre>
+ *
+ * <p>The request is sent {@code requests} times from {@code threads} threads after one untimed run, and the
+ * throughput and latency percentiles are printed along with how many responses ended in an error. Arguments after
+ * the first four are passed to the application as properties, for example {@code --newrelic.replay.seed=42} or
+ * {@code --newrelic.replay.errorRate=0.05}.
+ */
+public class ReplayBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplayBenchmark <request.json> <recording> [requests] [threads] "
+                + "[--property=value ...]");
+            System.exit(2);
+        }
+        NewRelicBrokerRequest request = OBJECT_MAPPER.readValue(new File(args[0]), NewRelicBrokerRequest.class);
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        List<String> properties = new ArrayList<>(Arrays.asList(
+            "--newrelic.transport.protocol=REPLAY",
+            "--newrelic.replay.path=" + args[1],
+            "--newrelic.warmup.primeConnections=false"));
+        properties.addAll(Arrays.asList(args).subList(Math.min(args.length, 4), args.length));
+
+        SpringApplication application = new SpringApplication(NewRelicBrokerConfig.class);
+        application.setWebEnvironment(false);
+        try (ConfigurableApplicationContext context = application.run(properties.toArray(new String[0]))) {
+            NewRelicBrokerController controller = context.getBean(NewRelicBrokerController.class);
+            controller.getResponse(copy(request));
+            run(controller, request, requests, threads);
+        }
+    }
+
+    private static void run(NewRelicBrokerController controller, NewRelicBrokerRequest request, int requests,
+        int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Long> nanos = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger errors = new AtomicInteger();
+        List<Future<?>> runs = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            runs.add(executor.submit(() -> {
+                NewRelicBrokerRequest copy = copy(request);
+                long requestStart = System.nanoTime();
+                NewRelicBrokerResponse response = controller.getResponse(copy);
+                nanos.add(System.nanoTime() - requestStart);
+                if (response.getUpdates().stream().anyMatch(update -> update.getStatus() == HermanBrokerStatus.ERROR)) {
+                    errors.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> run : runs) {
+            run.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        System.out.println(String.format("%d requests on %d threads in %d ms: %.1f requests/s, %d with errors",
+            requests, threads, TimeUnit.NANOSECONDS.toMillis(elapsed),
+            requests / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)), errors.get()));
+        System.out.println(String.format("p50 %d ms, p90 %d ms, p99 %d ms, max %d ms",
+            percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.90), percentileMillis(sorted, 0.99),
+            percentileMillis(sorted, 1.0)));
+    }
+
+    private static long percentileMillis(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(index, 0)));
+    }
+
+    private static NewRelicBrokerRequest copy(NewRelicBrokerRequest request) {
+        // Each run gets a request of its own, as it would from Herman
+        try {
+            return OBJECT_MAPPER.readValue(OBJECT_MAPPER.writeValueAsBytes(request), NewRelicBrokerRequest.class);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Load test for server mode: starts the broker as a web server with the {@code server} profile, answers New Relic
+ * calls from a replayed recording, and posts a request to {@code /function} at increasing concurrency:
+ *
+ * <pre>
+ * ServerLoadHarness &lt;request.json&gt; &lt;recording&gt; [concurrency,...] [requests] [--property=value ...]
+ * </pre>
+ *
+ * <p>For each concurrency level, {@code requests} requests are sent after one untimed request per connection, and
+ * the requests per second, latency percentiles, requests turned away by admission control and other failed
+ * responses are printed. Arguments after the first four are passed to the application as properties, for example
+ * {@code --newrelic.execution.maxConcurrentRequests=64} or {@code --newrelic.replay.latency=FIXED}.
+ */
+public class ServerLoadHarness {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String BUSY = "New Relic Broker is busy";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ServerLoadHarness <request.json> <recording> [concurrency,...] [requests] "
+                + "[--property=value ...]");
+            System.exit(2);
+        }
+        byte[] request = Files.readAllBytes(Paths.get(args[0]));
+        int[] levels = Arrays.stream((args.length > 2 ? args[2] : "1,8,32,128").split(","))
+            .mapToInt(Integer::parseInt)
+            .toArray();
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+
+        List<String> properties = new ArrayList<>(Arrays.asList(
+            "--spring.profiles.active=server",
+            "--server.port=0",
+            "--newrelic.transport.protocol=REPLAY",
+            "--newrelic.replay.path=" + args[1],
+            "--newrelic.warmup.primeConnections=false"));
+        properties.addAll(Arrays.asList(args).subList(Math.min(args.length, 4), args.length));
+
+        int maxLevel = Arrays.stream(levels).max().orElse(1);
+        try (ConfigurableApplicationContext context = SpringApplication.run(NewRelicBrokerConfig.class,
+            properties.toArray(new String[0]));
+            CloseableHttpClient httpClient = HttpClients.custom()
+                .setMaxConnPerRoute(maxLevel)
+                .setMaxConnTotal(maxLevel)
+                .build()) {
+            String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                + "/function";
+            RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<byte[]> entity = new HttpEntity<>(request, headers);
+
+            for (int level : levels) {
+                run(restTemplate, url, entity, level, requests);
+            }
+        }
+    }
+
+    private static void run(RestTemplate restTemplate, String url, HttpEntity<byte[]> entity, int concurrency,
+        int requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<?>> warmup = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                warmup.add(executor.submit(() -> restTemplate.postForObject(url, entity, String.class)));
+            }
+            for (Future<?> call : warmup) {
+                call.get();
+            }
+
+            Latencies latencies = new Latencies();
+            AtomicInteger busy = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            List<Future<?>> calls = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                calls.add(executor.submit(() -> {
+                    long callStart = System.nanoTime();
+                    String body;
+                    try {
+                        body = restTemplate.postForObject(url, entity, String.class);
+                    } catch (RuntimeException ex) {
+                        failed.incrementAndGet();
+                        return null;
+                    }
+                    latencies.recordSince(callStart);
+                    if (body.contains(BUSY)) {
+                        busy.incrementAndGet();
+                    } else if (hasError(body)) {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> call : calls) {
+                call.get();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(String.format("concurrency %4d: %7.1f requests/s, %s, %d busy, %d failed",
+                concurrency, requests / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)), latencies, busy.get(),
+                failed.get()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean hasError(String body) throws Exception {
+        JsonNode response = OBJECT_MAPPER.readTree(body);
+        if (response.isArray()) {
+            response = response.path(0);
+        }
+        for (JsonNode update : response.path("updates")) {
+            if ("ERROR".equals(update.path("status").asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LruCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache = new LruCache<>(2, 0, TimeUnit.SECONDS, evicted::add);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+        cache.put("c", "C");
+
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isEqualTo("A");
+        assertThat(cache.get("c")).isEqualTo("C");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(evicted).containsExactly("B");
+    }
+
+    @Test
+    public void expiresEntriesAfterTtl() throws InterruptedException {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache = new LruCache<>(2, 1, TimeUnit.MILLISECONDS, evicted::add);
+        cache.put("a", "A");
+        Thread.sleep(5);
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(evicted).containsExactly("A");
+    }
+
+    @Test
+    public void replacingValueNotifiesListenerWithPreviousValue() {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache = new LruCache<>(2, 0, TimeUnit.SECONDS, evicted::add);
+        cache.put("a", "A1");
+        cache.put("a", "A1");
+        cache.put("a", "A2");
+
+        assertThat(cache.get("a")).isEqualTo("A2");
+        assertThat(evicted).containsExactly("A1");
+    }
+
+    @Test
+    public void putIfAbsentKeepsExistingValue() {
+        LruCache<String, String> cache = new LruCache<>(2);
+
+        assertThat(cache.putIfAbsent("a", "A1")).isNull();
+        assertThat(cache.putIfAbsent("a", "A2")).isEqualTo("A1");
+        assertThat(cache.get("a")).isEqualTo("A1");
+    }
+
+    @Test
+    public void computeIfAbsentLoadsOnlyOnMissAndSkipsNull() {
+        LruCache<String, String> cache = new LruCache<>(2);
+        List<String> loaded = new ArrayList<>();
+
+        assertThat(cache.computeIfAbsent("a", key -> {
+            loaded.add(key);
+            return "A";
+        })).isEqualTo("A");
+        assertThat(cache.computeIfAbsent("a", key -> {
+            loaded.add(key);
+            return "other";
+        })).isEqualTo("A");
+        assertThat(cache.computeIfAbsent("b", key -> null)).isNull();
+
+        assertThat(loaded).containsExactly("a");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void clearNotifiesListenerForEveryValue() {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache = new LruCache<>(4, 0, TimeUnit.SECONDS, evicted::add);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertThat(cache.remove("b")).isEqualTo("B");
+        cache.clear();
+
+        assertThat(cache.size()).isZero();
+        assertThat(evicted).containsExactly("A");
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+    private SingleFlight<String, String> singleFlight;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        singleFlight = new SingleFlight<>();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallsShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        Future<String> first = executor.submit(() -> singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "value";
+        }));
+        awaitStat("misses", 1);
+        Future<String> second = executor.submit(() -> singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        awaitStat("coalesced", 1);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void waitingCallersSeeTheLoaderFailure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> singleFlight.execute("key", () -> {
+            await(release);
+            throw new IllegalStateException("boom");
+        }));
+        awaitStat("misses", 1);
+        Future<String> second = executor.submit(() -> singleFlight.execute("key", () -> "other"));
+        awaitStat("coalesced", 1);
+        release.countDown();
+
+        assertFailure(first);
+        assertFailure(second);
+    }
+
+    @Test
+    public void laterCallsLoadAgain() {
+        assertThat(singleFlight.execute("key", () -> "first")).isEqualTo("first");
+        assertThat(singleFlight.execute("key", () -> "second")).isEqualTo("second");
+
+        assertThat(singleFlight.getStats()).containsEntry("misses", 2L).containsEntry("coalesced", 0L);
+    }
+
+    private void awaitStat(String name, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getStats().get(name) < expected) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting for " + name + " = " + expected);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertFailure(Future<String> call) throws Exception {
+        try {
+            call.get(5, TimeUnit.SECONDS);
+            fail("Expected the loader failure");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(IllegalStateException.class).hasMessage("boom");
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import com.libertymutualgroup.herman.nr.broker.clients.CircuitBreaker.State;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+    private NewRelicBrokerProperties.CircuitBreaker properties;
+
+    @Before
+    public void setUp() {
+        properties = new NewRelicBrokerProperties.CircuitBreaker();
+        properties.setWindowSize(4);
+        properties.setMinimumCalls(4);
+        properties.setFailureRateThreshold(50);
+        properties.setSlowCallRateThreshold(75);
+        properties.setSlowCallDurationMillis(500);
+        properties.setOpenDurationSeconds(0);
+        properties.setHalfOpenCalls(2);
+    }
+
+    @Test
+    public void staysClosedUntilMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("alerts", properties);
+
+        record(breaker, 3, FAST, true);
+
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+        record(breaker, 1, FAST, false);
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    public void opensOnSlowCallRate() {
+        CircuitBreaker breaker = new CircuitBreaker("alerts", properties);
+
+        record(breaker, 1, FAST, false);
+        record(breaker, 2, SLOW, false);
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+        record(breaker, 1, SLOW, false);
+
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    public void windowForgetsOldestOutcomes() {
+        CircuitBreaker breaker = new CircuitBreaker("alerts", properties);
+
+        record(breaker, 1, FAST, true);
+        record(breaker, 3, FAST, false);
+        record(breaker, 1, FAST, true);
+
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+        record(breaker, 1, FAST, true);
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    public void rejectsCallsWhileOpen() {
+        properties.setOpenDurationSeconds(60);
+        CircuitBreaker breaker = new CircuitBreaker("alerts", properties);
+        record(breaker, 4, FAST, true);
+
+        assertRejected(breaker);
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    public void halfOpenClosesAfterHealthyProbes() {
+        CircuitBreaker breaker = tripped();
+
+        breaker.acquirePermission();
+        assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+        breaker.acquirePermission();
+        assertRejected(breaker);
+
+        breaker.record(FAST, false);
+        assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+        breaker.record(FAST, false);
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+
+        // The closed window starts empty again
+        record(breaker, 3, FAST, true);
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    public void halfOpenReopensAfterFailedProbe() {
+        CircuitBreaker breaker = tripped();
+
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        breaker.record(FAST, false);
+        breaker.record(FAST, true);
+
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    public void ignoresOutcomesRecordedWhileOpen() {
+        properties.setOpenDurationSeconds(60);
+        CircuitBreaker breaker = new CircuitBreaker("alerts", properties);
+        record(breaker, 4, FAST, true);
+
+        record(breaker, 10, FAST, false);
+
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+        assertRejected(breaker);
+    }
+
+    private CircuitBreaker tripped() {
+        CircuitBreaker breaker = new CircuitBreaker("alerts", properties);
+        record(breaker, 4, FAST, true);
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+        return breaker;
+    }
+
+    private static void record(CircuitBreaker breaker, int calls, long durationNanos, boolean failed) {
+        for (int i = 0; i < calls; i++) {
+            breaker.record(durationNanos, failed);
+        }
+    }
+
+    private static void assertRejected(CircuitBreaker breaker) {
+        try {
+            breaker.acquirePermission();
+            fail("Expected the circuit breaker to reject the call");
+        } catch (CircuitBreakerOpenException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.libertymutualgroup.herman.nr.broker.Latencies;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Compares the bytes transferred and the latency of the large New Relic list responses, and of a large request
+ * body, with compression off and on, against a {@link NewRelicStandIn}:
+ *
+ * <pre>
+ * CompressionBenchmark [items] [requests] [latencyMillis]
+ * </pre>
+ *
+ * <p>Responses are read as a stream, as the clients read them, and the bytes that come out after decompression are
+ * counted next to the bytes that crossed the socket. Loopback has no bandwidth limit, so the latency difference on a
+ * single machine mostly shows the cost of compressing; the byte counts show what a real link is spared.
+ */
+public class CompressionBenchmark {
+
+    private static final List<String> LISTS = Arrays.asList(NewRelicStandIn.APPLICATIONS, NewRelicStandIn.CHANNELS,
+        NewRelicStandIn.MONITORS);
+    private static final String CONDITIONS = "/v2/alerts_nrql_conditions/policies/1.json";
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        try (NewRelicStandIn standIn = new NewRelicStandIn(items, latencyMillis)) {
+            System.out.println(String.format("%d items per list, %d requests each", items, requests));
+            for (boolean compressed : new boolean[] {false, true}) {
+                try (PooledHttp1Transport transport = new PooledHttp1Transport(10, 3, compressed)) {
+                    RestTemplate restTemplate = new RestTemplate(transport.getRequestFactory());
+                    if (compressed) {
+                        restTemplate.getInterceptors().add(new GzipRequestInterceptor(2048));
+                    }
+                    String label = compressed ? "gzip" : "identity";
+                    for (String list : LISTS) {
+                        fetch(restTemplate, standIn, label, list, requests);
+                    }
+                    post(restTemplate, standIn, label, requests);
+                }
+            }
+        }
+    }
+
+    private static void fetch(RestTemplate restTemplate, NewRelicStandIn standIn, String label, String path,
+        int requests) {
+        String url = standIn.getUrl() + path;
+        restTemplate.execute(url, HttpMethod.GET, null, response -> count(response.getBody()));
+        standIn.resetCounters();
+
+        Latencies latencies = new Latencies();
+        long read = 0;
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            read += restTemplate.execute(url, HttpMethod.GET, null, response -> count(response.getBody()));
+            latencies.recordSince(start);
+        }
+        print(label, "GET " + path, standIn.getResponseBytes() / requests, read / requests, latencies);
+    }
+
+    private static void post(RestTemplate restTemplate, NewRelicStandIn standIn, String label, int requests) {
+        // A large body, as an alert template with many conditions would send
+        byte[] body = restTemplate.execute(standIn.getUrl() + NewRelicStandIn.CHANNELS, HttpMethod.GET, null,
+            response -> StreamUtils.copyToByteArray(response.getBody()));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<byte[]> request = new HttpEntity<>(body, headers);
+        String url = standIn.getUrl() + CONDITIONS;
+        restTemplate.postForObject(url, request, String.class);
+        standIn.resetCounters();
+
+        Latencies latencies = new Latencies();
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            restTemplate.postForObject(url, request, String.class);
+            latencies.recordSince(start);
+        }
+        print(label, "POST " + CONDITIONS, standIn.getRequestBytes() / requests, body.length, latencies);
+    }
+
+    private static void print(String label, String call, long wireBytes, long bodyBytes, Latencies latencies) {
+        System.out.println(String.format("%-8s %-52s %9d bytes on the wire, %9d bytes of JSON, %s", label, call,
+            wireBytes, bodyBytes, latencies));
+    }
+
+    private static long count(InputStream body) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        for (int read; (read = body.read(buffer)) != -1; ) {
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import com.libertymutualgroup.herman.nr.broker.cache.LruCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.AccountState;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.MutationResult;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NrqlCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+public class NerdGraphClientTest {
+
+    private static final String URL = "https://api.newrelic.com/graphql";
+
+    private NewRelicBrokerProperties properties;
+    private NerdGraphClient nerdGraphClient;
+    private MockRestServiceServer server;
+
+    @Before
+    public void setUp() {
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+
+        properties = new NewRelicBrokerProperties();
+        properties.getNerdGraph().setUrl(URL);
+        properties.getNerdGraph().setApiKey("user-key");
+        properties.getNerdGraph().setAccountId(1);
+
+        nerdGraphClient = new NerdGraphClient();
+        nerdGraphClient.properties = properties;
+        nerdGraphClient.newRelicAccounts = new NewRelicAccounts("api-key", 1,
+            apiKey -> new NewRelicAccount(apiKey, new HttpHeaders(), restTemplate, () -> restTemplate,
+                () -> restTemplate, new LruCache<>(8), Collections.emptyList()));
+    }
+
+    @Test
+    public void readAccountStateFollowsPolicyAndChannelCursors() {
+        server.expect(requestTo(URL))
+            .andExpect(method(HttpMethod.POST))
+            .andExpect(jsonPath("$.variables.policyName").value("team"))
+            .andRespond(withSuccess("{\"data\":{\"actor\":{\"account\":{\"alerts\":{"
+                + "\"policies\":{\"policies\":[{\"id\":\"1\",\"name\":\"team-other\"}],\"nextCursor\":\"p2\"},"
+                + "\"channels\":{\"channels\":[{\"id\":\"10\",\"name\":\"team-email\"},"
+                + "{\"id\":\"11\",\"name\":\"other\"}],\"nextCursor\":\"c2\"}}}}}}", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(URL))
+            .andExpect(jsonPath("$.variables.policyCursor").value("p2"))
+            .andRespond(withSuccess("{\"data\":{\"actor\":{\"account\":{\"alerts\":{"
+                + "\"policies\":{\"policies\":[{\"id\":\"42\",\"name\":\"team\"}],\"nextCursor\":\"p3\"}}}}}}",
+                MediaType.APPLICATION_JSON));
+        server.expect(requestTo(URL))
+            .andExpect(jsonPath("$.variables.cursor").value("c2"))
+            .andRespond(withSuccess("{\"data\":{\"actor\":{\"account\":{\"alerts\":{"
+                + "\"channels\":{\"channels\":[{\"id\":\"12\",\"name\":\"team-slack\"}],\"nextCursor\":null}}}}}}",
+                MediaType.APPLICATION_JSON));
+
+        AccountState state = nerdGraphClient.readAccountState(null, "team", false);
+
+        server.verify();
+        assertThat(state.getPolicyId()).isEqualTo("42");
+        assertThat(state.getChannels()).extracting(ResourceSummary::getId).containsExactly("10", "12");
+    }
+
+    @Test
+    public void readAccountStateStopsWhenPoliciesRunOut() {
+        server.expect(requestTo(URL))
+            .andRespond(withSuccess("{\"data\":{\"actor\":{\"account\":{\"alerts\":{"
+                + "\"policies\":{\"policies\":[],\"nextCursor\":\"p2\"},"
+                + "\"channels\":{\"channels\":[],\"nextCursor\":null}}}}}}", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(URL))
+            .andExpect(jsonPath("$.variables.policyCursor").value("p2"))
+            .andRespond(withSuccess("{\"data\":{\"actor\":{\"account\":{\"alerts\":{"
+                + "\"policies\":{\"policies\":[],\"nextCursor\":null}}}}}}", MediaType.APPLICATION_JSON));
+
+        AccountState state = nerdGraphClient.readAccountState(null, "team", false);
+
+        server.verify();
+        assertThat(state.getPolicyId()).isNull();
+        assertThat(state.getChannels()).isEmpty();
+    }
+
+    @Test
+    public void createNrqlConditionsSendsAtMostMaxMutationsPerRequest() {
+        properties.getNerdGraph().setMaxMutationsPerRequest(2);
+        server.expect(requestTo(URL))
+            .andExpect(jsonPath("$.variables.policyId").value("7"))
+            .andExpect(jsonPath("$.variables.m1.name").value("condition-1"))
+            .andExpect(jsonPath("$.variables.m2").doesNotExist())
+            .andRespond(withSuccess("{\"data\":{\"m0\":{\"id\":\"100\"},\"m1\":{\"id\":\"101\"}}}",
+                MediaType.APPLICATION_JSON));
+        server.expect(requestTo(URL))
+            .andExpect(jsonPath("$.variables.m0.name").value("condition-2"))
+            .andRespond(withSuccess("{\"data\":{\"m0\":{\"id\":\"102\"},\"m1\":{\"id\":\"103\"}}}",
+                MediaType.APPLICATION_JSON));
+        server.expect(requestTo(URL))
+            .andExpect(jsonPath("$.variables.m0.name").value("condition-4"))
+            .andExpect(jsonPath("$.variables.m1").doesNotExist())
+            .andRespond(withSuccess("{\"data\":{\"m0\":{\"id\":\"104\"}}}", MediaType.APPLICATION_JSON));
+
+        List<MutationResult> results = nerdGraphClient.createNrqlConditions("7", nrqlConditions(5));
+
+        server.verify();
+        assertThat(results).extracting(MutationResult::getName)
+            .containsExactly("condition-0", "condition-1", "condition-2", "condition-3", "condition-4");
+        assertThat(results).extracting(MutationResult::getId).containsExactly("100", "101", "102", "103", "104");
+        assertThat(results).extracting(MutationResult::isSuccessful).containsOnly(true);
+    }
+
+    @Test
+    public void createNrqlConditionsSplitsRequestsAtMaxRequestBytes() {
+        // Smaller than any one mutation, so every request carries exactly one
+        properties.getNerdGraph().setMaxRequestBytes(1);
+        for (int i = 0; i < 3; i++) {
+            server.expect(requestTo(URL))
+                .andExpect(jsonPath("$.variables.m0.name").value("condition-" + i))
+                .andExpect(jsonPath("$.variables.m1").doesNotExist())
+                .andRespond(withSuccess("{\"data\":{\"m0\":{\"id\":\"" + i + "\"}}}", MediaType.APPLICATION_JSON));
+        }
+
+        List<MutationResult> results = nerdGraphClient.createNrqlConditions("7", nrqlConditions(3));
+
+        server.verify();
+        assertThat(results).extracting(MutationResult::getId).containsExactly("0", "1", "2");
+    }
+
+    @Test
+    public void createNrqlConditionsReportsErrorsPerMutation() {
+        server.expect(requestTo(URL))
+            .andRespond(withSuccess("{\"data\":{\"m0\":{\"id\":\"100\"},\"m1\":null},"
+                + "\"errors\":[{\"message\":\"Invalid query\",\"path\":[\"m1\"]}]}", MediaType.APPLICATION_JSON));
+
+        List<MutationResult> results = nerdGraphClient.createNrqlConditions("7", nrqlConditions(2));
+
+        server.verify();
+        assertThat(results.get(0).isSuccessful()).isTrue();
+        assertThat(results.get(1).isSuccessful()).isFalse();
+        assertThat(results.get(1).getError()).isEqualTo("Invalid query");
+    }
+
+    @Test
+    public void newRelicClientCreatesUnmappableConditionsThroughRest() {
+        NewRelicClient newRelicClient = new NewRelicClient();
+        newRelicClient.newRelicAccounts = nerdGraphClient.newRelicAccounts;
+        newRelicClient.nerdGraphClient = nerdGraphClient;
+        ArrayNode conditions = new ObjectMapper().createArrayNode();
+        conditions.addObject()
+            .put("name", "static")
+            .putObject("nrql").put("query", "SELECT count(*) FROM Transaction");
+        conditions.addObject()
+            .put("name", "baseline")
+            .put("type", "baseline")
+            .putObject("nrql").put("query", "SELECT count(*) FROM Transaction");
+
+        server.expect(requestTo(URL))
+            .andExpect(jsonPath("$.variables.m0.name").value("static"))
+            .andExpect(jsonPath("$.variables.m1").doesNotExist())
+            .andRespond(withSuccess("{\"data\":{\"m0\":{\"id\":\"1\"}}}", MediaType.APPLICATION_JSON));
+        server.expect(requestTo("/alerts_nrql_conditions/policies/7.json"))
+            .andExpect(method(HttpMethod.POST))
+            .andExpect(jsonPath("$.nrql_condition.name").value("baseline"))
+            .andExpect(jsonPath("$.nrql_condition.type").value("baseline"))
+            .andRespond(withSuccess("{\"nrql_condition\":{\"id\":2}}", MediaType.APPLICATION_JSON));
+
+        List<MutationResult> results = newRelicClient.createNrqlAlertsConditions("7",
+            NrqlCondition.listOf(conditions));
+
+        server.verify();
+        assertThat(results).extracting(MutationResult::getName).containsExactly("static", "baseline");
+        assertThat(results).extracting(MutationResult::getId).containsExactly("1", "2");
+    }
+
+    private static List<NrqlCondition> nrqlConditions(int count) {
+        ArrayNode conditions = new ObjectMapper().createArrayNode();
+        for (int i = 0; i < count; i++) {
+            conditions.addObject()
+                .put("name", "condition-" + i)
+                .putObject("nrql").put("query", "SELECT count(*) FROM Transaction");
+        }
+        return NrqlCondition.listOf(conditions);
+    }
+}
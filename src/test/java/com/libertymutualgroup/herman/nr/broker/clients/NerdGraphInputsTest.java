@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NotificationChannel;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NrqlCondition;
+import java.io.IOException;
+import org.junit.Test;
+
+public class NerdGraphInputsTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    public void nrqlConditionMapsRestFields() throws IOException {
+        ObjectNode input = NerdGraphInputs.nrqlCondition(nrqlCondition("{\"name\":\"errors\","
+            + "\"runbook_url\":\"https://example.com/runbook\",\"value_function\":\"single_value\","
+            + "\"violation_time_limit_seconds\":3600,"
+            + "\"nrql\":{\"query\":\"SELECT count(*) FROM TransactionError\",\"since_value\":\"3\"},"
+            + "\"terms\":[{\"duration\":\"5\",\"operator\":\"above\",\"threshold\":\"10\",\"time_function\":\"all\"},"
+            + "{\"duration\":\"10\",\"operator\":\"below\",\"threshold\":\"0.5\",\"time_function\":\"any\","
+            + "\"priority\":\"warning\"}]}"));
+
+        assertThat(input.path("name").asText()).isEqualTo("errors");
+        assertThat(input.path("enabled").asBoolean()).isTrue();
+        assertThat(input.path("runbookUrl").asText()).isEqualTo("https://example.com/runbook");
+        assertThat(input.path("valueFunction").asText()).isEqualTo("SINGLE_VALUE");
+        assertThat(input.path("violationTimeLimitSeconds").asInt()).isEqualTo(3600);
+        assertThat(input.path("nrql").path("query").asText()).isEqualTo("SELECT count(*) FROM TransactionError");
+        assertThat(input.path("nrql").path("evaluationOffset").asInt()).isEqualTo(3);
+
+        JsonNode critical = input.path("terms").get(0);
+        assertThat(critical.path("threshold").asDouble()).isEqualTo(10.0);
+        assertThat(critical.path("thresholdDuration").asInt()).isEqualTo(300);
+        assertThat(critical.path("thresholdOccurrences").asText()).isEqualTo("ALL");
+        assertThat(critical.path("operator").asText()).isEqualTo("ABOVE");
+        assertThat(critical.path("priority").asText()).isEqualTo("CRITICAL");
+
+        JsonNode warning = input.path("terms").get(1);
+        assertThat(warning.path("threshold").asDouble()).isEqualTo(0.5);
+        assertThat(warning.path("thresholdDuration").asInt()).isEqualTo(600);
+        assertThat(warning.path("thresholdOccurrences").asText()).isEqualTo("AT_LEAST_ONCE");
+        assertThat(warning.path("operator").asText()).isEqualTo("BELOW");
+        assertThat(warning.path("priority").asText()).isEqualTo("WARNING");
+    }
+
+    @Test
+    public void nrqlConditionLeavesOutAbsentOptionalFields() throws IOException {
+        ObjectNode input = NerdGraphInputs.nrqlCondition(nrqlCondition("{\"name\":\"errors\",\"enabled\":false,"
+            + "\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\"},"
+            + "\"terms\":[{\"duration\":\"1\",\"operator\":\"equal\",\"threshold\":\"0\","
+            + "\"time_function\":\"all\"}]}"));
+
+        assertThat(input.path("enabled").asBoolean()).isFalse();
+        assertThat(input.has("runbookUrl")).isFalse();
+        assertThat(input.has("valueFunction")).isFalse();
+        assertThat(input.has("violationTimeLimitSeconds")).isFalse();
+        assertThat(input.path("nrql").has("evaluationOffset")).isFalse();
+        assertThat(input.path("terms").get(0).path("thresholdDuration").asInt()).isEqualTo(60);
+        assertThat(input.path("terms").get(0).path("operator").asText()).isEqualTo("EQUALS");
+    }
+
+    @Test
+    public void emailChannelSplitsRecipients() throws IOException {
+        ObjectNode input = NerdGraphInputs.channel(channel("{\"name\":\"team-email\",\"type\":\"email\","
+            + "\"configuration\":{\"recipients\":\"a@example.com, b@example.com,\","
+            + "\"include_json_attachment\":true}}"));
+
+        JsonNode email = input.path("email");
+        assertThat(email.path("name").asText()).isEqualTo("team-email");
+        assertThat(email.path("emails")).extracting(JsonNode::asText).containsExactly("a@example.com", "b@example.com");
+        assertThat(email.path("includeJson").asBoolean()).isTrue();
+    }
+
+    @Test
+    public void channelsMapTheirConfigurationFields() throws IOException {
+        JsonNode slack = NerdGraphInputs.channel(channel("{\"name\":\"team-slack\",\"type\":\"slack\","
+            + "\"configuration\":{\"url\":\"https://hooks.slack.com/x\",\"channel\":\"#team\"}}")).path("slack");
+        assertThat(slack.path("url").asText()).isEqualTo("https://hooks.slack.com/x");
+        assertThat(slack.path("teamChannel").asText()).isEqualTo("#team");
+
+        JsonNode pagerDuty = NerdGraphInputs.channel(channel("{\"name\":\"team-pd\",\"type\":\"pagerduty\","
+            + "\"configuration\":{\"service_key\":\"abc\"}}")).path("pagerDuty");
+        assertThat(pagerDuty.path("apiKey").asText()).isEqualTo("abc");
+
+        JsonNode webhook = NerdGraphInputs.channel(channel("{\"name\":\"team-hook\",\"type\":\"webhook\","
+            + "\"configuration\":{\"base_url\":\"https://example.com/hook\"}}")).path("webhook");
+        assertThat(webhook.path("baseUrl").asText()).isEqualTo("https://example.com/hook");
+
+        JsonNode victorOps = NerdGraphInputs.channel(channel("{\"name\":\"team-vo\",\"type\":\"victorops\","
+            + "\"configuration\":{\"key\":\"k\",\"route_key\":\"r\"}}")).path("victorOps");
+        assertThat(victorOps.path("key").asText()).isEqualTo("k");
+        assertThat(victorOps.path("routeKey").asText()).isEqualTo("r");
+    }
+
+    @Test
+    public void webhookWithOnlyBaseUrlMapsEveryField() throws IOException {
+        JsonNode webhook = NerdGraphInputs.channel(channel("{\"name\":\"team-hook\",\"type\":\"webhook\","
+            + "\"configuration\":{\"base_url\":\"https://example.com/hook\"}}")).path("webhook");
+
+        assertThat(webhook.size()).isEqualTo(2);
+        assertThat(webhook.path("name").asText()).isEqualTo("team-hook");
+        assertThat(webhook.path("baseUrl").asText()).isEqualTo("https://example.com/hook");
+    }
+
+    @Test
+    public void webhookWithPayloadHeadersOrCredentialsIsLeftToRest() throws IOException {
+        assertThat(NerdGraphInputs.channel(channel("{\"name\":\"team-hook\",\"type\":\"webhook\","
+            + "\"configuration\":{\"base_url\":\"https://example.com/hook\",\"payload_type\":\"application/json\","
+            + "\"payload\":{\"account\":\"$ACCOUNT_ID\"},\"headers\":{\"X-Team\":\"herman\"},"
+            + "\"auth_username\":\"user\",\"auth_password\":\"secret\"}}"))).isNull();
+        assertThat(NerdGraphInputs.channel(channel("{\"name\":\"team-hook\",\"type\":\"webhook\","
+            + "\"configuration\":{\"base_url\":\"https://example.com/hook\",\"auth_username\":\"user\"}}")))
+            .isNull();
+    }
+
+    @Test
+    public void channelWithUnmappedFieldIsLeftToRest() throws IOException {
+        assertThat(NerdGraphInputs.channel(channel("{\"name\":\"team-email\",\"type\":\"email\","
+            + "\"configuration\":{\"recipients\":\"a@example.com\",\"cc\":\"b@example.com\"}}"))).isNull();
+        assertThat(NerdGraphInputs.channel(channel("{\"name\":\"team-email\",\"type\":\"email\","
+            + "\"configuration\":{\"recipients\":\"a@example.com\"},\"links\":{\"policy_ids\":[1]}}")))
+            .isNull();
+    }
+
+    @Test
+    public void explicitlyStaticConditionIsMapped() throws IOException {
+        assertThat(NerdGraphInputs.nrqlCondition(nrqlCondition("{\"type\":\"static\",\"name\":\"errors\","
+            + "\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\"},"
+            + "\"terms\":[{\"duration\":\"5\",\"operator\":\"above\",\"threshold\":\"1\","
+            + "\"time_function\":\"all\"}]}"))).isNotNull();
+    }
+
+    @Test
+    public void nonStaticConditionsAreLeftToRest() throws IOException {
+        for (String type : new String[] {"baseline", "outlier"}) {
+            assertThat(NerdGraphInputs.nrqlCondition(nrqlCondition("{\"type\":\"" + type + "\","
+                + "\"name\":\"errors\",\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\"},"
+                + "\"terms\":[{\"duration\":\"5\",\"operator\":\"above\",\"threshold\":\"1\","
+                + "\"time_function\":\"all\"}]}"))).isNull();
+        }
+    }
+
+    @Test
+    public void conditionsWithUnmappedFieldsOrValuesAreLeftToRest() throws IOException {
+        String terms = "\"terms\":[{\"duration\":\"5\",\"operator\":\"above\",\"threshold\":\"1\","
+            + "\"time_function\":\"all\"}]";
+        String nrql = "\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\"}";
+
+        assertThat(NerdGraphInputs.nrqlCondition(nrqlCondition("{\"name\":\"a\",\"expected_groups\":2,"
+            + nrql + "," + terms + "}"))).isNull();
+        assertThat(NerdGraphInputs.nrqlCondition(nrqlCondition("{\"name\":\"a\",\"ignore_overlap\":true,"
+            + nrql + "," + terms + "}"))).isNull();
+        assertThat(NerdGraphInputs.nrqlCondition(nrqlCondition("{\"name\":\"a\",\"value_function\":\"max\","
+            + nrql + "," + terms + "}"))).isNull();
+        assertThat(NerdGraphInputs.nrqlCondition(nrqlCondition("{\"name\":\"a\","
+            + "\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\",\"facet\":\"host\"}," + terms + "}")))
+            .isNull();
+        assertThat(NerdGraphInputs.nrqlCondition(nrqlCondition("{\"name\":\"a\"," + nrql + ","
+            + "\"terms\":[{\"duration\":\"5\",\"operator\":\"above\",\"threshold\":\"1\","
+            + "\"time_function\":\"all\",\"priority\":\"info\"}]}"))).isNull();
+        assertThat(NerdGraphInputs.nrqlCondition(nrqlCondition("{\"name\":\"a\"," + nrql + ","
+            + "\"terms\":[{\"duration\":\"5\",\"operator\":\"above\",\"threshold\":\"1\","
+            + "\"time_function\":\"all\",\"extra\":true}]}"))).isNull();
+    }
+
+    @Test
+    public void unmappedChannelTypeHasNoInput() throws IOException {
+        assertThat(NerdGraphInputs.channel(channel("{\"name\":\"team-genie\",\"type\":\"opsgenie\","
+            + "\"configuration\":{\"api_key\":\"k\"}}"))).isNull();
+    }
+
+    private static NrqlCondition nrqlCondition(String json) throws IOException {
+        return NrqlCondition.listOf(OBJECT_MAPPER.readTree("[" + json + "]")).get(0);
+    }
+
+    private static NotificationChannel channel(String json) throws IOException {
+        return NotificationChannel.listOf(OBJECT_MAPPER.readTree("[" + json + "]")).get(0);
+    }
+}
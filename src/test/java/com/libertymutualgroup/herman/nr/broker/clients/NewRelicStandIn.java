@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * A local stand-in for the New Relic REST hosts, for the benchmarks. {@code GET /v2/applications.json},
+ * {@code /v2/alerts_channels.json} and {@code /synthetics/api/v3/monitors} return lists of {@code items} entries
+ * shaped like New Relic's; every other request gets a small JSON object. Responses are gzipped for clients that
+ * accept it, each one is held back for {@code latencyMillis}, and the body bytes that cross the socket are counted.
+ *
+ * <p>The stand-in speaks plain HTTP/1.1, or HTTP/2 without TLS ({@link Protocol#H2_PRIOR_KNOWLEDGE}) for clients
+ * that are told to expect it.
+ */
+public class NewRelicStandIn implements Closeable {
+
+    public static final String APPLICATIONS = "/v2/applications.json";
+    public static final String CHANNELS = "/v2/alerts_channels.json";
+    public static final String MONITORS = "/synthetics/api/v3/monitors";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final byte[] CREATED = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+
+    // MockWebServer logs every request it serves, which would be timed along with it
+    private static final Logger SERVER_LOG = Logger.getLogger(MockWebServer.class.getName());
+
+    static {
+        SERVER_LOG.setLevel(Level.WARNING);
+    }
+
+    private final Map<String, byte[]> lists = new HashMap<>();
+    private final Map<String, byte[]> gzippedLists = new HashMap<>();
+    private final long latencyMillis;
+    private final MockWebServer server = new MockWebServer();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    public NewRelicStandIn(int items, long latencyMillis) throws IOException {
+        this(items, latencyMillis, Protocol.HTTP_1_1);
+    }
+
+    /**
+     * @param protocol {@link Protocol#HTTP_1_1} or {@link Protocol#H2_PRIOR_KNOWLEDGE}
+     */
+    public NewRelicStandIn(int items, long latencyMillis, Protocol protocol) throws IOException {
+        this.latencyMillis = latencyMillis;
+        addList(APPLICATIONS, "applications", items, NewRelicStandIn::application);
+        addList(CHANNELS, "channels", items, NewRelicStandIn::channel);
+        addList(MONITORS, "monitors", items, NewRelicStandIn::monitor);
+
+        server.setProtocols(Collections.singletonList(protocol));
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return handle(request);
+            }
+        });
+        server.start(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    public String getUrl() {
+        return "http://" + server.getHostName() + ":" + server.getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Request body bytes as sent, compressed or not.
+     */
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    /**
+     * Response body bytes as sent, compressed or not.
+     */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    public void resetCounters() {
+        requests.set(0);
+        requestBytes.set(0);
+        responseBytes.set(0);
+        // MockWebServer queues every request it served for takeRequest(); the stand-in never reads them
+        try {
+            while (server.takeRequest(0, TimeUnit.MILLISECONDS) != null) {
+                continue;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.shutdown();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private MockResponse handle(RecordedRequest request) {
+        requests.incrementAndGet();
+        requestBytes.addAndGet(request.getBodySize());
+
+        String path = request.getPath();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        boolean list = "GET".equals(request.getMethod()) && lists.containsKey(path);
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean gzip = list && acceptEncoding != null && acceptEncoding.contains("gzip");
+        byte[] body = gzip ? gzippedLists.get(path) : list ? lists.get(path) : CREATED;
+
+        MockResponse response = new MockResponse()
+            .setResponseCode(200)
+            .setHeader("Content-Type", "application/json")
+            .setBody(new Buffer().write(body))
+            .setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        responseBytes.addAndGet(body.length);
+        return response;
+    }
+
+    private void addList(String path, String field, int items, IntFunction<ObjectNode> item) throws IOException {
+        ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        ArrayNode array = response.putArray(field);
+        for (int i = 0; i < items; i++) {
+            array.add(item.apply(i));
+        }
+        byte[] body = OBJECT_MAPPER.writeValueAsBytes(response);
+        lists.put(path, body);
+        gzippedLists.put(path, gzip(body));
+    }
+
+    private static ObjectNode application(int i) {
+        ObjectNode application = OBJECT_MAPPER.createObjectNode()
+            .put("id", 100000 + i)
+            .put("name", "herman-app-" + i)
+            .put("language", "java")
+            .put("health_status", "green")
+            .put("reporting", true)
+            .put("last_reported_at", "2018-06-01T12:00:00+00:00");
+        application.putObject("settings")
+            .put("app_apdex_threshold", 0.5)
+            .put("end_user_apdex_threshold", 7.0)
+            .put("enable_real_user_monitoring", true);
+        application.putObject("links").putArray("application_instances").add(200000 + i);
+        return application;
+    }
+
+    private static ObjectNode channel(int i) {
+        ObjectNode channel = OBJECT_MAPPER.createObjectNode()
+            .put("id", 300000 + i)
+            .put("name", "herman-app-" + i + "-email")
+            .put("type", "email");
+        channel.putObject("configuration")
+            .put("recipients", "team-" + i + "@example.com")
+            .put("include_json_attachment", "true");
+        channel.putObject("links").putArray("policy_ids").add(400000 + i);
+        return channel;
+    }
+
+    private static ObjectNode monitor(int i) {
+        ObjectNode monitor = OBJECT_MAPPER.createObjectNode()
+            .put("id", String.format("00000000-0000-0000-0000-%012d", i))
+            .put("name", "herman-app-" + i + "-health")
+            .put("type", "SIMPLE")
+            .put("frequency", 5)
+            .put("uri", "https://herman-app-" + i + ".example.com/health")
+            .put("status", "ENABLED")
+            .put("slaThreshold", 7.0)
+            .put("modifiedAt", "2018-06-01T12:00:00.000+0000");
+        monitor.putArray("locations").add("AWS_US_EAST_1").add("AWS_US_WEST_2");
+        return monitor;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.AlertTemplate;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ApplicationCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.InfrastructureCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NotificationChannel;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NrqlCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.PluginsCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.SyntheticsMonitor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+/**
+ * Every body is compared byte for byte with what the broker sent before templates: the request's tree, changed
+ * with {@link ObjectNode#put} or {@link ObjectNode#set}, wrapped in its envelope and written by Jackson's converter.
+ */
+public class PassthroughBodyHttpMessageConverterTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String CONDITION = "{\"type\":\"apm_app_metric\",\"name\":\"Apdex \\u00e9 \\\"low\\\"\","
+        + "\"enabled\":true,\"entities\":[\"1\"],\"metric\":\"apdex\",\"condition_scope\":\"application\","
+        + "\"terms\":[{\"duration\":\"5\",\"operator\":\"below\",\"priority\":\"critical\",\"threshold\":0.85,"
+        + "\"time_function\":\"all\"}],\"runbook_url\":null}";
+    private static final String CONDITION_WITHOUT_ENTITIES = "{\"type\":\"apm_app_metric\",\"name\":\"Errors\","
+        + "\"enabled\":true,\"metric\":\"error_percentage\",\"terms\":[{\"threshold\":5}]}";
+    private static final String NRQL_CONDITION = "{\"name\":\"Slow\",\"enabled\":true,\"terms\":[{\"duration\":10,"
+        + "\"operator\":\"above\",\"threshold\":\"1.5\"}],\"nrql\":{\"query\":\"SELECT average(duration) FROM "
+        + "Transaction WHERE appName = 'a/b'\",\"since_value\":\"3\"},\"value_function\":\"single_value\"}";
+    private static final String PLUGINS_CONDITION = "{\"name\":\"Queue depth\",\"enabled\":true,"
+        + "\"entities\":[\"123\"],\"metric\":\"Component/Queue/Depth\",\"plugin\":{\"id\":\"42\",\"guid\":\"x.y\"},"
+        + "\"terms\":[{\"threshold\":1000000000000}]}";
+    private static final String INFRASTRUCTURE_CONDITION = "{\"type\":\"infra_metric\",\"name\":\"Disk\","
+        + "\"enabled\":true,\"filter\":{\"and\":[{\"is\":{\"ec2Tag_Name\":\"app\"}}]},\"event_type\":\"StorageSample\","
+        + "\"select_value\":\"diskUsedPercent\",\"comparison\":\"above\",\"critical_threshold\":{\"value\":90,"
+        + "\"duration_minutes\":5,\"time_function\":\"all\"}}";
+    private static final String SYNTHETICS_MONITOR = "{\"name\":\"health\",\"type\":\"SIMPLE\",\"frequency\":5,"
+        + "\"uri\":\"https://example.com/health?a=1&b=2\",\"locations\":[\"AWS_US_EAST_1\"],\"status\":\"ENABLED\"}";
+    private static final String CHANNEL = "{\"name\":\"team\",\"type\":\"email\","
+        + "\"configuration\":{\"recipients\":\"team@example.com\",\"include_json_attachment\":true}}";
+
+    private final PassthroughBodyHttpMessageConverter converter = new PassthroughBodyHttpMessageConverter();
+
+    @Test
+    public void writesApplicationConditionsWithTheirEntitiesInPlace() throws IOException {
+        ApplicationCondition condition = first(CONDITION, ApplicationCondition::listOf);
+        ObjectNode baseline = tree(CONDITION);
+        baseline.set("entities", OBJECT_MAPPER.createArrayNode().add("7"));
+
+        assertSameBytes(new PassthroughBody("condition", condition.withEntities(Collections.singletonList("7"))),
+            envelope("condition", baseline));
+    }
+
+    @Test
+    public void writesApplicationConditionsWithEntitiesAddedLast() throws IOException {
+        ApplicationCondition condition = first(CONDITION_WITHOUT_ENTITIES, ApplicationCondition::listOf);
+        ObjectNode baseline = tree(CONDITION_WITHOUT_ENTITIES);
+        baseline.set("entities", OBJECT_MAPPER.createArrayNode().add("7"));
+
+        assertSameBytes(new PassthroughBody("condition", condition.withEntities(Collections.singletonList("7"))),
+            envelope("condition", baseline));
+    }
+
+    @Test
+    public void writesNrqlConditionsUnchanged() throws IOException {
+        NrqlCondition condition = first(NRQL_CONDITION, NrqlCondition::listOf);
+
+        assertSameBytes(new PassthroughBody("nrql_condition", condition),
+            envelope("nrql_condition", tree(NRQL_CONDITION)));
+    }
+
+    @Test
+    public void writesPluginsConditionsUnchanged() throws IOException {
+        PluginsCondition condition = first(PLUGINS_CONDITION, PluginsCondition::listOf);
+
+        assertSameBytes(new PassthroughBody("plugins_condition", condition),
+            envelope("plugins_condition", tree(PLUGINS_CONDITION)));
+    }
+
+    @Test
+    public void writesInfrastructureConditionsWithTheirPolicyId() throws IOException {
+        InfrastructureCondition condition = first(INFRASTRUCTURE_CONDITION, InfrastructureCondition::listOf);
+        ObjectNode baseline = tree(INFRASTRUCTURE_CONDITION).put("policy_id", 42);
+
+        assertSameBytes(new PassthroughBody("data", condition.withPolicyId(42)), envelope("data", baseline));
+    }
+
+    @Test
+    public void writesSyntheticsMonitorsWithTheirNameReplaced() throws IOException {
+        SyntheticsMonitor monitor = first(SYNTHETICS_MONITOR, SyntheticsMonitor::listOf);
+        ObjectNode baseline = tree(SYNTHETICS_MONITOR).put("name", "my-app-synthetics");
+
+        assertSameBytes(new PassthroughBody(monitor.withName("my-app-synthetics")), baseline);
+    }
+
+    @Test
+    public void writesChannelsWithTheirNameReplaced() throws IOException {
+        NotificationChannel channel = first(CHANNEL, NotificationChannel::listOf);
+        ObjectNode baseline = tree(CHANNEL).put("name", "my-app-team");
+
+        assertSameBytes(new PassthroughBody("channel", channel.withName("my-app-team")),
+            envelope("channel", baseline));
+    }
+
+    @Test
+    public void leavesTheTemplateUnchanged() throws IOException {
+        ApplicationCondition condition = first(CONDITION, ApplicationCondition::listOf);
+
+        write(new PassthroughBody("condition", condition.withEntities(Collections.singletonList("7"))));
+
+        assertThat(condition.toJson()).isEqualTo(OBJECT_MAPPER.writeValueAsString(tree(CONDITION)));
+    }
+
+    @Test
+    public void onlyWritesPassthroughBodies() {
+        assertThat(converter.canWrite(PassthroughBody.class, MediaType.APPLICATION_JSON)).isTrue();
+        assertThat(converter.canWrite(ObjectNode.class, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.canRead(PassthroughBody.class, MediaType.APPLICATION_JSON)).isFalse();
+    }
+
+    private void assertSameBytes(PassthroughBody body, JsonNode baseline) throws IOException {
+        MockHttpOutputMessage expected = new MockHttpOutputMessage();
+        new MappingJackson2HttpMessageConverter().write(baseline, MediaType.APPLICATION_JSON, expected);
+
+        byte[] actual = write(body);
+
+        assertThat(new String(actual, StandardCharsets.UTF_8))
+            .isEqualTo(new String(expected.getBodyAsBytes(), StandardCharsets.UTF_8));
+        assertThat(actual).isEqualTo(expected.getBodyAsBytes());
+    }
+
+    private byte[] write(PassthroughBody body) throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(body, MediaType.APPLICATION_JSON, output);
+        return output.getBodyAsBytes();
+    }
+
+    private static <T extends AlertTemplate> T first(String json, Function<JsonNode, List<T>> listOf)
+        throws IOException {
+        return listOf.apply(OBJECT_MAPPER.readTree("[" + json + "]")).get(0);
+    }
+
+    private static ObjectNode tree(String json) throws IOException {
+        return (ObjectNode) OBJECT_MAPPER.readTree(json);
+    }
+
+    private static ObjectNode envelope(String name, JsonNode content) {
+        ObjectNode envelope = OBJECT_MAPPER.createObjectNode();
+        envelope.set(name, content);
+        return envelope;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+public class RateLimitingInterceptorTest {
+
+    private final MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET,
+        URI.create("https://api.newrelic.com/v2/applications.json"));
+    private final AtomicInteger executed = new AtomicInteger();
+    private final ClientHttpRequestExecution execution = (httpRequest, body) -> {
+        executed.incrementAndGet();
+        return new MockClientHttpResponse(new byte[0], HttpStatus.OK);
+    };
+
+    @After
+    public void tearDown() {
+        Thread.interrupted();
+    }
+
+    @Test
+    public void letsBurstThroughWithoutWaiting() throws Exception {
+        RateLimitingInterceptor interceptor = new RateLimitingInterceptor(1, 3);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 3; i++) {
+            interceptor.intercept(request, new byte[0], execution);
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(500);
+        assertThat(executed.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void spacesRequestsBeyondBurst() throws Exception {
+        long start = System.nanoTime();
+        RateLimitingInterceptor interceptor = new RateLimitingInterceptor(10, 2);
+
+        for (int i = 0; i < 4; i++) {
+            interceptor.intercept(request, new byte[0], execution);
+        }
+
+        // Two requests go through at once, the next two each wait for another 100 ms interval
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(190);
+        assertThat(executed.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void interruptedWaitFailsWithoutExecuting() throws Exception {
+        RateLimitingInterceptor interceptor = new RateLimitingInterceptor(1, 1);
+        interceptor.intercept(request, new byte[0], execution);
+        Thread.currentThread().interrupt();
+
+        try {
+            interceptor.intercept(request, new byte[0], execution);
+            fail("Expected the interrupted wait to fail");
+        } catch (InterruptedIOException ex) {
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        }
+        assertThat(executed.get()).isEqualTo(1);
+    }
+}
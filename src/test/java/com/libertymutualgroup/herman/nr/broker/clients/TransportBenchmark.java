@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.clients;
+
+import com.libertymutualgroup.herman.nr.broker.Latencies;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Compares the HTTP/1.1 and HTTP/2 transports on the calls of a broker run, sent against a
+ * {@link NewRelicStandIn} by several runs at once:
+ *
+ * <pre>
+ * TransportBenchmark [concurrentRuns] [runs] [items] [latencyMillis]
+ * </pre>
+ *
+ * <p>A run looks up the application, policy, channels and monitors, then creates a policy, four conditions and two
+ * channels and links them, one call after another as the dependency graph orders them. {@code latencyMillis} holds
+ * back every response to stand in for the round trip to New Relic. Each transport gets a stand-in of its own:
+ * plain HTTP/1.1 for the pooled transport, and HTTP/2 without TLS for the multiplexed one, which is told to expect
+ * it since there is no TLS handshake to negotiate it in. The benchmark checks that HTTP/2 is in use before it times
+ * anything.
+ */
+public class TransportBenchmark {
+
+    private static final int MAX_CONNECTIONS_PER_HOST = 10;
+    private static final int HOSTS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int concurrentRuns = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int items = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        long latencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 20;
+
+        System.out.println(String.format("%d runs, %d at a time, %d items per list, %d ms per response", runs,
+            concurrentRuns, items, latencyMillis));
+        try (NewRelicStandIn standIn = new NewRelicStandIn(items, latencyMillis, Protocol.HTTP_1_1);
+            NewRelicTransport http1 = new PooledHttp1Transport(MAX_CONNECTIONS_PER_HOST, HOSTS, true)) {
+            benchmark("HTTP1", http1, standIn, concurrentRuns, runs);
+        }
+        try (NewRelicStandIn standIn = new NewRelicStandIn(items, latencyMillis, Protocol.H2_PRIOR_KNOWLEDGE);
+            MultiplexedHttp2Transport http2 = new MultiplexedHttp2Transport(MAX_CONNECTIONS_PER_HOST, HOSTS, true,
+                Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))) {
+            assertProtocol(http2, standIn, Protocol.H2_PRIOR_KNOWLEDGE);
+            benchmark("HTTP2", http2, standIn, concurrentRuns, runs);
+        }
+    }
+
+    /**
+     * Fails unless a call through the transport's own client and connection pool used {@code expected}.
+     */
+    private static void assertProtocol(MultiplexedHttp2Transport transport, NewRelicStandIn standIn,
+        Protocol expected) throws IOException {
+        Request request = new Request.Builder().url(standIn.getUrl() + NewRelicStandIn.APPLICATIONS).build();
+        try (Response response = transport.getHttpClient().newCall(request).execute()) {
+            if (response.protocol() != expected) {
+                throw new IllegalStateException(String.format("Expected %s but the stand-in was reached over %s",
+                    expected, response.protocol()));
+            }
+        }
+    }
+
+    private static void benchmark(String label, NewRelicTransport transport, NewRelicStandIn standIn,
+        int concurrentRuns, int runs) throws Exception {
+        RestTemplate restTemplate = new RestTemplateBuilder()
+            .requestFactory(transport.getRequestFactory())
+            .rootUri(standIn.getUrl())
+            .build();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrentRuns);
+        try {
+            warmUp(executor, restTemplate, concurrentRuns);
+
+            Latencies calls = new Latencies();
+            Latencies brokerRuns = new Latencies();
+            standIn.resetCounters();
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                futures.add(executor.submit(() -> {
+                    long runStart = System.nanoTime();
+                    brokerRun(restTemplate, calls);
+                    brokerRuns.recordSince(runStart);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(String.format("%s: %.1f runs/s, %d calls", label,
+                runs / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)), standIn.getRequests()));
+            System.out.println("  runs:  " + brokerRuns);
+            System.out.println("  calls: " + calls);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void warmUp(ExecutorService executor, RestTemplate restTemplate, int runs) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            futures.add(executor.submit(() -> {
+                brokerRun(restTemplate, new Latencies());
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static void brokerRun(RestTemplate restTemplate, Latencies calls) {
+        get(restTemplate, calls, NewRelicStandIn.APPLICATIONS + "?filter[name]=herman-app");
+        get(restTemplate, calls, "/v2/alerts_policies.json?filter[name]=herman-app");
+        get(restTemplate, calls, NewRelicStandIn.CHANNELS);
+        get(restTemplate, calls, NewRelicStandIn.MONITORS);
+
+        send(restTemplate, calls, HttpMethod.POST, "/v2/alerts_policies.json",
+            "{\"policy\":{\"name\":\"herman-app\",\"incident_preference\":\"PER_POLICY\"}}");
+        for (int i = 0; i < 4; i++) {
+            send(restTemplate, calls, HttpMethod.POST, "/v2/alerts_nrql_conditions/policies/1.json",
+                "{\"nrql_condition\":{\"name\":\"herman-app-" + i + "\",\"enabled\":true,"
+                    + "\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\",\"since_value\":\"3\"},"
+                    + "\"terms\":[{\"duration\":\"5\",\"operator\":\"above\",\"threshold\":\"1\","
+                    + "\"time_function\":\"all\",\"priority\":\"critical\"}]}}");
+        }
+        for (int i = 0; i < 2; i++) {
+            send(restTemplate, calls, HttpMethod.POST, NewRelicStandIn.CHANNELS,
+                "{\"channel\":{\"name\":\"herman-app-" + i + "\",\"type\":\"email\","
+                    + "\"configuration\":{\"recipients\":\"team@example.com\"}}}");
+        }
+        send(restTemplate, calls, HttpMethod.PUT, "/v2/alerts_policy_channels.json?policy_id=1&channel_ids=1,2",
+            "");
+    }
+
+    private static void get(RestTemplate restTemplate, Latencies calls, String uri) {
+        long start = System.nanoTime();
+        restTemplate.execute(uri, HttpMethod.GET, null, response -> StreamUtils.drain(response.getBody()));
+        calls.recordSince(start);
+    }
+
+    private static void send(RestTemplate restTemplate, Latencies calls, HttpMethod method, String uri, String body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        long start = System.nanoTime();
+        restTemplate.exchange(uri, method, new HttpEntity<>(body, headers), String.class);
+        calls.recordSince(start);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class EmbeddedJsonDeserializerTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String CONFIGURATION = "{"
+        + "\"channels\":[{\"name\":\"team\",\"type\":\"email\",\"configuration\":{\"recipients\":\"a@example.com\"}}],"
+        + "\"conditions\":[{\"name\":\"Apdex \\\"low\\\"\",\"type\":\"apm_app_metric\","
+        + "\"terms\":[{\"threshold\":0.85}]}],"
+        + "\"pluginConditions\":[{\"name\":\"Queue\",\"plugin\":{\"id\":\"42\"}}],"
+        + "\"nrqlConditions\":[{\"name\":\"Slow\",\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\"}}],"
+        + "\"infrastructureConditions\":[{\"name\":\"Disk\",\"critical_threshold\":{\"value\":90}}],"
+        + "\"synthetics\":[{\"name\":\"health\",\"uri\":\"https://example.com/health?a=1&b=2\"}],"
+        + "\"apdex\":\"0.5\"}";
+
+    private static final List<Function<NewRelicConfiguration, JsonNode>> TEMPLATE_FIELDS = Arrays.asList(
+        NewRelicConfiguration::getChannels,
+        NewRelicConfiguration::getConditions,
+        NewRelicConfiguration::getPluginConditions,
+        NewRelicConfiguration::getNrqlConditions,
+        NewRelicConfiguration::getInfrastructureConditions,
+        NewRelicConfiguration::getSynthetics);
+
+    @Test
+    public void readsTheLegacyStringFormLikeTheArrayForm() throws IOException {
+        NewRelicConfiguration arrays = request(CONFIGURATION).getConfiguration();
+        NewRelicConfiguration legacy = request(asStrings(CONFIGURATION)).getConfiguration();
+
+        for (Function<NewRelicConfiguration, JsonNode> field : TEMPLATE_FIELDS) {
+            assertThat(field.apply(arrays).isArray()).isTrue();
+            assertThat(field.apply(legacy)).isEqualTo(field.apply(arrays));
+        }
+        assertThat(legacy.getApdex()).isEqualTo("0.5");
+    }
+
+    @Test
+    public void readsTheStringSettersLikeTheArrayForm() throws IOException {
+        NewRelicConfiguration arrays = request(CONFIGURATION).getConfiguration();
+        JsonNode fields = OBJECT_MAPPER.readTree(CONFIGURATION);
+
+        NewRelicConfiguration configuration = new NewRelicConfiguration()
+            .withChannels(json(fields.get("channels")))
+            .withConditions(json(fields.get("conditions")))
+            .withPluginConditions(json(fields.get("pluginConditions")))
+            .withNrqlConditions(json(fields.get("nrqlConditions")))
+            .withInfrastructureConditions(json(fields.get("infrastructureConditions")))
+            .withSynthetics(json(fields.get("synthetics")));
+
+        for (Function<NewRelicConfiguration, JsonNode> field : TEMPLATE_FIELDS) {
+            assertThat(field.apply(configuration)).isEqualTo(field.apply(arrays));
+        }
+    }
+
+    @Test
+    public void sharesTheTreeParsedFromTheSameString() throws IOException {
+        String legacy = asStrings(CONFIGURATION);
+
+        JsonNode first = request(legacy).getConfiguration().getConditions();
+        JsonNode second = request(legacy).getConfiguration().getConditions();
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void keepsInvalidJsonStringsAsText() throws IOException {
+        NewRelicConfiguration configuration = request("{\"channels\":\"[{\\\"name\\\":\","
+            + "\"conditions\":\"not json\",\"nrqlConditions\":\"\"}").getConfiguration();
+
+        assertThat(configuration.getChannels()).isEqualTo(TextNode.valueOf("[{\"name\":"));
+        assertThat(configuration.getConditions()).isEqualTo(TextNode.valueOf("not json"));
+        assertThat(configuration.getNrqlConditions()).isEqualTo(TextNode.valueOf(""));
+        assertThat(configuration.getPluginConditions()).isNull();
+    }
+
+    @Test
+    public void keepsNullFieldsNull() throws IOException {
+        NewRelicConfiguration configuration = request("{\"channels\":null,\"conditions\":null}").getConfiguration();
+
+        assertThat(configuration.getChannels()).isNull();
+        assertThat(configuration.getConditions()).isNull();
+        assertThat(new NewRelicConfiguration().withSynthetics((String) null).getSynthetics()).isNull();
+    }
+
+    private static String json(JsonNode node) throws IOException {
+        return OBJECT_MAPPER.writeValueAsString(node);
+    }
+
+    private static NewRelicBrokerRequest request(String configuration) throws IOException {
+        return OBJECT_MAPPER.readValue("{\"policyName\":\"my-app\",\"configuration\":" + configuration + "}",
+            NewRelicBrokerRequest.class);
+    }
+
+    /**
+     * The configuration as older versions of Herman send it, with every array field as a string holding the JSON.
+     */
+    private static String asStrings(String configuration) throws IOException {
+        ObjectNode fields = (ObjectNode) OBJECT_MAPPER.readTree(configuration);
+        for (Iterator<Map.Entry<String, JsonNode>> it = fields.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            if (field.getValue().isArray()) {
+                field.setValue(TextNode.valueOf(json(field.getValue())));
+            }
+        }
+        return OBJECT_MAPPER.writeValueAsString(fields);
+    }
+}
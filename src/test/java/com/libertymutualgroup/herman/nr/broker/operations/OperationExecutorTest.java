@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.operations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+public class OperationExecutorTest {
+
+    private ThreadPoolTaskExecutor ioExecutor;
+    private NewRelicBrokerProperties properties;
+
+    @Before
+    public void setUp() {
+        ioExecutor = new ThreadPoolTaskExecutor();
+        ioExecutor.setCorePoolSize(8);
+        ioExecutor.initialize();
+        properties = new NewRelicBrokerProperties();
+        properties.getExecution().setMaxOperationConcurrency(4);
+    }
+
+    @After
+    public void tearDown() {
+        ioExecutor.shutdown();
+    }
+
+    @Test
+    public void runsOperationsAfterTheirDependencies() {
+        List<String> order = new CopyOnWriteArrayList<>();
+        OperationGraph graph = new OperationGraph();
+        Operation<String> policy = graph.supply("policy", () -> {
+            order.add("policy");
+            return "42";
+        });
+        Operation<String> conditions = graph.supply("conditions", () -> {
+            order.add("conditions");
+            return "conditions for " + policy.get();
+        }, policy);
+        Operation<String> channels = graph.supply("channels", () -> {
+            order.add("channels");
+            return "channels for " + policy.get();
+        }, policy);
+        graph.run("link", () -> order.add("link"), conditions, channels);
+
+        OperationRun run = executor().execute("test", graph);
+
+        assertThat(run.getFailure()).isNull();
+        assertThat(conditions.get()).isEqualTo("conditions for 42");
+        assertThat(channels.get()).isEqualTo("channels for 42");
+        assertThat(order).startsWith("policy").endsWith("link").hasSize(4);
+    }
+
+    @Test
+    public void failureSkipsOnlyDependents() {
+        IllegalStateException failure = new IllegalStateException("boom");
+        AtomicInteger dependentRuns = new AtomicInteger();
+        OperationGraph graph = new OperationGraph();
+        Operation<String> failing = graph.supply("failing", () -> {
+            throw failure;
+        });
+        Operation<Void> dependent = graph.run("dependent", dependentRuns::incrementAndGet, failing);
+        Operation<Void> transitive = graph.run("transitive", dependentRuns::incrementAndGet, dependent);
+        Operation<String> unrelated = graph.supply("unrelated", () -> "ok");
+
+        OperationRun run = executor().execute("test", graph);
+
+        assertThat(run.getFailure()).isSameAs(failure);
+        assertThat(dependentRuns.get()).isZero();
+        assertThat(dependent.getFailure()).isSameAs(failure);
+        assertThat(transitive.getFailure()).isSameAs(failure);
+        assertThat(unrelated.get()).isEqualTo("ok");
+        assertThat(unrelated.getFailure()).isNull();
+    }
+
+    @Test
+    public void limitsOperationsInFlight() {
+        properties.getExecution().setMaxOperationConcurrency(2);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        OperationGraph graph = new OperationGraph();
+        for (int i = 0; i < 8; i++) {
+            graph.run("step" + i, () -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                sleep(20);
+                active.decrementAndGet();
+            });
+        }
+
+        OperationRun run = executor().execute("test", graph);
+
+        assertThat(run.getFailure()).isNull();
+        assertThat(maxActive.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void awaitedFuturesFeedDependents() {
+        CompletableFuture<String> prefetched = new CompletableFuture<>();
+        CompletableFuture<String> failedPrefetch = new CompletableFuture<>();
+        IllegalStateException failure = new IllegalStateException("lookup failed");
+        OperationGraph graph = new OperationGraph();
+        Operation<String> lookup = graph.await("lookup", prefetched);
+        Operation<String> use = graph.supply("use", () -> "using " + lookup.get(), lookup);
+        Operation<String> failedLookup = graph.await("failedLookup", failedPrefetch);
+        Operation<Void> skipped = graph.run("skipped", () -> {
+        }, failedLookup);
+        CompletableFuture.runAsync(() -> {
+            sleep(10);
+            prefetched.complete("app");
+            failedPrefetch.completeExceptionally(failure);
+        });
+
+        OperationRun run = executor().execute("test", graph);
+
+        assertThat(use.get()).isEqualTo("using app");
+        assertThat(failedLookup.getFailure()).isSameAs(failure);
+        assertThat(skipped.getFailure()).isSameAs(failure);
+        assertThat(run.getFailure()).isSameAs(failure);
+    }
+
+    @Test
+    public void criticalPathFollowsLatestDependencies() {
+        OperationGraph graph = new OperationGraph();
+        Operation<Void> root = graph.run("root", () -> sleep(5));
+        Operation<Void> fast = graph.run("fast", () -> {
+        }, root);
+        Operation<Void> slow = graph.run("slow", () -> sleep(50), root);
+        graph.run("last", () -> {
+        }, fast, slow);
+
+        OperationRun run = executor().execute("test", graph);
+
+        assertThat(run.getCriticalPath().stream().map(Operation::getName).collect(Collectors.toList()))
+            .containsExactly("root", "slow", "last");
+        assertThat(run.describeCriticalPath()).startsWith("root (").contains(" -> slow (").endsWith(" ms)");
+        assertThat(slow.getDurationMillis()).isGreaterThanOrEqualTo(50);
+    }
+
+    private OperationExecutor executor() {
+        return new OperationExecutor(ioExecutor, properties);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.libertymutualgroup.herman.nr.broker.NewRelicBrokerProperties;
+import com.libertymutualgroup.herman.nr.broker.clients.NewRelicClient;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerResourceType;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerStatus;
+import com.libertymutualgroup.herman.nr.broker.domain.HermanBrokerUpdate;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicConfiguration;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.Application;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ApplicationCondition;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.NotificationChannel;
+import com.libertymutualgroup.herman.nr.broker.domain.newRelic.ResourceSummary;
+import com.libertymutualgroup.herman.nr.broker.operations.Operation;
+import com.libertymutualgroup.herman.nr.broker.operations.OperationExecutor;
+import com.libertymutualgroup.herman.nr.broker.operations.OperationGraph;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+public class AlertConfigurationServiceTest {
+
+    private static final String CONDITIONS = "[{\"name\":\"Apdex\",\"type\":\"apm_app_metric\"},"
+        + "{\"name\":\"Error rate\",\"type\":\"apm_app_metric\"}]";
+    private static final String CHANNELS = "[{\"name\":\"team\",\"type\":\"email\","
+        + "\"configuration\":{\"recipients\":\"team@example.com\"}}]";
+
+    private ThreadPoolTaskExecutor ioExecutor;
+    private NewRelicClient newRelicClient;
+    private AlertConfigurationService service;
+    private List<HermanBrokerUpdate> updates;
+
+    @Before
+    public void setUp() {
+        ioExecutor = new ThreadPoolTaskExecutor();
+        ioExecutor.setCorePoolSize(4);
+        ioExecutor.initialize();
+
+        newRelicClient = mock(NewRelicClient.class);
+        when(newRelicClient.createPolicy("my-app")).thenReturn("42");
+        when(newRelicClient.findChannelsWithPrefix("my-app")).thenReturn(Collections.<ResourceSummary>emptyList());
+        when(newRelicClient.createChannels(anyListOf(NotificationChannel.class))).thenReturn(Collections.emptyList());
+
+        service = new AlertConfigurationService();
+        service.newRelicClient = newRelicClient;
+        updates = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        ioExecutor.shutdown();
+    }
+
+    @Test
+    public void createsApplicationConditionsForTheApplication() {
+        plan(new Application().withId(7).withName("my-app-service"), "my-app-service");
+
+        verify(newRelicClient, times(2)).createApplicationAlertsConditions(anyString(), anyString(),
+            any(ApplicationCondition.class));
+        assertThat(applicationConditionUpdates()).extracting(HermanBrokerUpdate::getStatus)
+            .containsExactly(HermanBrokerStatus.PENDING);
+        assertThat(applicationConditionUpdates()).extracting(HermanBrokerUpdate::getCount).containsExactly(2);
+    }
+
+    @Test
+    public void reportsApplicationConditionsSkippedWhenTheApplicationIsMissing() {
+        plan(null, "my-app-service");
+
+        verify(newRelicClient, never()).createApplicationAlertsConditions(anyString(), anyString(),
+            any(ApplicationCondition.class));
+        List<HermanBrokerUpdate> skipped = applicationConditionUpdates();
+        assertThat(skipped).extracting(HermanBrokerUpdate::getStatus).containsExactly(HermanBrokerStatus.ERROR);
+        assertThat(skipped.get(0).getMessage())
+            .contains("Skipped creating 2 alerts conditions")
+            .contains("Apdex, Error rate")
+            .contains("New Relic application my-app-service could not be found");
+    }
+
+    @Test
+    public void reportsApplicationConditionsSkippedWhenNoApplicationIsNamed() {
+        plan(null, null);
+
+        assertThat(applicationConditionUpdates()).extracting(HermanBrokerUpdate::getMessage)
+            .containsExactly("Skipped creating 2 alerts conditions (Apdex, Error rate): "
+                + "no New Relic application was named in the request");
+    }
+
+    private void plan(Application found, String applicationName) {
+        OperationGraph graph = new OperationGraph();
+        Operation<Application> application = graph.await("applicationLookup", CompletableFuture.completedFuture(found));
+        NewRelicConfiguration configuration = new NewRelicConfiguration()
+            .withChannels(CHANNELS)
+            .withConditions(CONDITIONS);
+        NewRelicPrefetch prefetch = new NewRelicPrefetch(null, null, null, null, null);
+
+        Operation<Void> alerts = service.planAlerts(graph, application, applicationName, "my-app", configuration,
+            updates::add, prefetch);
+        new OperationExecutor(ioExecutor, new NewRelicBrokerProperties()).execute("test", graph);
+
+        assertThat(alerts.getFailure()).isNull();
+    }
+
+    private List<HermanBrokerUpdate> applicationConditionUpdates() {
+        return updates.stream()
+            .filter(update -> update.getResourceType() == HermanBrokerResourceType.APPLICATION_CONDITION)
+            .collect(Collectors.toList());
+    }
+}
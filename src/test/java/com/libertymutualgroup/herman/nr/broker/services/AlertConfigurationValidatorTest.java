@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.libertymutualgroup.herman.nr.broker.domain.NewRelicConfiguration;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class AlertConfigurationValidatorTest {
+
+    private static final String CHANNELS = "[{\"name\":\"team\",\"type\":\"email\","
+        + "\"configuration\":{\"recipients\":\"team@example.com\"}}]";
+    private static final String TERMS = "[{\"duration\":\"5\",\"operator\":\"below\",\"threshold\":\"0.8\","
+        + "\"time_function\":\"all\"}]";
+
+    private final AlertConfigurationValidator validator = new AlertConfigurationValidator();
+    private final Logger logger = (Logger) LoggerFactory.getLogger(AlertConfigurationValidator.class);
+    private final ListAppender<ILoggingEvent> warnings = new ListAppender<>();
+
+    @Before
+    public void setUp() {
+        warnings.start();
+        logger.addAppender(warnings);
+    }
+
+    @After
+    public void tearDown() {
+        logger.detachAppender(warnings);
+    }
+
+    @Test
+    public void acceptsAValidTemplateOfEachKind() {
+        validator.validate(new NewRelicConfiguration()
+            .withChannels("[{\"name\":\"email\",\"type\":\"email\","
+                + "\"configuration\":{\"recipients\":\"a@example.com\"}},"
+                + "{\"name\":\"slack\",\"type\":\"slack\",\"configuration\":{\"url\":\"https://hooks.example.com\"}},"
+                + "{\"name\":\"pager\",\"type\":\"pagerduty\",\"configuration\":{\"service_key\":\"key\"}},"
+                + "{\"name\":\"hook\",\"type\":\"webhook\",\"configuration\":{\"base_url\":\"https://example.com\"}},"
+                + "{\"name\":\"ops\",\"type\":\"victorops\",\"configuration\":{\"key\":\"k\",\"route_key\":\"r\"}}]")
+            .withConditions("[{\"name\":\"Apdex\",\"type\":\"apm_app_metric\",\"metric\":\"apdex\","
+                + "\"terms\":" + TERMS + "}]")
+            .withPluginConditions("[{\"name\":\"Queue\",\"metric\":\"Component/Queue\",\"value_function\":\"average\","
+                + "\"entities\":[\"1\"],\"plugin\":{\"id\":\"42\",\"guid\":\"x.y\"},\"terms\":" + TERMS + "}]")
+            .withNrqlConditions("[{\"name\":\"Slow\",\"nrql\":{\"query\":\"SELECT count(*) FROM Transaction\","
+                + "\"since_value\":\"3\"},\"terms\":" + TERMS + "}]")
+            .withInfrastructureConditions("[{\"name\":\"Disk\",\"type\":\"infra_metric\"}]")
+            .withSynthetics("[{\"type\":\"SIMPLE\",\"frequency\":5,\"locations\":[\"AWS_US_EAST_1\"],"
+                + "\"status\":\"ENABLED\"}]"));
+
+        assertThat(warnings.list).isEmpty();
+    }
+
+    @Test
+    public void reportsEveryProblemTogether() {
+        List<String> errors = errors(new NewRelicConfiguration()
+            .withChannels("[{\"name\":\"team\",\"type\":\"email\",\"configuration\":{}}]")
+            .withConditions("[{\"name\":\"Apdex\",\"type\":\"apm_app_metric\",\"metric\":\"apdex\","
+                + "\"terms\":[{\"duration\":\"5\",\"operator\":\"below\",\"time_function\":\"all\"}]}]")
+            .withNrqlConditions("[{\"name\":\"Slow\",\"nrql\":{},\"terms\":[]}]")
+            .withSynthetics("not json"));
+
+        assertThat(errors).hasSize(6).startsWith(
+            "channels[0]: missing required field 'configuration.recipients'",
+            "conditions[0].terms[0]: missing required field 'threshold'",
+            "nrqlConditions[0]: missing required field 'nrql.query'",
+            "nrqlConditions[0]: missing required field 'nrql.since_value'",
+            "nrqlConditions[0].terms: must not be empty");
+        assertThat(errors.get(5)).startsWith("synthetics: not valid JSON");
+    }
+
+    @Test
+    public void requiresAtLeastOneKindOfCondition() {
+        assertThat(errors(new NewRelicConfiguration().withChannels(CHANNELS)))
+            .containsExactly("There are no alerts conditions defined");
+    }
+
+    @Test
+    public void onlyWarnsAboutUnknownChannelTypes() {
+        validator.validate(new NewRelicConfiguration()
+            .withChannels("[{\"name\":\"team\",\"type\":\"teams\",\"configuration\":{\"anything\":\"goes\"}}]")
+            .withInfrastructureConditions("[{\"name\":\"Disk\",\"type\":\"infra_metric\"}]"));
+
+        assertThat(warnings.list).extracting(ILoggingEvent::getLevel).containsExactly(Level.WARN);
+        assertThat(warnings.list.get(0).getFormattedMessage()).contains("channel type 'teams' is not known");
+    }
+
+    @Test
+    public void checksAnIdenticalConfigurationOnlyOnce() {
+        String channels = "[{\"name\":\"team\",\"type\":\"teams\",\"configuration\":{}}]";
+        String conditions = "[{\"name\":\"Disk\",\"type\":\"infra_metric\"}]";
+
+        validator.validate(new NewRelicConfiguration()
+            .withChannels(channels)
+            .withInfrastructureConditions(conditions));
+        validator.validate(new NewRelicConfiguration()
+            .withChannels(channels)
+            .withInfrastructureConditions(conditions));
+
+        // The warning comes from checking, so a second one would mean the cached result was not used
+        assertThat(warnings.list).hasSize(1);
+    }
+
+    @Test
+    public void cachesInvalidResultsToo() {
+        NewRelicConfiguration invalid = new NewRelicConfiguration().withChannels(CHANNELS);
+
+        List<String> first = errors(invalid);
+        List<String> second = errors(new NewRelicConfiguration().withChannels(CHANNELS));
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void tellsAbsentArraysFromEmptyOnes() {
+        validator.validate(new NewRelicConfiguration().withChannels(CHANNELS).withConditions("[]"));
+
+        assertThat(errors(new NewRelicConfiguration().withChannels(CHANNELS)))
+            .containsExactly("There are no alerts conditions defined");
+    }
+
+    private List<String> errors(NewRelicConfiguration configuration) {
+        try {
+            validator.validate(configuration);
+        } catch (InvalidAlertConfigurationException ex) {
+            return ex.getErrors();
+        }
+        fail("Expected the configuration to be rejected");
+        return null;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.libertymutualgroup.herman.nr.broker.telemetry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class EventRingBufferTest {
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertThat(new EventRingBuffer<String>(1).capacity()).isEqualTo(2);
+        assertThat(new EventRingBuffer<String>(5).capacity()).isEqualTo(8);
+        assertThat(new EventRingBuffer<String>(8).capacity()).isEqualTo(8);
+    }
+
+    @Test
+    public void refusesElementsWhenFull() {
+        EventRingBuffer<String> buffer = new EventRingBuffer<>(2);
+
+        assertThat(buffer.offer("a")).isTrue();
+        assertThat(buffer.offer("b")).isTrue();
+        assertThat(buffer.offer("c")).isFalse();
+    }
+
+    @Test
+    public void drainsOldestFirstUpToLimit() {
+        EventRingBuffer<String> buffer = new EventRingBuffer<>(4);
+        buffer.offer("a");
+        buffer.offer("b");
+        buffer.offer("c");
+        List<String> drained = new ArrayList<>();
+
+        assertThat(buffer.drainTo(drained, 2)).isEqualTo(2);
+        assertThat(drained).containsExactly("a", "b");
+        assertThat(buffer.drainTo(drained, 10)).isEqualTo(1);
+        assertThat(drained).containsExactly("a", "b", "c");
+        assertThat(buffer.drainTo(drained, 10)).isZero();
+    }
+
+    @Test
+    public void countsElementsNotYetDrained() {
+        EventRingBuffer<String> buffer = new EventRingBuffer<>(4);
+        assertThat(buffer.size()).isZero();
+        buffer.offer("a");
+        buffer.offer("b");
+        buffer.offer("c");
+        assertThat(buffer.size()).isEqualTo(3);
+
+        buffer.drainTo(new ArrayList<>(), 2);
+
+        assertThat(buffer.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void reusesSlotsAfterDraining() {
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(2);
+        List<Integer> drained = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+            assertThat(buffer.drainTo(drained, 1)).isEqualTo(1);
+        }
+
+        assertThat(drained).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingThatWasAccepted() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(1024);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        List<Integer> drained = new ArrayList<>();
+
+        try {
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                executor.execute(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        if (buffer.offer(base + i)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                });
+            }
+            while (!done.await(1, TimeUnit.MILLISECONDS)) {
+                buffer.drainTo(drained, Integer.MAX_VALUE);
+            }
+            buffer.drainTo(drained, Integer.MAX_VALUE);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Set<Integer> unique = new HashSet<>(drained);
+        assertThat(drained).hasSize(accepted.get());
+        assertThat(unique).hasSize(drained.size());
+    }
+}